@@ -0,0 +1,97 @@
+import trafficcounter.bench.TrafficWorkload;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Makes the benchmarked calls on the application's classes, see TrafficWorkload
+ *
+ * @author Ryan Cheng
+ */
+public class DefaultTrafficWorkload extends TrafficWorkload {
+    private final TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+
+    @Override
+    public Object extractInfo(String timestamp) {
+        return TrafficCounter.extractInfo(timestamp);
+    }
+
+    @Override
+    public int parseTime(String time) {
+        return TrafficSnapshotHolder.parseTime(time);
+    }
+
+    @Override
+    public void load(Path path) throws IOException {
+        new MappedTrafficReader(counter).read(path);
+    }
+
+    @Override
+    public int size() {
+        return counter.size();
+    }
+
+    @Override
+    public int totalCars() {
+        return counter.totalCars();
+    }
+
+    @Override
+    public Object carsByDate() {
+        return counter.carsByDate();
+    }
+
+    @Override
+    public void dropRollup() {
+        counter.dropRollup();
+    }
+
+    @Override
+    public Object topThree() {
+        return counter.topThree();
+    }
+
+    @Override
+    public Object leastCars() {
+        return counter.leastCars();
+    }
+
+    @Override
+    public void processSnapshots() {
+        counter.processSnapshots();
+    }
+
+    @Override
+    public int readLines(Path path) throws IOException {
+        TrafficStreamAggregator aggregator = new TrafficStreamAggregator();
+        String timestamp;
+        try (FileReader fr = new FileReader(path.toFile());
+             BufferedReader br = new BufferedReader(fr)) {
+            while ((timestamp = br.readLine()) != null)  {
+                aggregator.accept(TrafficCounter.extractInfo(timestamp));
+            }
+        }
+        return aggregator.totalCars();
+    }
+
+    @Override
+    public int readMapped(Path path) throws IOException {
+        TrafficStreamAggregator aggregator = new TrafficStreamAggregator();
+        new MappedTrafficReader(aggregator).read(path);
+        return aggregator.totalCars();
+    }
+
+    @Override
+    public int readParallel(Path path) throws IOException {
+        return ParallelTrafficReader.read(path).totalCars();
+    }
+
+    @Override
+    public int readCompressed(Path path, boolean pipelined) throws IOException {
+        TrafficStreamAggregator aggregator = new TrafficStreamAggregator();
+        new CompressedTrafficReader(aggregator, MalformedLinePolicy.STRICT.forSource(null), pipelined).read(path);
+        return aggregator.totalCars();
+    }
+}
@@ -0,0 +1,73 @@
+package trafficcounter.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading a whole synthetic file with a BufferedReader and extractInfo() (the original path of the main
+ * method) against memory mapping it with the MappedTrafficReader, and against splitting it across all cores with
+ * the ParallelTrafficReader. The same file compressed with gzip is read with the CompressedTrafficReader both
+ * decompressing on its own thread and inline between parsing buffers, which shows how much of the decompression the
+ * pipeline hides (given a spare core) next to readMapped on the uncompressed file
+ *
+ * @author Ryan Cheng
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+    @Param({"10000", "1000000", "100000000"})
+    private int rows;
+
+    private TrafficWorkload workload;
+    private Path path;
+    private Path gzipPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        workload = TrafficWorkload.create();
+        path = TrafficDataGenerator.file(rows);
+        gzipPath = TrafficDataGenerator.gzipFile(rows);
+    }
+
+    @Benchmark
+    public int readLines() throws IOException {
+        return workload.readLines(path);
+    }
+
+    @Benchmark
+    public int readMapped() throws IOException {
+        return workload.readMapped(path);
+    }
+
+    @Benchmark
+    public int readParallel() throws IOException {
+        return workload.readParallel(path);
+    }
+
+    @Benchmark
+    public int readGzip() throws IOException {
+        return workload.readCompressed(gzipPath, true);
+    }
+
+    @Benchmark
+    public int readGzipInline() throws IOException {
+        return workload.readCompressed(gzipPath, false);
+    }
+}
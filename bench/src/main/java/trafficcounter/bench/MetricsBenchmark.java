@@ -0,0 +1,70 @@
+package trafficcounter.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the calls that record metrics with the recording on and off, to show what it costs: parsing a single
+ * line (the smallest unit that's timed, so the worst case), a query over a 10k row holder and reading a 1M row file.
+ * Each value of the metrics parameter runs in its own fork, and the property is set before anything touches
+ * TrafficMetrics, so it's read as a constant just like -Dtrafficcounter.metrics on the command line.
+ *
+ * @author Ryan Cheng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    private static final int LINES = 1024;
+    private static final int QUERY_ROWS = 10_000;
+    private static final int READ_ROWS = 1_000_000;
+
+    @Param({"true", "false"})
+    private String metrics;
+
+    private TrafficWorkload workload;
+    private String[] lines;
+    private Path file;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        System.setProperty("trafficcounter.metrics", metrics);
+        workload = TrafficWorkload.create();
+        workload.load(TrafficDataGenerator.file(QUERY_ROWS));
+        lines = TrafficDataGenerator.lines(LINES);
+        file = TrafficDataGenerator.file(READ_ROWS);
+    }
+
+    @Benchmark
+    public Object extractInfo() {
+        next = (next + 1) & (LINES - 1);
+        return workload.extractInfo(lines[next]);
+    }
+
+    @Benchmark
+    public Object leastCars() {
+        return workload.leastCars();
+    }
+
+    @Benchmark
+    public int readMapped() throws IOException {
+        return workload.readMapped(file);
+    }
+}
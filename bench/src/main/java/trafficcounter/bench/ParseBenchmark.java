@@ -0,0 +1,58 @@
+package trafficcounter.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing a single line, cycling through a set of synthetic lines so the branch predictor can't learn
+ * one input
+ *
+ * @author Ryan Cheng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    private static final int LINES = 1024;
+
+    private TrafficWorkload workload;
+    private String[] lines;
+    private String[] times;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        workload = TrafficWorkload.create();
+        lines = TrafficDataGenerator.lines(LINES);
+        times = new String[LINES];
+        for(int i = 0; i < LINES; i++){
+            // "2016-12-01T05:30:00 12" -> "05:30:00"
+            times[i] = lines[i].substring(11, 19);
+        }
+    }
+
+    @Benchmark
+    public Object extractInfo() {
+        next = (next + 1) & (LINES - 1);
+        return workload.extractInfo(lines[next]);
+    }
+
+    @Benchmark
+    public int parseTime() {
+        next = (next + 1) & (LINES - 1);
+        return workload.parseTime(times[next]);
+    }
+}
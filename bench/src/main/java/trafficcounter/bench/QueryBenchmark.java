@@ -0,0 +1,102 @@
+package trafficcounter.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each of the TrafficSnapshotHolder queries, and all of them together with the output through
+ * processSnapshots(), over a holder filled from a synthetic file once per size. The output is thrown away so the
+ * console isn't what's measured. 100 million rows needs a heap of around 4GB.
+ *
+ * The holder keeps its rollup index and the totals by date from the first query until a record is added, so
+ * carsByDate and processSnapshots drop it before every call to measure working the totals out from the records, as
+ * they always were before the index. cachedCarsByDate measures asking again once they're kept.
+ *
+ * @author Ryan Cheng
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QueryBenchmark {
+    @Param({"10000", "1000000", "100000000"})
+    private int rows;
+
+    private TrafficWorkload workload;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        workload = TrafficWorkload.create();
+        workload.load(TrafficDataGenerator.file(rows));
+        if(workload.size() != rows){
+            throw new IllegalStateException("Expected " + rows + " rows but read " + workload.size());
+        }
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public int totalCars() {
+        return workload.totalCars();
+    }
+
+    /**
+     * Drops the holder's rollup index before every call of the benchmarks that take it
+     */
+    @State(Scope.Benchmark)
+    public static class Uncached {
+        @Setup(Level.Invocation)
+        public void dropRollup(QueryBenchmark benchmark) {
+            benchmark.workload.dropRollup();
+        }
+    }
+
+    @Benchmark
+    public Object carsByDate(Uncached uncached) {
+        return workload.carsByDate();
+    }
+
+    @Benchmark
+    public Object cachedCarsByDate() {
+        return workload.carsByDate();
+    }
+
+    @Benchmark
+    public Object topThree() {
+        return workload.topThree();
+    }
+
+    @Benchmark
+    public Object leastCars() {
+        return workload.leastCars();
+    }
+
+    @Benchmark
+    public void processSnapshots(Uncached uncached) {
+        workload.processSnapshots();
+    }
+}
@@ -0,0 +1,27 @@
+package trafficcounter.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler always on, so the allocation rate (gc.alloc.rate.norm is bytes per
+ * operation) is reported next to the ops/s. Takes the same arguments as the JMH command line, e.g.
+ * java -jar bench/target/benchmarks.jar QueryBenchmark -p rows=1000000
+ *
+ * @author Ryan Cheng
+ */
+public final class TrafficBenchmarks {
+    private TrafficBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
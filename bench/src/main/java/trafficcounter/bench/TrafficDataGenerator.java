@@ -0,0 +1,167 @@
+package trafficcounter.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes synthetic traffic counter files in the same ISO 8601 line format as the files in data/, e.g.
+ * "2016-12-01T05:30:00 12". Records are half an hour apart starting from 2016-12-01, with a record left out every
+ * so often so the least 1.5 hour period has real gaps to deal with, and the cars follow a fixed pseudo random
+ * sequence so every run of a benchmark sees the same data.
+ *
+ * Usage: java -cp benchmarks.jar trafficcounter.bench.TrafficDataGenerator rows file
+ *
+ * @author Ryan Cheng
+ */
+public final class TrafficDataGenerator {
+    // Leave out one half hour in every this many so the data isn't one long contiguous block
+    private static final int GAP_EVERY = 97;
+    private static final LocalDate START = LocalDate.of(2016, 12, 1);
+
+    private TrafficDataGenerator() {
+    }
+
+    /**
+     * @param args number of rows and the file to write them to
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2){
+            System.out.println("Usage: TrafficDataGenerator rows file");
+            return;
+        }
+        write(Paths.get(args[1]), Integer.parseInt(args[0]));
+    }
+
+    /**
+     * Gives the synthetic file with the given number of rows, kept in the temp directory so it's only written the
+     * first time a size is asked for
+     *
+     * @param rows number of records in the file
+     * @return location of the file
+     */
+    public static Path file(int rows) throws IOException {
+        Path path = Paths.get(System.getProperty("java.io.tmpdir"), "traffic-" + rows + ".txt");
+        if(!Files.exists(path)){
+            Path partial = Files.createTempFile(path.getParent(), "traffic-" + rows, ".part");
+            write(partial, rows);
+            Files.move(partial, path);
+        }
+        return path;
+    }
+
+    /**
+     * Gives the synthetic file with the given number of rows compressed with gzip, kept in the temp directory next
+     * to the text file so it's only compressed the first time a size is asked for
+     *
+     * @param rows number of records in the file
+     * @return location of the file
+     */
+    public static Path gzipFile(int rows) throws IOException {
+        Path text = file(rows);
+        Path path = text.resolveSibling(text.getFileName() + ".gz");
+        if(!Files.exists(path)){
+            Path partial = Files.createTempFile(path.getParent(), "traffic-" + rows, ".part");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), 1 << 16)) {
+                Files.copy(text, out);
+            }
+            Files.move(partial, path);
+        }
+        return path;
+    }
+
+    /**
+     * Gives the first records of the synthetic data as lines without their newline
+     *
+     * @param rows number of lines
+     * @return the lines in file order
+     */
+    public static String[] lines(int rows) {
+        String[] lines = new String[rows];
+        byte[] line = new byte[32];
+        Record record = new Record();
+        for(int i = 0; i < rows; i++){
+            int length = record.next(line);
+            lines[i] = new String(line, 0, length - 1);
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the given number of records to a file
+     *
+     * @param path location of the file, replaced if it exists
+     * @param rows number of records
+     */
+    public static void write(Path path, int rows) throws IOException {
+        byte[] line = new byte[32];
+        Record record = new Record();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            for(int i = 0; i < rows; i++){
+                out.write(line, 0, record.next(line));
+            }
+        }
+    }
+
+    /**
+     * Steps through the synthetic records, writing each one straight into a byte array since String.format is far
+     * too slow for 100 million rows
+     */
+    private static final class Record {
+        private long halfHour;
+        private long seed = 42;
+        private long epochDay = -1;
+        private final byte[] date = new byte[10];
+
+        /**
+         * Writes the next record followed by a newline
+         *
+         * @param line array to write into, at least 32 bytes
+         * @return number of bytes written
+         */
+        int next(byte[] line) {
+            if(halfHour % GAP_EVERY == GAP_EVERY - 1){
+                halfHour++;
+            }
+            long day = halfHour / 48;
+            if(day != epochDay){
+                epochDay = day;
+                byte[] text = START.plusDays(day).toString().getBytes();
+                System.arraycopy(text, 0, date, 0, date.length);
+            }
+            int halfHourOfDay = (int) (halfHour % 48);
+            halfHour++;
+            // Busier in the day than at night, with some noise on top
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            int hour = halfHourOfDay / 2;
+            int cars = (hour >= 6 && hour < 20 ? 20 : 2) + (int) ((seed >>> 33) % 30);
+
+            System.arraycopy(date, 0, line, 0, date.length);
+            int i = date.length;
+            line[i++] = 'T';
+            i = twoDigits(line, i, hour);
+            line[i++] = ':';
+            i = twoDigits(line, i, halfHourOfDay % 2 * 30);
+            line[i++] = ':';
+            i = twoDigits(line, i, 0);
+            line[i++] = ' ';
+            if(cars >= 10){
+                line[i++] = (byte) ('0' + cars / 10);
+            }
+            line[i++] = (byte) ('0' + cars % 10);
+            line[i++] = '\n';
+            return i;
+        }
+
+        private static int twoDigits(byte[] line, int i, int value) {
+            line[i] = (byte) ('0' + value / 10);
+            line[i + 1] = (byte) ('0' + value % 10);
+            return i + 2;
+        }
+    }
+}
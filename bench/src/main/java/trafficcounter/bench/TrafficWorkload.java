@@ -0,0 +1,92 @@
+package trafficcounter.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The TrafficCounter calls that are benchmarked. The application's classes are in the default package, which
+ * can't be imported from a named package, and JMH won't generate benchmarks for classes in the default package, so
+ * the calls are made through this class and its one implementation, DefaultTrafficWorkload, which lives in the
+ * default package of this module. There is only ever one implementation loaded, so the JIT inlines the calls and
+ * they measure the same as calling the application directly.
+ *
+ * @author Ryan Cheng
+ */
+public abstract class TrafficWorkload {
+    /**
+     * @return a new workload with an empty TrafficSnapshotHolder
+     */
+    public static TrafficWorkload create() {
+        try {
+            return (TrafficWorkload) Class.forName("DefaultTrafficWorkload").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the benchmark workload", e);
+        }
+    }
+
+    /**
+     * TrafficCounter.extractInfo()
+     */
+    public abstract Object extractInfo(String timestamp);
+
+    /**
+     * TrafficSnapshotHolder.parseTime()
+     */
+    public abstract int parseTime(String time);
+
+    /**
+     * Memory maps the file into the workload's TrafficSnapshotHolder
+     */
+    public abstract void load(Path path) throws IOException;
+
+    /**
+     * @return number of records in the workload's TrafficSnapshotHolder
+     */
+    public abstract int size();
+
+    public abstract int totalCars();
+
+    public abstract Object carsByDate();
+
+    /**
+     * Throws away the rollup index of the workload's TrafficSnapshotHolder, so the next carsByDate() builds its
+     * totals from the records again
+     */
+    public abstract void dropRollup();
+
+    public abstract Object topThree();
+
+    public abstract Object leastCars();
+
+    public abstract void processSnapshots();
+
+    /**
+     * Reads a file the original way, with a BufferedReader and extractInfo() for each line
+     *
+     * @return total cars seen
+     */
+    public abstract int readLines(Path path) throws IOException;
+
+    /**
+     * Reads a file by memory mapping it into a TrafficStreamAggregator
+     *
+     * @return total cars seen
+     */
+    public abstract int readMapped(Path path) throws IOException;
+
+    /**
+     * Reads a file split across all cores with the ParallelTrafficReader
+     *
+     * @return total cars seen
+     */
+    public abstract int readParallel(Path path) throws IOException;
+
+    /**
+     * Reads a gzip file into a TrafficStreamAggregator with the CompressedTrafficReader
+     *
+     * @param pipelined whether to decompress on a separate thread, or on the same thread between parsing buffers
+     * @return total cars seen
+     */
+    public abstract int readCompressed(Path path, boolean pipelined) throws IOException;
+}
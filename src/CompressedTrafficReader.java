@@ -0,0 +1,325 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a compressed traffic counter file, decompressing it on a thread of its own while the calling thread parses
+ * the records, so the two overlap and reading an archive takes little longer than the slower of them rather than
+ * both added together. Supports the codecs the JDK has: gzip (.gz, including files of several gzip members joined
+ * together) and zlib (.zz). Other codecs such as zstd would need a library and are not supported.
+ *
+ * The decompressing thread fills large buffers that always end on a line, carrying any unfinished line over to the
+ * next buffer, and hands them over through a small bounded queue, so it can only get a few buffers ahead of the
+ * parser. Parsed buffers are handed back to be filled again rather than allocating new ones. If parsing fails, the
+ * decompressing thread is stopped before the exception is passed on.
+ *
+ * Bad lines go to a MalformedLines as with the MappedTrafficReader, their positions being in the decompressed data.
+ *
+ * @author Ryan Cheng
+ */
+public class CompressedTrafficReader {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Buffers waiting to be parsed, on top of the ones being filled and parsed
+    private static final int QUEUE_DEPTH = 4;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // Passed to the parser after the last buffer
+    private static final Buffer END = new Buffer(0);
+
+    private final TrafficLineParser parser = new TrafficLineParser();
+    private final TrafficRecordSink sink;
+    private final MalformedLines errors;
+    private final boolean pipelined;
+    private long records;
+    private long bytes;
+
+    /**
+     * @param sink where each record read is fed in file order
+     */
+    public CompressedTrafficReader(TrafficRecordSink sink) {
+        this(sink, MalformedLinePolicy.STRICT.forSource(null));
+    }
+
+    /**
+     * @param sink where each record read is fed in file order
+     * @param errors where lines that aren't valid records go
+     */
+    public CompressedTrafficReader(TrafficRecordSink sink, MalformedLines errors) {
+        this(sink, errors, true);
+    }
+
+    /**
+     * @param sink where each record read is fed in file order
+     * @param errors where lines that aren't valid records go
+     * @param pipelined whether to decompress on a separate thread, otherwise it's done on the calling thread
+     *                  between parsing buffers (only for comparing the two)
+     */
+    CompressedTrafficReader(TrafficRecordSink sink, MalformedLines errors, boolean pipelined) {
+        this.sink = sink;
+        this.errors = errors;
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * @param path location of a traffic counter file
+     * @return whether the file is compressed with a supported codec, going by its extension
+     */
+    public static boolean isCompressed(Path path) {
+        String name = path.getFileName() == null ? "" : path.getFileName().toString();
+        return name.endsWith(".gz") || name.endsWith(".zz");
+    }
+
+    /**
+     * Opens the decompressed contents of a file
+     *
+     * @param path location of a file with a supported extension, see isCompressed()
+     * @return the decompressed bytes
+     * @throws IOException if the file can't be opened or isn't in the format its extension says
+     */
+    static InputStream open(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try {
+            if(path.getFileName().toString().endsWith(".gz")){
+                return new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+            }
+            return new InflaterInputStream(in, new Inflater(), STREAM_BUFFER_SIZE);
+        }
+        catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads every record of the file into the sink
+     *
+     * @param path location of the compressed traffic counter file
+     * @throws IOException if the file can't be read or decompressed
+     * @throws NumberFormatException if there are more bad lines than allowed
+     */
+    public void read(Path path) throws IOException {
+        long start = TrafficMetrics.start();
+        long recordsBefore = records;
+        if(pipelined){
+            readPipelined(path);
+        }
+        else{
+            try (InputStream in = open(path)) {
+                Buffer buffer = new Buffer(BUFFER_SIZE);
+                Buffer next = new Buffer(BUFFER_SIZE);
+                long position = 0;
+                while(fill(in, buffer, next, position)){
+                    position += buffer.length;
+                    readBuffer(buffer);
+                    Buffer swap = buffer;
+                    buffer = next;
+                    next = swap;
+                }
+            }
+        }
+        TrafficMetrics.recordsRead(records - recordsBefore, Files.size(path));
+        TrafficMetrics.INGEST.record(start);
+    }
+
+    /**
+     * Parses buffers as the decompressing thread fills them
+     */
+    private void readPipelined(Path path) throws IOException {
+        BlockingQueue<Buffer> full = new ArrayBlockingQueue<>(QUEUE_DEPTH + 1);
+        BlockingQueue<Buffer> empty = new ArrayBlockingQueue<>(QUEUE_DEPTH + 3);
+        Decompressor decompressor = new Decompressor(path, full, empty);
+        Thread thread = new Thread(decompressor, "decompress " + path.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            while(true){
+                Buffer buffer = full.take();
+                if(buffer == END){
+                    break;
+                }
+                readBuffer(buffer);
+                empty.add(buffer);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + path);
+        }
+        finally {
+            thread.interrupt();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if(decompressor.failure != null){
+            throw decompressor.failure;
+        }
+    }
+
+    /**
+     * Fills a buffer with whole lines, starting with the unfinished line carried over in it from the last buffer.
+     * The unfinished line at the end is moved to the next buffer to be filled
+     *
+     * @param in decompressed bytes
+     * @param buffer buffer to fill, which may already hold a carried over line
+     * @param next buffer the unfinished line at the end is carried over to
+     * @param position position in the decompressed bytes of the start of the buffer
+     * @return whether there was anything to fill the buffer with
+     */
+    private static boolean fill(InputStream in, Buffer buffer, Buffer next, long position) throws IOException {
+        buffer.position = position;
+        int filled = buffer.carry;
+        while(true){
+            int read = in.readNBytes(buffer.bytes, filled, buffer.bytes.length - filled);
+            filled += read;
+            boolean end = filled < buffer.bytes.length;
+            int lineEnd = filled;
+            if(!end){
+                while(lineEnd > 0 && buffer.bytes[lineEnd - 1] != '\n'){
+                    lineEnd--;
+                }
+                // A line that doesn't fit in the buffer
+                if(lineEnd == 0){
+                    buffer.bytes = Arrays.copyOf(buffer.bytes, buffer.bytes.length * 2);
+                    continue;
+                }
+            }
+            next.carry = filled - lineEnd;
+            if(next.bytes.length < next.carry){
+                next.bytes = new byte[buffer.bytes.length];
+            }
+            System.arraycopy(buffer.bytes, lineEnd, next.bytes, 0, next.carry);
+            buffer.length = lineEnd;
+            buffer.carry = 0;
+            return filled > 0;
+        }
+    }
+
+    /**
+     * Parses every line of a buffer into the sink, the last line may not have a newline at the end of the file
+     */
+    private void readBuffer(Buffer buffer) {
+        byte[] block = buffer.bytes;
+        int lineStart = 0;
+        for(int i = 0; i < buffer.length; i++){
+            if(block[i] == '\n'){
+                readRecord(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if(lineStart < buffer.length){
+            readRecord(buffer, lineStart, buffer.length);
+        }
+        bytes += buffer.length;
+    }
+
+    private void readRecord(Buffer buffer, int from, int to) {
+        if(parser.tryParse(buffer.bytes, from, to)){
+            sink.accept(parser.getStamp(), parser.getCars());
+            records++;
+        }
+        else{
+            errors.reject(buffer.bytes, from, to, buffer.position + from);
+        }
+    }
+
+    /**
+     * @return number of records read so far
+     */
+    public long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return number of decompressed bytes read so far
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Lines of decompressed bytes passed from the decompressing thread to the parser
+     */
+    private static final class Buffer {
+        byte[] bytes;
+        // Bytes of whole lines
+        int length;
+        // Bytes of an unfinished line already at the start before it's filled
+        int carry;
+        long position;
+
+        Buffer(int size) {
+            this.bytes = new byte[size];
+        }
+    }
+
+    /**
+     * Decompresses the file into buffers until it ends or is interrupted, making new buffers only until there are
+     * enough going round
+     */
+    private static final class Decompressor implements Runnable {
+        private final Path path;
+        private final BlockingQueue<Buffer> full;
+        private final BlockingQueue<Buffer> empty;
+        private int buffers;
+        volatile IOException failure;
+
+        Decompressor(Path path, BlockingQueue<Buffer> full, BlockingQueue<Buffer> empty) {
+            this.path = path;
+            this.full = full;
+            this.empty = empty;
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = open(path)) {
+                Buffer buffer = take();
+                long position = 0;
+                while(true){
+                    Buffer next = take();
+                    if(!fill(in, buffer, next, position)){
+                        break;
+                    }
+                    position += buffer.length;
+                    full.put(buffer);
+                    buffer = next;
+                }
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+            catch (InterruptedException e) {
+                // The parser has stopped
+                return;
+            }
+            try {
+                full.put(END);
+            }
+            catch (InterruptedException e) {
+                // The parser has stopped
+            }
+        }
+
+        private Buffer take() throws InterruptedException {
+            Buffer buffer = empty.poll();
+            if(buffer == null){
+                if(buffers < QUEUE_DEPTH + 3){
+                    buffers++;
+                    return new Buffer(BUFFER_SIZE);
+                }
+                buffer = empty.take();
+            }
+            return buffer;
+        }
+    }
+}
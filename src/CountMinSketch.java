@@ -0,0 +1,108 @@
+/**
+ * Count-Min sketch of the totals of keys in a stream (e.g. cars in each half hour across every file), for looking up
+ * the total of any key in fixed memory, including keys too small to be kept by a SpaceSaving summary.
+ *
+ * The sketch is depth rows of width counters, each row adding every key's weight to one counter picked by its own
+ * hash. An estimate is the smallest of a key's counters, so it's never below the true total, and is more than
+ * e / width * N above it (N being the total weight of the stream) with a probability of at most e^-depth. Sketches of
+ * the same size merge exactly by adding their counters, as every sketch uses the same hashes.
+ *
+ * @author Ryan Cheng
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final long[] counts;
+    private long total;
+
+    /**
+     * @param width counters in each row, estimates are within e / width of the total weight
+     * @param depth number of rows, estimates are outside that bound with a probability of at most e^-depth
+     */
+    public CountMinSketch(int width, int depth) {
+        if(width < 1 || depth < 1){
+            throw new IllegalArgumentException("Sketch must have at least one counter: " + width + "x" + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counts = new long[width * depth];
+    }
+
+    /**
+     * Sizes a sketch for an error bound
+     *
+     * @param epsilon largest error of an estimate, as a fraction of the total weight
+     * @param delta largest probability of an estimate being outside that error
+     * @return a sketch that meets the bound
+     */
+    public static CountMinSketch withError(double epsilon, double delta) {
+        return new CountMinSketch((int) Math.ceil(Math.E / epsilon), (int) Math.ceil(Math.log(1 / delta)));
+    }
+
+    /**
+     * Adds weight to a key's total
+     *
+     * @param key the key
+     * @param weight weight to add, not negative
+     */
+    public void add(long key, long weight) {
+        total += weight;
+        for(int row = 0; row < depth; row++){
+            counts[row * width + column(key, row)] += weight;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return upper bound on the key's total
+     */
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for(int row = 0; row < depth; row++){
+            estimate = Math.min(estimate, counts[row * width + column(key, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return total weight of every key added
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return most an estimate is above the true total, with a probability of at least 1 - e^-depth
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    /**
+     * Merges a sketch of the same size into this one, giving the same counters as if its stream had been added to
+     * this one
+     *
+     * @param other sketch of another part of the stream, left untouched
+     */
+    public void merge(CountMinSketch other) {
+        if(other.width != width || other.depth != depth){
+            throw new IllegalArgumentException("Cannot merge sketches of size " + other.width + "x" + other.depth +
+                    " and " + width + "x" + depth);
+        }
+        for(int i = 0; i < counts.length; i++){
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    /**
+     * @return counter of the key in a row, from the finaliser of MurmurHash3 with a different seed for each row
+     */
+    private int column(long key, int row) {
+        long hash = key ^ (row + 1) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int) Long.remainderUnsigned(hash, width);
+    }
+}
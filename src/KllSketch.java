@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * KLL quantile sketch (Karnin, Lang and Liberty, Optimal Quantile Approximation in Streams) of the values in a
+ * stream, e.g. the cars seen in each half hour, for percentiles such as p50/p95/p99 in fixed memory however long the
+ * stream is.
+ *
+ * Values are kept in levels of compactors, where a value at level h stands for 2^h values of the stream. When the
+ * sketch is full, the lowest level over its capacity is sorted and every other value, starting from the first or the
+ * second at random, is moved up a level while the rest are dropped. Capacities shrink by 2/3 for each level further
+ * below the top, so the sketch holds about 3k values plus a few per level. The rank of a value given for a quantile
+ * is off by at most about 1.7 / k of the number of values with 99% confidence (1.65% for the default k = 200), and
+ * the smallest and largest values are always exact. Sketches merge by adding their levels together then compacting,
+ * with the same bound on the result.
+ *
+ * @author Ryan Cheng
+ */
+public class KllSketch {
+    public static final int DEFAULT_K = 200;
+    // Fixed so that runs over the same records give the same percentiles
+    private static final long DEFAULT_SEED = 0x5EEDL;
+    private static final double CAPACITY_RATIO = 2.0 / 3;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private final SplittableRandom random;
+    private long[][] levels = new long[1][];
+    private int[] sizes = new int[1];
+    // Capacity of each level and their sum, only changing when a level is added
+    private int[] capacities;
+    private int totalCapacity;
+    private int retained;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * Creates a sketch with the default k and seed, so the same stream always gives the same sketch
+     */
+    public KllSketch() {
+        this(DEFAULT_K, DEFAULT_SEED);
+    }
+
+    /**
+     * @param k size of the top level, the rank error is about 1.7 / k
+     * @param seed seed of the coin flips when compacting, so the same stream always gives the same sketch
+     */
+    public KllSketch(int k, long seed) {
+        this(k, new SplittableRandom(seed));
+    }
+
+    private KllSketch(int k, SplittableRandom random) {
+        if(k < MIN_CAPACITY){
+            throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY + ": " + k);
+        }
+        this.k = k;
+        this.random = random;
+        levels[0] = new long[k];
+        updateCapacities();
+    }
+
+    /**
+     * Adds a value to the sketch
+     *
+     * @param value the value
+     */
+    public void add(long value) {
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        while(retained > totalCapacity){
+            compress();
+        }
+    }
+
+    /**
+     * @return number of values added
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return number of values kept by the sketch
+     */
+    public int getRetained() {
+        return this.retained;
+    }
+
+    /**
+     * Gives the value at a quantile, i.e. the smallest value with at least that fraction of the values at or below it
+     *
+     * @param fraction the quantile from 0 to 1, e.g. 0.99 for p99
+     * @return the value, or 0 if the sketch is empty
+     */
+    public long quantile(double fraction) {
+        if(fraction < 0 || fraction > 1){
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + fraction);
+        }
+        if(count == 0){
+            return 0;
+        }
+        if(fraction == 0){
+            return min;
+        }
+        if(fraction == 1){
+            return max;
+        }
+        long[] values = new long[retained];
+        int[] weights = new int[retained];
+        int n = 0;
+        for(int h = 0; h < levels.length; h++){
+            for(int i = 0; i < sizes[h]; i++){
+                values[n] = levels[h][i];
+                weights[n++] = 1 << h;
+            }
+        }
+        TrafficSorter.sort(values, weights, n);
+        double rank = fraction * count;
+        long seen = 0;
+        for(int i = 0; i < n; i++){
+            seen += weights[i];
+            if(seen >= rank){
+                return values[i];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Merges another sketch into this one, as if its stream had been added to this one
+     *
+     * @param other sketch of another part of the stream, left untouched
+     */
+    public void merge(KllSketch other) {
+        if(other.count == 0){
+            return;
+        }
+        for(int h = 0; h < other.levels.length; h++){
+            for(int i = 0; i < other.sizes[h]; i++){
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        while(retained > totalCapacity){
+            compress();
+        }
+    }
+
+    /**
+     * Works out the most values kept at each level, the top level holding k
+     */
+    private void updateCapacities() {
+        capacities = new int[levels.length];
+        totalCapacity = 0;
+        for(int h = 0; h < levels.length; h++){
+            int depth = levels.length - 1 - h;
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    private void append(int level, long value) {
+        while(level >= levels.length){
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            sizes = Arrays.copyOf(sizes, sizes.length + 1);
+            levels[levels.length - 1] = new long[MIN_CAPACITY];
+            updateCapacities();
+        }
+        if(sizes[level] == levels[level].length){
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    /**
+     * Compacts the lowest level that's over its capacity, moving half its values up a level
+     */
+    private void compress() {
+        for(int h = 0; h < levels.length; h++){
+            if(sizes[h] >= capacities[h]){
+                long[] level = levels[h];
+                int size = sizes[h];
+                Arrays.sort(level, 0, size);
+                // An odd value out stays behind
+                int kept = size % 2;
+                int offset = random.nextInt(2);
+                sizes[h] = kept;
+                retained -= size - kept;
+                for(int i = kept + offset; i < size; i += 2){
+                    append(h + 1, level[i]);
+                }
+                return;
+            }
+        }
+    }
+}
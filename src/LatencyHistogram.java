@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies in nanoseconds, in the style of HdrHistogram: values are counted in buckets that
+ * double in size with each power of two, each split into 32 equal sub buckets, so any value is recorded to within
+ * about 3% in a fixed 1.5k buckets whatever its size. Recording is a handful of atomic increments and can be done
+ * from any number of threads at once.
+ *
+ * @author Ryan Cheng
+ */
+public class LatencyHistogram {
+    // 2^5 = 32 sub buckets for each power of two
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a single latency
+     *
+     * @param nanos time taken in nanoseconds, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(nanos));
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return sum of every latency recorded in nanoseconds
+     */
+    public long getTotalNanos() {
+        return sum.sum();
+    }
+
+    /**
+     * @return largest latency recorded in nanoseconds
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @return mean latency in nanoseconds, 0 if nothing has been recorded
+     */
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotalNanos() / count;
+    }
+
+    /**
+     * Finds the latency below which the given fraction of the recorded latencies fall, to the upper end of its
+     * bucket but never more than the largest latency recorded
+     *
+     * @param percentile fraction from 0 to 100, e.g. 99 for the 99th percentile
+     * @return the latency in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++){
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += snapshot[i];
+            if(seen >= target){
+                return Math.min(highestValue(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Forgets every latency recorded
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++){
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Values below 32 have a bucket each, after that each power of two gets 32 buckets
+     */
+    static int bucket(long value) {
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the largest value that goes in the bucket
+     */
+    static long highestValue(int bucket) {
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowest = ((long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1)))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Incrementally finds the 1.5 hour period/s (3 contiguous half hour records) with the least cars seen. Records are
+ * given one at a time in file order as primitive timestamps (see TrafficTime) and only a constant number of them are
+ * held on to, so the whole data set never has to be stored to compute the result.
+ *
+ * This mirrors the two steps of the original TrafficSnapshotHolder approach in one pass: records are first grouped
+ * into contiguous blocks where only blocks of 3 or more are possible periods, then a 3 slot window is slid over the
+ * possible periods keeping every period that equals the minimum.
+ *
+ * When the records start part way through a file, the finder can't know the state left by the records before them.
+ * It holds on to the records from the start up to the first block of 3 contiguous records that starts after a gap,
+ * from where on its state no longer depends on what came before, and they are replayed by merge() to join it with
+ * the finder of the earlier records.
+ *
+ * @author Ryan Cheng
+ */
+public class LeastPeriodFinder {
+    // Since the timestamp changes by either increments of 30 or 70 (e.g. 500 -> 530 -> 600)
+    private static final int MAX_TIME_DIFFERENCE = 70;
+    private static final int PERIOD_LENGTH = 3;
+
+    // Start of the current contiguous block, held back until the block is long enough to be a possible period
+    private final long[] pendingStamps = new long[PERIOD_LENGTH - 1];
+    private final int[] pendingCars = new int[PERIOD_LENGTH - 1];
+    private int blockLength;
+    private long previousStamp;
+
+    // Sliding window over the possible periods
+    private final long[] windowStamps = new long[PERIOD_LENGTH - 1];
+    private final int[] windowCars = new int[PERIOD_LENGTH - 1];
+    private int windowSize;
+    private boolean hasPossible;
+    private long lastPossibleStamp;
+
+    // Every period equal to the minimum, 3 records each
+    private int min = Integer.MAX_VALUE;
+    private long[] leastStamps = new long[PERIOD_LENGTH];
+    private int[] leastCars = new int[PERIOD_LENGTH];
+    private int leastSize;
+
+    // Records held back until the first block that starts after a gap, when starting part way through a file
+    private final boolean startsMidFile;
+    private boolean synced;
+    private long[] headStamps;
+    private int[] headCars;
+    private int headSize;
+    private int headBlockStart = -1;
+
+    /**
+     * Creates a finder for a whole file
+     */
+    public LeastPeriodFinder() {
+        this(false);
+    }
+
+    /**
+     * @param startsMidFile whether the records given start part way through a file, in which case the finder can
+     *                      only be merged into one holding the records before it
+     */
+    LeastPeriodFinder(boolean startsMidFile) {
+        this.startsMidFile = startsMidFile;
+        if(startsMidFile){
+            headStamps = new long[16];
+            headCars = new int[16];
+        }
+    }
+
+    /**
+     * Adds the next record in file order
+     *
+     * @param stamp packed timestamp of the record
+     * @param cars number of cars seen in the record
+     */
+    public void accept(long stamp, int cars) {
+        if(startsMidFile && !synced){
+            addHead(stamp, cars);
+            return;
+        }
+        if(blockLength > 0 && !isContiguous(previousStamp, stamp)){
+            blockLength = 0;
+        }
+        previousStamp = stamp;
+        // Hold on to the start of a block until we know it can make a period
+        if(blockLength < PERIOD_LENGTH - 1){
+            pendingStamps[blockLength] = stamp;
+            pendingCars[blockLength] = cars;
+            blockLength++;
+            return;
+        }
+        if(blockLength == PERIOD_LENGTH - 1){
+            for(int i = 0; i < PERIOD_LENGTH - 1; i++){
+                possiblePeriod(pendingStamps[i], pendingCars[i]);
+            }
+            blockLength++;
+        }
+        possiblePeriod(stamp, cars);
+    }
+
+    /**
+     * Slides the window over a record that belongs to a possible period, comparing the window against the current
+     * minimum once it holds 3 contiguous records
+     *
+     * @param stamp packed timestamp of a record that is part of a block of 3 or more contiguous records
+     * @param cars number of cars seen in the record
+     */
+    private void possiblePeriod(long stamp, int cars) {
+        // If we come across a new date or discontinuous time of the day, clear the window and continue
+        if(hasPossible && !isContiguous(lastPossibleStamp, stamp)){
+            windowSize = 0;
+        }
+        hasPossible = true;
+        lastPossibleStamp = stamp;
+        if(windowSize < PERIOD_LENGTH - 1){
+            windowStamps[windowSize] = stamp;
+            windowCars[windowSize] = cars;
+            windowSize++;
+            return;
+        }
+        int currentPeriod = windowCars[0] + windowCars[1] + cars;
+        // New minimum replaces all the previous periods, an equal one is kept alongside them
+        if(currentPeriod < min){
+            min = currentPeriod;
+            leastSize = 0;
+        }
+        if(currentPeriod == min){
+            addLeast(windowStamps[0], windowCars[0]);
+            addLeast(windowStamps[1], windowCars[1]);
+            addLeast(stamp, cars);
+        }
+        windowStamps[0] = windowStamps[1];
+        windowCars[0] = windowCars[1];
+        windowStamps[1] = stamp;
+        windowCars[1] = cars;
+    }
+
+    /**
+     * Holds on to a record at the start of a part of a file. Once a block that starts after a gap reaches 3 records
+     * the finder starts from that block, the first period of which is found again by merge()
+     */
+    private void addHead(long stamp, int cars) {
+        if(headSize > 0 && !isContiguous(headStamps[headSize - 1], stamp)){
+            headBlockStart = headSize;
+        }
+        if(headSize == headStamps.length){
+            headStamps = Arrays.copyOf(headStamps, headSize * 2);
+            headCars = Arrays.copyOf(headCars, headSize * 2);
+        }
+        headStamps[headSize] = stamp;
+        headCars[headSize] = cars;
+        headSize++;
+        if(headBlockStart >= 0 && headSize - headBlockStart == PERIOD_LENGTH){
+            synced = true;
+            for(int i = headBlockStart; i < headSize; i++){
+                accept(headStamps[i], headCars[i]);
+            }
+            min = Integer.MAX_VALUE;
+            leastSize = 0;
+        }
+    }
+
+    /**
+     * Adds the records that directly follow this finder's records in the file, as if they had been given to this
+     * finder one by one. The records held back by the later finder are replayed, then its periods and state are
+     * taken on
+     *
+     * @param later finder of the next part of the file, created with startsMidFile
+     */
+    void merge(LeastPeriodFinder later) {
+        int replay = later.synced ? later.headBlockStart + PERIOD_LENGTH : later.headSize;
+        for(int i = 0; i < replay; i++){
+            accept(later.headStamps[i], later.headCars[i]);
+        }
+        if(!later.synced){
+            return;
+        }
+        if(later.min < min){
+            min = later.min;
+            leastSize = 0;
+        }
+        if(later.min == min){
+            for(int i = 0; i < later.leastSize; i++){
+                addLeast(later.leastStamps[i], later.leastCars[i]);
+            }
+        }
+        // After replaying the first block both finders are in the same state, so carry on from where later ended
+        System.arraycopy(later.pendingStamps, 0, pendingStamps, 0, pendingStamps.length);
+        System.arraycopy(later.pendingCars, 0, pendingCars, 0, pendingCars.length);
+        blockLength = later.blockLength;
+        previousStamp = later.previousStamp;
+        System.arraycopy(later.windowStamps, 0, windowStamps, 0, windowStamps.length);
+        System.arraycopy(later.windowCars, 0, windowCars, 0, windowCars.length);
+        windowSize = later.windowSize;
+        hasPossible = later.hasPossible;
+        lastPossibleStamp = later.lastPossibleStamp;
+    }
+
+    /**
+     * Adds a record to the least periods, growing the arrays if they're full
+     */
+    private void addLeast(long stamp, int cars) {
+        if(leastSize == leastStamps.length){
+            leastStamps = Arrays.copyOf(leastStamps, leastSize * 2);
+            leastCars = Arrays.copyOf(leastCars, leastSize * 2);
+        }
+        leastStamps[leastSize] = stamp;
+        leastCars[leastSize] = cars;
+        leastSize++;
+    }
+
+    /**
+     * Checks whether two consecutive records are within the same contiguous block, same as the original comparison
+     * of the date Strings and hour-minute integers
+     */
+    private static boolean isContiguous(long before, long after) {
+        return TrafficTime.epochDay(after) == TrafficTime.epochDay(before) &&
+                TrafficTime.clockTime(after) - TrafficTime.clockTime(before) <= MAX_TIME_DIFFERENCE;
+    }
+
+    /**
+     * Retrieves the periods of least cars found so far, every 3 snapshots being one period. The snapshots are only
+     * created here from the primitive records
+     *
+     * @return ArrayList with the 1.5 hour periods of least cars, empty if none are possible
+     */
+    public ArrayList<TrafficSnapshot> getLeastCars() {
+        ArrayList<TrafficSnapshot> leastCarsSnapshots = new ArrayList<>(leastSize);
+        for(int i = 0; i < leastSize; i++){
+            leastCarsSnapshots.add(new TrafficSnapshot(leastStamps[i], leastCars[i]));
+        }
+        return leastCarsSnapshots;
+    }
+}
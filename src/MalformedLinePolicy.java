@@ -0,0 +1,109 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * What to do with lines of a traffic counter file that aren't valid records, such as the truncated lines a counter
+ * leaves behind after losing power. The strict policy (the default everywhere) stops at the first one with a
+ * NumberFormatException, as before. Otherwise up to a budget of bad lines in each file are skipped and counted, and
+ * optionally copied to a quarantine file to be looked at later, and the file only fails once it has more than that.
+ *
+ * The quarantine file has one line for each bad line: the file it came from, a tab, its byte position in that file,
+ * a tab, then the line exactly as it was. Each one is flushed as soon as it's written, bad lines being rare, so the
+ * quarantine is complete even if the run is stopped part way.
+ *
+ * @author Ryan Cheng
+ */
+public final class MalformedLinePolicy implements Closeable {
+    public static final MalformedLinePolicy STRICT = new MalformedLinePolicy(0);
+
+    private final long maxLines;
+    private final Path quarantinePath;
+    private final OutputStream quarantine;
+
+    /**
+     * @param maxLines most bad lines skipped in each file, 0 to fail on the first one or Long.MAX_VALUE to skip any
+     *                 number of them
+     */
+    public MalformedLinePolicy(long maxLines) {
+        if(maxLines < 0){
+            throw new IllegalArgumentException("Budget of malformed lines can't be negative: " + maxLines);
+        }
+        this.maxLines = maxLines;
+        this.quarantinePath = null;
+        this.quarantine = null;
+    }
+
+    /**
+     * @param maxLines most bad lines skipped in each file, 0 to fail on the first one or Long.MAX_VALUE to skip any
+     *                 number of them
+     * @param quarantinePath file the bad lines are copied to, replacing anything already in it
+     * @throws IOException if the quarantine file can't be created
+     */
+    public MalformedLinePolicy(long maxLines, Path quarantinePath) throws IOException {
+        if(maxLines < 0){
+            throw new IllegalArgumentException("Budget of malformed lines can't be negative: " + maxLines);
+        }
+        this.maxLines = maxLines;
+        this.quarantinePath = quarantinePath;
+        this.quarantine = new BufferedOutputStream(Files.newOutputStream(quarantinePath));
+    }
+
+    /**
+     * @param source name of the file about to be read, used in messages and the quarantine
+     * @return a new count of the bad lines of the file, each file having its own budget
+     */
+    public MalformedLines forSource(String source) {
+        return new MalformedLines(this, source);
+    }
+
+    /**
+     * @return most bad lines skipped in each file
+     */
+    public long getMaxLines() {
+        return this.maxLines;
+    }
+
+    /**
+     * @return file the bad lines are copied to, or null if they aren't
+     */
+    public Path getQuarantinePath() {
+        return this.quarantinePath;
+    }
+
+    /**
+     * Copies a bad line to the quarantine file, if there is one
+     *
+     * @throws UncheckedIOException if the quarantine file can't be written to
+     */
+    void quarantine(String source, long position, byte[] bytes, int from, int to) {
+        if(quarantine == null){
+            return;
+        }
+        synchronized (quarantine) {
+            try {
+                quarantine.write((source + '\t' + position + '\t').getBytes(StandardCharsets.UTF_8));
+                quarantine.write(bytes, from, to - from);
+                quarantine.write('\n');
+                quarantine.flush();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not write to the quarantine file " + quarantinePath, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(quarantine != null){
+            synchronized (quarantine) {
+                quarantine.close();
+            }
+        }
+    }
+}
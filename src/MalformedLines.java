@@ -0,0 +1,76 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Count of the bad lines found in one traffic counter file, which are skipped until there are more than the budget
+ * of its MalformedLinePolicy. Readers only call reject() for a line the parser turned down, so well formed lines
+ * never get here and a file with a few bad lines is read at full speed.
+ *
+ * The same file may be read twice (e.g. by the TrafficSorter when it turns out to be out of order), so once
+ * rewind() is called the lines already rejected aren't counted or quarantined again. The chunks of a file read at
+ * the same time by the ParallelTrafficReader share one count.
+ *
+ * @author Ryan Cheng
+ */
+public final class MalformedLines {
+    private final MalformedLinePolicy policy;
+    private final String source;
+    private long count;
+    // Position of the last line rejected, and up to where lines are being read again
+    private long lastPosition = -1;
+    private long replayUntil = -1;
+
+    MalformedLines(MalformedLinePolicy policy, String source) {
+        this.policy = policy;
+        this.source = source;
+    }
+
+    /**
+     * Skips a line that isn't a valid record, or fails if the file now has more bad lines than its budget
+     *
+     * @param bytes bytes holding the line
+     * @param from index of the first byte of the line
+     * @param to index after the last byte of the line, not including the newline
+     * @param position byte position of the line in the file
+     * @throws NumberFormatException if the file has more bad lines than the budget
+     */
+    public synchronized void reject(byte[] bytes, int from, int to, long position) {
+        if(position <= replayUntil){
+            return;
+        }
+        TrafficMetrics.malformedLine();
+        if(policy.getMaxLines() == 0){
+            throw new NumberFormatException("Malformed traffic record: \"" + text(bytes, from, to) + "\"");
+        }
+        if(++count > policy.getMaxLines()){
+            throw new NumberFormatException("More than " + policy.getMaxLines() + " malformed lines in " + source +
+                    ", the last at byte " + position + ": \"" + text(bytes, from, to) + "\"");
+        }
+        lastPosition = Math.max(lastPosition, position);
+        policy.quarantine(source, position, bytes, from, to);
+    }
+
+    /**
+     * Called before the file is read again from the start, so the lines rejected so far are only counted once
+     */
+    public synchronized void rewind() {
+        replayUntil = lastPosition;
+    }
+
+    /**
+     * @return number of bad lines skipped
+     */
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return name of the file
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    private static String text(byte[] bytes, int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+}
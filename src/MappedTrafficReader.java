@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a traffic counter file by memory mapping it and parsing the newline separated ASCII records straight out of
+ * the mapped bytes, so no chars or Strings are created for each line like with a BufferedReader. Large files are
+ * mapped a window at a time since a single mapping is limited to 2GB.
+ *
+ * The mapped bytes are bulk copied a small block at a time into a reusable array that stays in the CPU cache, as
+ * reading a MappedByteBuffer one byte at a time costs more than the copy. Any unfinished line at the end of a block
+ * is carried over to the start of the next one, including across mapped windows.
+ *
+ * Lines that aren't valid records are handed to a MalformedLines, which fails on the first one unless it has a
+ * budget of lines it may skip.
+ *
+ * @author Ryan Cheng
+ */
+public class MappedTrafficReader {
+    // Size of each mapped window of the file
+    private static final int MAP_WINDOW = 1 << 30;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final TrafficLineParser parser = new TrafficLineParser();
+    private final TrafficRecordSink sink;
+    private final MalformedLines errors;
+    private final int mapWindow;
+    private byte[] block = new byte[BLOCK_SIZE];
+    // Position in the file of the start of the block
+    private long blockPosition;
+    private long records;
+    private long bytes;
+
+    /**
+     * @param sink where each record read is fed in file order
+     */
+    public MappedTrafficReader(TrafficRecordSink sink) {
+        this(sink, MalformedLinePolicy.STRICT.forSource(null));
+    }
+
+    /**
+     * @param sink where each record read is fed in file order
+     * @param errors where lines that aren't valid records go
+     */
+    public MappedTrafficReader(TrafficRecordSink sink, MalformedLines errors) {
+        this(sink, errors, MAP_WINDOW);
+    }
+
+    /**
+     * @param sink where each record read is fed in file order
+     * @param errors where lines that aren't valid records go
+     * @param mapWindow size of each mapped window of the file
+     */
+    MappedTrafficReader(TrafficRecordSink sink, MalformedLines errors, int mapWindow) {
+        this.sink = sink;
+        this.errors = errors;
+        this.mapWindow = mapWindow;
+    }
+
+    /**
+     * Reads every record of the file into the sink
+     *
+     * @param path location of the traffic counter file
+     * @throws IOException if the file can't be read
+     * @throws NumberFormatException if there are more bad lines than allowed
+     */
+    public void read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            read(channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads every record in part of an open file into the sink, the part must start at the beginning of a line and
+     * end at the end of one (or the end of the file)
+     *
+     * @param channel open traffic counter file
+     * @param from position in the file of the first byte to read
+     * @param to position in the file after the last byte to read
+     * @throws IOException if the file can't be read
+     * @throws NumberFormatException if there are more bad lines than allowed
+     */
+    public void read(FileChannel channel, long from, long to) throws IOException {
+        long start = TrafficMetrics.start();
+        long recordsBefore = records;
+        int carry = 0;
+        for(long position = from; position < to; position += mapWindow){
+            int length = (int) Math.min(mapWindow, to - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int offset = 0;
+            while(offset < length){
+                int copied = Math.min(block.length - carry, length - offset);
+                buffer.get(offset, block, carry, copied);
+                blockPosition = position + offset - carry;
+                offset += copied;
+                carry = readBlock(carry + copied);
+            }
+            bytes += length;
+        }
+        // The final line may not have a newline
+        if(carry > 0){
+            blockPosition = to - carry;
+            readRecord(0, carry);
+        }
+        TrafficMetrics.recordsRead(records - recordsBefore, to - from);
+        TrafficMetrics.INGEST.record(start);
+    }
+
+    /**
+     * Parses every complete (newline terminated) line in the block, then moves any unfinished line to the start
+     *
+     * @param filled number of bytes in the block
+     * @return number of bytes of the unfinished line now at the start of the block
+     */
+    private int readBlock(int filled) {
+        int lineStart = 0;
+        for(int i = 0; i < filled; i++){
+            if(block[i] == '\n'){
+                readRecord(lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        int carry = filled - lineStart;
+        System.arraycopy(block, lineStart, block, 0, carry);
+        // A line that doesn't fit in the block
+        if(carry == block.length){
+            block = Arrays.copyOf(block, block.length * 2);
+        }
+        return carry;
+    }
+
+    /**
+     * Parses a single line of the block into the sink
+     */
+    private void readRecord(int from, int to) {
+        if(parser.tryParse(block, from, to)){
+            sink.accept(parser.getStamp(), parser.getCars());
+            records++;
+        }
+        else{
+            errors.reject(block, from, to, blockPosition + from);
+        }
+    }
+
+    /**
+     * @return number of records read so far
+     */
+    public long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return number of bytes read so far
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+}
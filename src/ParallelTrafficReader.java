@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads and aggregates a single large traffic counter file on multiple cores. The file is split into chunks that
+ * start and end on a line, each chunk is memory mapped and aggregated by its own TrafficStreamAggregator on a fork
+ * join pool, then the partial results are merged in file order.
+ *
+ * Merging takes care of the results that cross a chunk boundary: a date split over two chunks, the top k across all
+ * chunks and 1.5 hour periods spanning the seam, so the result is exactly the same as reading the file in one go.
+ *
+ * Merging only works for records in chronological order, so each chunk checks its records are in order as it reads
+ * them and the chunks are checked against each other before merging. A file that isn't in order is read again
+ * through a TrafficSorter, giving the same results as reading it without --parallel.
+ *
+ * @author Ryan Cheng
+ */
+public final class ParallelTrafficReader {
+    // Chunks smaller than this aren't worth a task of their own
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    // More chunks than cores so that a slow chunk doesn't hold everything up
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelTrafficReader() {
+    }
+
+    /**
+     * Reads and aggregates the whole file using the common fork join pool
+     *
+     * @param path location of the traffic counter file
+     * @return the results of the whole file
+     * @throws IOException if the file can't be read
+     * @throws NumberFormatException if a line is not a valid record
+     */
+    public static TrafficStreamAggregator read(Path path) throws IOException {
+        return read(path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads and aggregates the whole file on the given pool, keeping the top 3
+     *
+     * @param path location of the traffic counter file
+     * @param pool pool to aggregate the chunks on
+     * @return the results of the whole file
+     * @throws IOException if the file can't be read
+     * @throws NumberFormatException if a line is not a valid record
+     */
+    public static TrafficStreamAggregator read(Path path, ForkJoinPool pool) throws IOException {
+        return read(path, pool, 3);
+    }
+
+    /**
+     * Reads and aggregates the whole file on the given pool
+     *
+     * @param path location of the traffic counter file
+     * @param pool pool to aggregate the chunks on
+     * @param topSize number of snapshots with the most cars to keep
+     * @return the results of the whole file
+     * @throws IOException if the file can't be read
+     * @throws NumberFormatException if a line is not a valid record
+     */
+    public static TrafficStreamAggregator read(Path path, ForkJoinPool pool, int topSize) throws IOException {
+        return read(path, pool, topSize, MalformedLinePolicy.STRICT.forSource(path.toString()));
+    }
+
+    /**
+     * Reads and aggregates the whole file on the given pool, skipping bad lines within the budget
+     *
+     * @param path location of the traffic counter file
+     * @param pool pool to aggregate the chunks on
+     * @param topSize number of snapshots with the most cars to keep
+     * @param errors where lines that aren't valid records go, shared by every chunk
+     * @return the results of the whole file
+     * @throws IOException if the file can't be read
+     * @throws NumberFormatException if there are more bad lines than allowed
+     */
+    public static TrafficStreamAggregator read(Path path, ForkJoinPool pool, int topSize, MalformedLines errors)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long chunks = Math.min(channel.size() / MIN_CHUNK_SIZE, (long) pool.getParallelism() * CHUNKS_PER_THREAD);
+            return read(channel, pool, (int) Math.max(1, chunks), topSize, errors);
+        }
+    }
+
+    /**
+     * Splits the file into the given number of chunks (fewer if lines don't allow it) and aggregates them on the
+     * pool, keeping the top 3
+     */
+    static TrafficStreamAggregator read(FileChannel channel, ForkJoinPool pool, int chunks) throws IOException {
+        return read(channel, pool, chunks, 3, MalformedLinePolicy.STRICT.forSource(null));
+    }
+
+    /**
+     * Splits the file into the given number of chunks (fewer if lines don't allow it) and aggregates them on the pool
+     *
+     * @param channel open traffic counter file
+     * @param pool pool to aggregate the chunks on
+     * @param chunks number of chunks to split the file into
+     * @param topSize number of snapshots with the most cars to keep
+     * @param errors where lines that aren't valid records go
+     * @return the results of the whole file
+     * @throws IOException if the file can't be read
+     */
+    static TrafficStreamAggregator read(FileChannel channel, ForkJoinPool pool, int chunks, int topSize,
+                                        MalformedLines errors) throws IOException {
+        long[] boundaries = splitLines(channel, chunks);
+        List<Callable<OrderedChunk>> tasks = new ArrayList<>();
+        for(int i = 0; i + 1 < boundaries.length; i++){
+            long from = boundaries[i];
+            long to = boundaries[i + 1];
+            tasks.add(() -> {
+                OrderedChunk chunk = new OrderedChunk(new TrafficStreamAggregator(topSize, true));
+                new MappedTrafficReader(chunk, errors).read(channel, from, to);
+                return chunk;
+            });
+        }
+        List<OrderedChunk> read = new ArrayList<>();
+        for(Future<OrderedChunk> future : pool.invokeAll(tasks)){
+            read.add(join(future));
+        }
+        boolean inOrder = true;
+        long previous = Long.MIN_VALUE;
+        for(OrderedChunk chunk : read){
+            if(!chunk.inOrder || (chunk.records > 0 && chunk.first < previous)){
+                inOrder = false;
+                break;
+            }
+            if(chunk.records > 0){
+                previous = chunk.last;
+            }
+        }
+        if(!inOrder){
+            return new TrafficSorter().read(sink -> {
+                errors.rewind();
+                new MappedTrafficReader(sink, errors).read(channel, 0, channel.size());
+            }, () -> new TrafficStreamAggregator(topSize));
+        }
+        TrafficStreamAggregator result = new TrafficStreamAggregator(topSize);
+        for(OrderedChunk chunk : read){
+            result.merge(chunk.aggregator);
+        }
+        return result;
+    }
+
+    /**
+     * Finds where each chunk starts, moving each evenly spaced position forward to the start of the next line
+     *
+     * @return positions of the start of each chunk followed by the end of the file
+     */
+    private static long[] splitLines(FileChannel channel, int chunks) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        long[] boundaries = new long[chunks + 1];
+        int count = 1;
+        for(int i = 1; i < chunks; i++){
+            long position = Math.max(size / chunks * i, boundaries[count - 1]);
+            position = nextLine(channel, buffer, position);
+            if(position > boundaries[count - 1] && position < size){
+                boundaries[count++] = position;
+            }
+        }
+        boundaries[count++] = size;
+        long[] result = new long[count];
+        System.arraycopy(boundaries, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return position after the first newline at or after the given position, or the end of the file
+     */
+    private static long nextLine(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(true){
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read < 0){
+                return channel.size();
+            }
+            for(int i = 0; i < read; i++){
+                if(buffer.get(i) == '\n'){
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Passes the records of a chunk to its aggregator while they're in chronological order, keeping the first and
+     * last timestamps so the chunks can be checked against each other. Records after one out of order are still
+     * parsed, so every bad line in the file is counted, but aren't aggregated
+     */
+    private static final class OrderedChunk implements TrafficRecordSink {
+        private final TrafficStreamAggregator aggregator;
+        private long first;
+        private long last = Long.MIN_VALUE;
+        private long records;
+        private boolean inOrder = true;
+
+        OrderedChunk(TrafficStreamAggregator aggregator) {
+            this.aggregator = aggregator;
+        }
+
+        @Override
+        public void accept(long stamp, int cars) {
+            if(!inOrder){
+                return;
+            }
+            if(stamp < last){
+                inOrder = false;
+                return;
+            }
+            if(records++ == 0){
+                first = stamp;
+            }
+            last = stamp;
+            aggregator.accept(stamp, cars);
+        }
+    }
+
+    /**
+     * Waits for a chunk to be aggregated, throwing the same exception it would have thrown reading in one go
+     */
+    private static OrderedChunk join(Future<OrderedChunk> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Weighted Space-Saving summary of the keys with the largest totals in a stream (e.g. the half hours with most cars
+ * across every file), keeping only a fixed number of counters however many keys there are.
+ *
+ * Each counter holds an upper bound on the total of its key, and the summary has one floor: every counter is at most
+ * the floor above its key's true total, and any key without a counter has a true total of at most the floor. The
+ * floor never goes above N / capacity, where N is the total weight of the stream, so any key with more than that is
+ * always kept. This still holds after any number of merges, which work the same way as merging Misra-Gries summaries
+ * (Agarwal et al., Mergeable Summaries): each side is turned into lower bounds, the lower bounds are added together and
+ * reduced by the (capacity + 1)th largest of them so no more than capacity keys are left.
+ *
+ * Updates take O(log capacity) using a min heap of the counters and an open addressing table of their keys. The
+ * counters start small and grow up to the capacity as keys are added, so summaries of small streams stay small.
+ *
+ * @author Ryan Cheng
+ */
+public class SpaceSaving {
+    private static final int INITIAL_COUNTERS = 16;
+
+    private final int capacity;
+    private long[] keys = new long[0];
+    private long[] counts = new long[0];
+    // Min heap of the counters by count, and where each counter is in the heap
+    private int[] heap = new int[0];
+    private int[] heapIndex = new int[0];
+    private KeyTable table;
+    private int size;
+    private long floor;
+    private long total;
+
+    /**
+     * @param capacity number of counters, estimates are within total weight / capacity of the true totals
+     */
+    public SpaceSaving(int capacity) {
+        if(capacity < 1){
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        resize(Math.min(capacity, INITIAL_COUNTERS));
+    }
+
+    /**
+     * Adds weight to a key's total. A key without a counter takes over the counter with the smallest count once
+     * they're all in use, starting from that count since it may have been seen before
+     *
+     * @param key the key
+     * @param weight weight to add, not negative
+     */
+    public void add(long key, long weight) {
+        total += weight;
+        int counter = table.get(key);
+        if(counter < 0){
+            if(size < capacity){
+                if(size == keys.length){
+                    resize(Math.min(capacity, size * 2));
+                }
+                counter = size++;
+                counts[counter] = floor;
+                heap[counter] = counter;
+                heapIndex[counter] = counter;
+                siftUp(counter);
+            }
+            else{
+                counter = heap[0];
+                floor = Math.max(floor, counts[counter]);
+                table.remove(keys[counter]);
+            }
+            keys[counter] = key;
+            table.put(key, counter);
+        }
+        counts[counter] += weight;
+        siftDown(heapIndex[counter]);
+    }
+
+    /**
+     * @param key the key
+     * @return upper bound on the key's total, the floor if the key has no counter
+     */
+    public long estimate(long key) {
+        int counter = table.get(key);
+        return counter < 0 ? floor : counts[counter];
+    }
+
+    /**
+     * @return most any estimate is above the true total, at most getTotal() / capacity
+     */
+    public long getFloor() {
+        return this.floor;
+    }
+
+    /**
+     * @return total weight of every key added
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return number of keys with a counter
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gives the keys with the largest estimates, the smaller key first for equal estimates. Any key whose true total
+     * is more than the floor above the kth estimate is sure to be in the right place
+     *
+     * @param k number of keys wanted
+     * @return pairs of key and estimate, largest estimate first, fewer than k if there aren't enough keys
+     */
+    public List<long[]> top(int k) {
+        Integer[] order = new Integer[size];
+        for(int i = 0; i < size; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Long.compare(counts[b], counts[a]) :
+                Long.compare(keys[a], keys[b]));
+        List<long[]> top = new ArrayList<>();
+        for(int i = 0; i < Math.min(k, size); i++){
+            top.add(new long[]{keys[order[i]], counts[order[i]]});
+        }
+        return top;
+    }
+
+    /**
+     * Merges another summary of the same capacity into this one, as if its stream had been added to this one
+     *
+     * @param other summary of another part of the stream, left untouched
+     */
+    public void merge(SpaceSaving other) {
+        if(other.capacity != capacity){
+            throw new IllegalArgumentException("Cannot merge summaries of capacity " + other.capacity + " and " +
+                    capacity);
+        }
+        int counters = Math.min(capacity, size + other.size);
+        if(keys.length < counters){
+            resize(counters);
+        }
+        // Lower bounds of every key in either summary
+        KeyTable union = new KeyTable(size + other.size);
+        long[] unionKeys = new long[size + other.size];
+        long[] lower = new long[size + other.size];
+        int count = 0;
+        for(SpaceSaving summary : new SpaceSaving[]{this, other}){
+            for(int i = 0; i < summary.size; i++){
+                int index = union.get(summary.keys[i]);
+                if(index < 0){
+                    index = count++;
+                    unionKeys[index] = summary.keys[i];
+                    union.put(summary.keys[i], index);
+                }
+                lower[index] += summary.counts[i] - summary.floor;
+            }
+        }
+        // Everything above the (capacity + 1)th largest lower bound is kept
+        long cut = 0;
+        if(count > capacity){
+            long[] sorted = Arrays.copyOf(lower, count);
+            Arrays.sort(sorted);
+            cut = sorted[count - capacity - 1];
+        }
+        long newFloor = floor + other.floor + cut;
+        for(int i = 0; i < size; i++){
+            table.remove(keys[i]);
+        }
+        size = 0;
+        for(int i = 0; i < count; i++){
+            if(lower[i] > cut){
+                keys[size] = unionKeys[i];
+                counts[size] = lower[i] - cut + newFloor;
+                heap[size] = size;
+                heapIndex[size] = size;
+                table.put(unionKeys[i], size);
+                siftUp(size++);
+            }
+        }
+        floor = newFloor;
+        total += other.total;
+    }
+
+    /**
+     * Moves the counters to arrays with room for the given number, rebuilding the table of their keys
+     */
+    private void resize(int counters) {
+        keys = Arrays.copyOf(keys, counters);
+        counts = Arrays.copyOf(counts, counters);
+        heap = Arrays.copyOf(heap, counters);
+        heapIndex = Arrays.copyOf(heapIndex, counters);
+        table = new KeyTable(counters);
+        for(int i = 0; i < size; i++){
+            table.put(keys[i], i);
+        }
+    }
+
+    private void siftUp(int i) {
+        while(i > 0){
+            int parent = (i - 1) >>> 1;
+            if(counts[heap[i]] >= counts[heap[parent]]){
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while(true){
+            int child = 2 * i + 1;
+            if(child >= size){
+                return;
+            }
+            if(child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]){
+                child++;
+            }
+            if(counts[heap[child]] >= counts[heap[i]]){
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int counter = heap[i];
+        heap[i] = heap[j];
+        heap[j] = counter;
+        heapIndex[heap[i]] = i;
+        heapIndex[heap[j]] = j;
+    }
+
+    /**
+     * Open addressing table from key to counter, with linear probing and deletion by shifting back the entries after
+     * the deleted one, so keys are never boxed
+     */
+    private static final class KeyTable {
+        private final long[] keys;
+        private final int[] values;
+        private final boolean[] used;
+        private final int mask;
+
+        KeyTable(int entries) {
+            // At most half full
+            int length = Integer.highestOneBit(Math.max(2, entries) * 2 - 1) * 2;
+            keys = new long[length];
+            values = new int[length];
+            used = new boolean[length];
+            mask = length - 1;
+        }
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        int get(long key) {
+            for(int i = slot(key); used[i]; i = (i + 1) & mask){
+                if(keys[i] == key){
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            int i = slot(key);
+            while(used[i] && keys[i] != key){
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        void remove(long key) {
+            int i = slot(key);
+            while(used[i] && keys[i] != key){
+                i = (i + 1) & mask;
+            }
+            if(!used[i]){
+                return;
+            }
+            used[i] = false;
+            // Move back any later entry of the run that would no longer be found past the gap
+            for(int j = (i + 1) & mask; used[j]; j = (j + 1) & mask){
+                int home = slot(keys[j]);
+                if(((j - home) & mask) >= ((j - i) & mask)){
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    used[i] = true;
+                    used[j] = false;
+                    i = j;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+
+/**
+ * Keeps the k records with the most cars out of any number given to it, using a min-heap of primitives so that each
+ * record costs O(log k) and nothing is created per record. For an equal number of cars the earlier timestamp ranks
+ * higher, so the result doesn't depend on the order records are given in and two TopK of separate parts of the data
+ * can simply be merged.
+ *
+ * @author Ryan Cheng
+ */
+public class TopK {
+    private final int k;
+    // Heap ordered so the lowest ranked record is at the root, ready to be replaced
+    private final long[] stamps;
+    private final int[] cars;
+    private int size;
+
+    /**
+     * @param k number of records to keep
+     * @throws IllegalArgumentException if k is negative
+     */
+    public TopK(int k) {
+        if(k < 0){
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        this.k = k;
+        this.stamps = new long[k];
+        this.cars = new int[k];
+    }
+
+    /**
+     * Adds a record if it ranks within the top k
+     *
+     * @param stamp packed timestamp of the record
+     * @param cars number of cars seen in the record
+     */
+    public void offer(long stamp, int cars) {
+        if(size < k){
+            stamps[size] = stamp;
+            this.cars[size] = cars;
+            siftUp(size++);
+        }
+        else if(k > 0 && ranksBelow(stamps[0], this.cars[0], stamp, cars)){
+            stamps[0] = stamp;
+            this.cars[0] = cars;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds every record kept by another TopK, e.g. of another part of the same file
+     *
+     * @param other TopK to add the records of
+     */
+    public void merge(TopK other) {
+        for(int i = 0; i < other.size; i++){
+            offer(other.stamps[i], other.cars[i]);
+        }
+    }
+
+    /**
+     * @return number of records kept, at most k
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of records this keeps
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Creates the snapshots of the records kept, most cars first
+     *
+     * @return ArrayList of at most k snapshots in rank order
+     */
+    public ArrayList<TrafficSnapshot> toSnapshots() {
+        long[] sortedStamps = new long[size];
+        int[] sortedCars = new int[size];
+        sort(sortedStamps, sortedCars);
+        ArrayList<TrafficSnapshot> snapshots = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            snapshots.add(new TrafficSnapshot(sortedStamps[i], sortedCars[i]));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Fills the arrays with the records kept in rank order, by taking the lowest ranked off a copy of the heap
+     */
+    void sort(long[] sortedStamps, int[] sortedCars) {
+        TopK copy = new TopK(k);
+        System.arraycopy(stamps, 0, copy.stamps, 0, size);
+        System.arraycopy(cars, 0, copy.cars, 0, size);
+        copy.size = size;
+        for(int i = size - 1; i >= 0; i--){
+            sortedStamps[i] = copy.stamps[0];
+            sortedCars[i] = copy.cars[0];
+            copy.size--;
+            copy.stamps[0] = copy.stamps[copy.size];
+            copy.cars[0] = copy.cars[copy.size];
+            copy.siftDown(0);
+        }
+    }
+
+    /**
+     * Whether record a ranks below record b: fewer cars, or the same cars at a later time
+     */
+    private static boolean ranksBelow(long stampA, int carsA, long stampB, int carsB) {
+        return carsA < carsB || (carsA == carsB && stampA > stampB);
+    }
+
+    /**
+     * Moves the record at the index up until its parent ranks below it
+     */
+    private void siftUp(int index) {
+        long stamp = stamps[index];
+        int value = cars[index];
+        while(index > 0){
+            int parent = (index - 1) >>> 1;
+            if(!ranksBelow(stamp, value, stamps[parent], cars[parent])){
+                break;
+            }
+            stamps[index] = stamps[parent];
+            cars[index] = cars[parent];
+            index = parent;
+        }
+        stamps[index] = stamp;
+        cars[index] = value;
+    }
+
+    /**
+     * Moves the record at the index down until both children rank above it
+     */
+    private void siftDown(int index) {
+        long stamp = stamps[index];
+        int value = cars[index];
+        int half = size >>> 1;
+        while(index < half){
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if(right < size && ranksBelow(stamps[right], cars[right], stamps[child], cars[child])){
+                child = right;
+            }
+            if(!ranksBelow(stamps[child], cars[child], stamp, value)){
+                break;
+            }
+            stamps[index] = stamps[child];
+            cars[index] = cars[child];
+            index = child;
+        }
+        stamps[index] = stamp;
+        cars[index] = value;
+    }
+}
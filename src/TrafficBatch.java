@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes many traffic counter files (e.g. one per intersection) in one run. Each file is read and aggregated on
+ * its own by a bounded pool of worker threads, its report is output in the same format as a single file, and a fleet
+ * wide rollup across every file is output at the end.
+ *
+ * Reports are written in the order the files were given, each once it and every file before it are done, to a
+ * TrafficReportWriter that writes them out in large blocks rather than a line at a time.
+ *
+ * A batch can also sketch every file (see TrafficSketch) and merge the sketches as each file is done, adding the
+ * approximate busiest half hours and percentiles of cars per half hour across the fleet to the rollup in fixed
+ * memory however many files there are.
+ *
+ * Each file has its own budget of bad lines from the MalformedLinePolicy, so a file with too many fails on its own
+ * while the rest of the batch carries on.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficBatch {
+    private static final int TOP_SITES = 3;
+
+    private final int threads;
+    private final long sortBudget;
+    private final TrafficReportWriter writer;
+    private final TrafficSketch sketch;
+    private final MalformedLinePolicy policy;
+    private int files;
+    private int failed;
+    private long total;
+    private final TreeMap<String, Long> fleetByDate = new TreeMap<>();
+    private final List<String> siteNames = new ArrayList<>();
+    private final List<Long> siteTotals = new ArrayList<>();
+
+    /**
+     * @param threads maximum number of files read at the same time
+     */
+    public TrafficBatch(int threads) {
+        this(threads, TrafficReportWriter.stdout(TrafficReportWriter.Format.TEXT));
+    }
+
+    /**
+     * @param threads maximum number of files read at the same time
+     * @param writer report the results are written to, flushed once the batch is done
+     */
+    public TrafficBatch(int threads, TrafficReportWriter writer) {
+        this(threads, writer, false);
+    }
+
+    /**
+     * @param threads maximum number of files read at the same time
+     * @param writer report the results are written to, flushed once the batch is done
+     * @param sketch whether to add the approximate rollup from the merged sketches of every file
+     */
+    public TrafficBatch(int threads, TrafficReportWriter writer, boolean sketch) {
+        this(threads, writer, sketch, MalformedLinePolicy.STRICT);
+    }
+
+    /**
+     * @param threads maximum number of files read at the same time
+     * @param writer report the results are written to, flushed once the batch is done
+     * @param sketch whether to add the approximate rollup from the merged sketches of every file
+     * @param policy what to do with lines that aren't valid records
+     */
+    public TrafficBatch(int threads, TrafficReportWriter writer, boolean sketch, MalformedLinePolicy policy) {
+        this.threads = threads;
+        this.writer = writer;
+        this.sketch = sketch ? new TrafficSketch() : null;
+        this.policy = policy;
+        // Files out of chronological order are sorted, sharing the memory budget between the threads
+        this.sortBudget = Runtime.getRuntime().maxMemory() / 4 / Math.max(1, threads);
+    }
+
+    /**
+     * Turns each argument into the files it stands for: a directory gives every file in it, a glob such as
+     * data/*.txt gives every matching file in its directory, and anything else is taken as a single file
+     *
+     * @param args files, directories or globs
+     * @return the files in the order given, with each directory or glob sorted by name
+     * @throws IOException if a directory can't be listed
+     */
+    public static List<Path> expand(List<String> args) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for(String arg : args){
+            Path path = Paths.get(isGlob(arg) ? "." : arg);
+            String glob = "*";
+            if(isGlob(arg)){
+                // Split the glob into the directory before the first wildcard and the pattern for the file name
+                int wildcard = firstWildcard(arg);
+                int separator = Math.max(arg.lastIndexOf('/', wildcard), arg.lastIndexOf('\\', wildcard));
+                path = separator < 0 ? Paths.get(".") : Paths.get(arg.substring(0, separator + 1));
+                glob = arg.substring(separator + 1);
+            }
+            else if(!Files.isDirectory(path)){
+                paths.add(path);
+                continue;
+            }
+            List<Path> matches = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, glob)) {
+                for(Path match : stream){
+                    if(Files.isRegularFile(match)){
+                        matches.add(match.normalize());
+                    }
+                }
+            }
+            Collections.sort(matches);
+            paths.addAll(matches);
+        }
+        return paths;
+    }
+
+    /**
+     * @return whether the argument has any glob wildcards
+     */
+    static boolean isGlob(String arg) {
+        return firstWildcard(arg) < arg.length();
+    }
+
+    /**
+     * @return index of the first glob wildcard, or the length if there are none
+     */
+    private static int firstWildcard(String arg) {
+        for(int i = 0; i < arg.length(); i++){
+            char c = arg.charAt(i);
+            if(c == '*' || c == '?' || c == '[' || c == '{'){
+                return i;
+            }
+        }
+        return arg.length();
+    }
+
+    /**
+     * Reads every file on the worker pool, outputting each report in order then the fleet rollup
+     *
+     * @param paths files to process
+     */
+    public void process(List<Path> paths) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, paths.size())));
+        try {
+            List<Future<TrafficStreamAggregator>> results = new ArrayList<>();
+            List<MalformedLines> errors = new ArrayList<>();
+            for(Path path : paths){
+                errors.add(policy.forSource(path.toString()));
+                results.add(pool.submit(readFile(path, errors.get(errors.size() - 1))));
+            }
+            for(int i = 0; i < paths.size(); i++){
+                report(paths.get(i), results.get(i), errors.get(i));
+                // Only the rollup is kept once a file is reported
+                results.set(i, null);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+            writer.flush();
+        }
+        outputRollup();
+        writer.flush();
+    }
+
+    /**
+     * @return task that reads and aggregates a single file, sorting it first if it's out of chronological order
+     */
+    private Callable<TrafficStreamAggregator> readFile(Path path, MalformedLines errors) {
+        return () -> new TrafficSorter(sortBudget, Paths.get(System.getProperty("java.io.tmpdir")))
+                .read(path, sketch == null ? TrafficStreamAggregator::new : SketchedAggregator::new, errors);
+    }
+
+    /**
+     * Waits for a file to be done then outputs its report and adds it to the fleet rollup. A file that can't be
+     * read is reported and skipped rather than stopping the whole batch
+     */
+    private void report(Path path, Future<TrafficStreamAggregator> result, MalformedLines errors) {
+        writer.line("==> " + path + " <==");
+        TrafficStreamAggregator counter;
+        try {
+            counter = result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + path, e);
+        }
+        catch (ExecutionException e) {
+            TrafficMetrics.readError();
+            failed++;
+            writer.error(path.toString(), String.valueOf(e.getCause()));
+            writer.line("");
+            return;
+        }
+        files++;
+        if(counter.isEmpty()){
+            writer.empty(path.toString());
+        }
+        else{
+            counter.processSnapshots(writer, path.toString());
+        }
+        if(errors.getCount() > 0){
+            writer.skipped(path.toString(), errors.getCount());
+        }
+        writer.line("");
+        total += counter.totalCars();
+        for(Map.Entry<String, Integer> date : counter.carsByDate().entrySet()){
+            fleetByDate.merge(date.getKey(), (long) date.getValue(), Long::sum);
+        }
+        siteNames.add(path.toString());
+        siteTotals.add((long) counter.totalCars());
+        if(sketch != null){
+            sketch.merge(((SketchedAggregator) counter).sketch);
+        }
+    }
+
+    /**
+     * Outputs the totals across every file that was read
+     */
+    private void outputRollup() {
+        List<Integer> order = new ArrayList<>();
+        for(int i = 0; i < siteTotals.size(); i++){
+            order.add(i);
+        }
+        // Stable sort keeps the earlier file first for equal totals
+        order.sort((a, b) -> Long.compare(siteTotals.get(b), siteTotals.get(a)));
+        List<String> topNames = new ArrayList<>();
+        List<Long> topTotals = new ArrayList<>();
+        for(int i = 0; i < Math.min(TOP_SITES, order.size()); i++){
+            topNames.add(siteNames.get(order.get(i)));
+            topTotals.add(siteTotals.get(order.get(i)));
+        }
+        writer.fleet(files, failed, total, fleetByDate, TOP_SITES, topNames, topTotals);
+        if(sketch != null){
+            writer.sketch(sketch, TOP_SITES);
+        }
+    }
+
+    /**
+     * @return merged sketch of every file read so far, or null if the batch isn't sketching
+     */
+    public TrafficSketch getSketch() {
+        return this.sketch;
+    }
+
+    /**
+     * Aggregator that also sketches the records of its file, so the file is still only read once
+     */
+    private static final class SketchedAggregator extends TrafficStreamAggregator {
+        private final TrafficSketch sketch = new TrafficSketch();
+
+        @Override
+        public void accept(long stamp, int cars) {
+            super.accept(stamp, cars);
+            sketch.accept(stamp, cars);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Reads the compact binary format written by TrafficBinaryWriter by memory mapping it. The records are decoded
+ * block by block straight into a TrafficRecordSink as primitives (e.g. into the columns of a TrafficSnapshotHolder),
+ * and the totals kept in the block index answer totalCars() and carsByDate() without decoding any records at all.
+ *
+ * The file is mapped whole, so it can be up to 2GB (around a billion half hour records).
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficBinaryReader {
+    // File extension of the binary format
+    public static final String EXTENSION = ".tcb";
+    // A record takes at least a byte for the change in minute and a byte for the cars
+    private static final int MIN_RECORD_SIZE = 2;
+    // Longest a single record can take, see TrafficBinaryWriter
+    private static final int MAX_RECORD_SIZE = 16;
+
+    private final MappedByteBuffer data;
+    private final long records;
+    private final long indexOffset;
+    private final int blockCount;
+    private final long[] blockDays;
+    private final long[] blockOffsets;
+    private final long[] blockCars;
+    private final int[] blockCounts;
+    private byte[] block = new byte[4096];
+
+    /**
+     * Maps the file and reads its header and block index
+     *
+     * @param path location of the binary file
+     * @throws IOException if the file can't be read or isn't a binary traffic counter file
+     */
+    public TrafficBinaryReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE){
+                throw new IOException("Binary traffic counter file is larger than 2GB: " + path);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(data.capacity() < TrafficBinaryWriter.HEADER_SIZE || data.getInt(0) != TrafficBinaryWriter.MAGIC ||
+                data.getShort(4) != TrafficBinaryWriter.VERSION){
+            throw new IOException("Not a binary traffic counter file: " + path);
+        }
+        records = data.getLong(8);
+        indexOffset = data.getLong(16);
+        blockCount = data.getInt(24);
+        if(records < 0 || blockCount < 0 || indexOffset < TrafficBinaryWriter.HEADER_SIZE){
+            throw new IOException("Binary traffic counter file is corrupt: " + path);
+        }
+        if(indexOffset + (long) blockCount * TrafficBinaryWriter.INDEX_ENTRY_SIZE > data.capacity()){
+            throw new IOException("Binary traffic counter file is cut short: " + path);
+        }
+        blockDays = new long[blockCount];
+        blockOffsets = new long[blockCount];
+        blockCars = new long[blockCount];
+        blockCounts = new int[blockCount];
+        ByteBuffer index = data.slice((int) indexOffset, blockCount * TrafficBinaryWriter.INDEX_ENTRY_SIZE);
+        for(int i = 0; i < blockCount; i++){
+            blockDays[i] = index.getLong();
+            blockOffsets[i] = index.getLong();
+            blockCars[i] = index.getLong();
+            blockCounts[i] = index.getInt();
+            index.getInt();
+        }
+        checkIndex(path);
+    }
+
+    /**
+     * Checks the blocks in the index lie in order between the header and the index, each with room for its records,
+     * and add up to the records in the header, so a damaged file fails here rather than giving garbage
+     */
+    private void checkIndex(Path path) throws IOException {
+        long counted = 0;
+        for(int i = 0; i < blockCount; i++){
+            long from = blockOffsets[i];
+            long to = i + 1 < blockCount ? blockOffsets[i + 1] : indexOffset;
+            if(from < TrafficBinaryWriter.HEADER_SIZE || from > to || blockCounts[i] < 0 || blockCars[i] < 0 ||
+                    (long) blockCounts[i] * MIN_RECORD_SIZE > to - from){
+                throw new IOException("Binary traffic counter file is corrupt at block " + i + ": " + path);
+            }
+            counted += blockCounts[i];
+        }
+        if(counted != records){
+            throw new IOException("Binary traffic counter file is corrupt, its blocks have " + counted +
+                    " records rather than " + records + ": " + path);
+        }
+    }
+
+    /**
+     * @param path location of a traffic counter file
+     * @return whether the file is in the binary format rather than text, going by its extension
+     */
+    public static boolean isBinary(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * Decodes every record into the sink in file order
+     *
+     * @param sink where each record is fed
+     * @throws IOException if a block's records run past the end of the block
+     */
+    public void read(TrafficRecordSink sink) throws IOException {
+        long start = TrafficMetrics.start();
+        for(int i = 0; i < blockCount; i++){
+            readBlock(i, sink);
+        }
+        TrafficMetrics.recordsRead(records, data.capacity());
+        TrafficMetrics.INGEST.record(start);
+    }
+
+    /**
+     * Decodes every record into a new TrafficSnapshotHolder
+     *
+     * @return the holder with all the records of the file
+     * @throws IOException if a block's records run past the end of the block
+     */
+    public TrafficSnapshotHolder load() throws IOException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        counter.ensureCapacity((int) Math.min(records, Integer.MAX_VALUE - 8));
+        read(counter);
+        return counter;
+    }
+
+    /**
+     * Sums the cars of every block from the index, without decoding any records
+     *
+     * @return total cars seen
+     */
+    public long totalCars() {
+        long total = 0;
+        for(int i = 0; i < blockCount; i++){
+            total += blockCars[i];
+        }
+        return total;
+    }
+
+    /**
+     * Gives the cars seen on each date from the index, without decoding any records. Each block is a run of
+     * records on the same date, so this is the same as TrafficSnapshotHolder.carsByDate() for the same records
+     *
+     * @return cars seen by date, in chronological order
+     */
+    public LinkedHashMap<String, Integer> carsByDate() {
+        long[] stamps = new long[blockCount];
+        int[] cars = new int[blockCount];
+        for(int i = 0; i < blockCount; i++){
+            stamps[i] = TrafficTime.pack(blockDays[i], 0, false);
+            cars[i] = (int) blockCars[i];
+        }
+        return new TrafficRollup(stamps, cars, blockCount).carsByDate();
+    }
+
+    /**
+     * @return number of records in the file
+     */
+    public long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return number of blocks (runs of records on the same date) in the file
+     */
+    public int getBlocks() {
+        return this.blockCount;
+    }
+
+    /**
+     * Copies a block out of the mapped file in bulk (reading a MappedByteBuffer a byte at a time is slower than the
+     * copy) and decodes its records into the sink
+     */
+    private void readBlock(int index, TrafficRecordSink sink) throws IOException {
+        int from = (int) blockOffsets[index];
+        int length = (int) ((index + 1 < blockCount ? blockOffsets[index + 1] : indexOffset) - from);
+        if(block.length < length + MAX_RECORD_SIZE){
+            block = new byte[Math.max(length + MAX_RECORD_SIZE, block.length * 2)];
+        }
+        data.get(from, block, 0, length);
+        // Zeros after the block end any varint, so a damaged block is caught below rather than read out of bounds
+        Arrays.fill(block, length, length + MAX_RECORD_SIZE, (byte) 0);
+        byte[] block = this.block;
+        int minute = 0;
+        int i = 0;
+        for(int record = 0; record < blockCounts[index]; record++){
+            // Change in minute of day, with the lowest bit flagging an extra byte
+            long token = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = block[i++];
+                token |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while(b < 0);
+            long delta = token >>> 1;
+            minute += (int) ((delta >>> 1) ^ -(delta & 1));
+            int second = 0;
+            boolean shortHour = false;
+            if((token & 1) != 0){
+                int extra = block[i++];
+                second = extra >>> 1;
+                shortHour = (extra & 1) != 0;
+            }
+            int cars = 0;
+            shift = 0;
+            do {
+                b = block[i++];
+                cars |= (b & 0x7F) << shift;
+                shift += 7;
+            } while(b < 0);
+            if(i > length){
+                throw new IOException("Binary traffic counter file is corrupt, block " + index +
+                        " runs past its end");
+            }
+            sink.accept(TrafficTime.pack(blockDays[index], minute * 60 + second, shortHour), cars);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes traffic counts to the compact binary format read by TrafficBinaryReader, either to a new file or on to the
+ * end of an existing one. Records are given in file order like any other TrafficRecordSink and the file is only
+ * complete once the writer is closed.
+ *
+ * The file is laid out as:
+ * - a 32 byte header: magic, version, number of records, position of the index and number of blocks
+ * - one block per run of records on the same date, each record being the change in minute of day from the record
+ *   before it as a zigzag varint (with the lowest bit flagging an extra byte for any seconds or a single digit hour)
+ *   followed by the cars as a varint, so a half hourly record usually takes 2 bytes
+ * - the block index, 32 bytes per block: the date, position in the file, total cars, number of records and the
+ *   minute of day of the last record
+ *
+ * When appending, nothing before the end of the old index is written to: the new blocks and the new index go after
+ * it, and the header is only rewritten to point at the new index once everything else is on disk. A file cut short
+ * part way through an append (e.g. the process is killed) still reads as it was before. If the first record added
+ * carries on the last block, that block is copied to the end first so its records stay together, and the old copy
+ * and the old index are left behind as unused space (32 bytes per block, plus a day of records at most).
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficBinaryWriter implements TrafficRecordSink, Closeable {
+    static final int MAGIC = 0x54434231; // "TCB1"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int INDEX_ENTRY_SIZE = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Longest a single record can take: 10 byte minute change, 1 extra byte and 5 byte cars
+    private static final int MAX_RECORD_SIZE = 16;
+
+    private final FileChannel channel;
+    private final Path path;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // Position in the file of the start of the buffer
+    private long position;
+    private long records;
+    private int previousMinute;
+
+    // Block index
+    private long[] blockDays = new long[16];
+    private long[] blockOffsets = new long[16];
+    private long[] blockCars = new long[16];
+    private int[] blockCounts = new int[16];
+    private int[] blockLastMinutes = new int[16];
+    private int blockCount;
+    // Set when appending until the first record is added, which may carry on the last block
+    private boolean carried;
+    // End of the last block of the file being appended to, where its old index starts
+    private long lastBlockEnd;
+
+    private TrafficBinaryWriter(FileChannel channel, Path path) {
+        this.channel = channel;
+        this.path = path;
+    }
+
+    /**
+     * Creates a new file, replacing any file already there
+     *
+     * @param path location of the binary file
+     * @return a writer for the records of the new file
+     * @throws IOException if the file can't be created
+     */
+    public static TrafficBinaryWriter create(Path path) throws IOException {
+        TrafficBinaryWriter writer = new TrafficBinaryWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), path);
+        writer.position = HEADER_SIZE;
+        return writer;
+    }
+
+    /**
+     * Opens an existing file to add records after the ones already in it, or creates it if it doesn't exist
+     *
+     * @param path location of the binary file
+     * @return a writer for the records to add
+     * @throws IOException if the file can't be opened or isn't a binary traffic counter file
+     */
+    public static TrafficBinaryWriter append(Path path) throws IOException {
+        if(!Files.exists(path)){
+            return create(path);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        TrafficBinaryWriter writer = new TrafficBinaryWriter(channel, path);
+        try {
+            writer.readIndex();
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return writer;
+    }
+
+    /**
+     * Writes every record of the holder to a new file
+     *
+     * @param path location of the binary file
+     * @param counter records to be written
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path path, TrafficSnapshotHolder counter) throws IOException {
+        try (TrafficBinaryWriter writer = create(path)) {
+            for(int i = 0; i < counter.size(); i++){
+                writer.write(counter.getStamp(i), counter.getCars(i));
+            }
+        }
+    }
+
+    /**
+     * Same as write(), for use as a TrafficRecordSink
+     *
+     * @throws UncheckedIOException if the file can't be written
+     */
+    @Override
+    public void accept(long stamp, int cars) {
+        try {
+            write(stamp, cars);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds the next record in file order
+     *
+     * @param stamp packed timestamp of the record
+     * @param cars number of cars seen in the record, which can't be negative
+     * @throws IOException if the file can't be written
+     */
+    public void write(long stamp, int cars) throws IOException {
+        if(cars < 0){
+            throw new IllegalArgumentException("Cars can't be negative: " + cars);
+        }
+        if(buffer.remaining() < MAX_RECORD_SIZE){
+            flush();
+        }
+        long epochDay = TrafficTime.epochDay(stamp);
+        if(carried){
+            carried = false;
+            if(blockDays[blockCount - 1] == epochDay){
+                moveLastBlock();
+            }
+        }
+        if(blockCount == 0 || blockDays[blockCount - 1] != epochDay){
+            startBlock(epochDay);
+        }
+        int secondOfDay = TrafficTime.secondOfDay(stamp);
+        int minute = secondOfDay / 60;
+        int second = secondOfDay % 60;
+        boolean shortHour = TrafficTime.isShortHour(stamp);
+        long delta = minute - previousMinute;
+        boolean extra = second != 0 || shortHour;
+        putVarLong((zigzag(delta) << 1) | (extra ? 1 : 0));
+        if(extra){
+            buffer.put((byte) ((second << 1) | (shortHour ? 1 : 0)));
+        }
+        putVarLong(cars);
+        previousMinute = minute;
+
+        int block = blockCount - 1;
+        blockCars[block] += cars;
+        blockCounts[block]++;
+        blockLastMinutes[block] = minute;
+        records++;
+    }
+
+    /**
+     * Writes out the index and header so the file is complete, then closes it
+     *
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            long indexOffset = position;
+            ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE);
+            for(int i = 0; i < blockCount; i++){
+                index.putLong(blockDays[i]).putLong(blockOffsets[i]).putLong(blockCars[i]).putInt(blockCounts[i])
+                        .putInt(blockLastMinutes[i]);
+            }
+            writeFully(index.flip(), indexOffset);
+            channel.truncate(indexOffset + index.capacity());
+            // The header goes last so it never points at an index that isn't fully written
+            channel.force(false);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(records).putLong(indexOffset)
+                    .putInt(blockCount).putInt(0);
+            writeFully(header.flip(), 0);
+            channel.force(false);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return number of records in the file, including any that were there before appending
+     */
+    public long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * Reads the header and index of an existing file and carries on from the end of its last block
+     */
+    private void readIndex() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if(header.getInt() != MAGIC || header.getShort() != VERSION){
+            throw new IOException("Not a binary traffic counter file: " + path);
+        }
+        header.getShort();
+        records = header.getLong();
+        long indexOffset = header.getLong();
+        int blocks = header.getInt();
+        if(records < 0 || blocks < 0 || indexOffset < HEADER_SIZE){
+            throw new IOException("Binary traffic counter file is corrupt: " + path);
+        }
+        ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY_SIZE);
+        readFully(index, indexOffset);
+        for(int i = 0; i < blocks; i++){
+            startBlock(index.getLong());
+            blockOffsets[i] = index.getLong();
+            blockCars[i] = index.getLong();
+            blockCounts[i] = index.getInt();
+            blockLastMinutes[i] = index.getInt();
+        }
+        // The last block is carried on if the next record is on the same date
+        if(blockCount > 0){
+            previousMinute = blockLastMinutes[blockCount - 1];
+            carried = true;
+        }
+        // Everything new goes after the old index, which stays valid until the header is rewritten
+        lastBlockEnd = indexOffset;
+        position = indexOffset + index.capacity();
+    }
+
+    /**
+     * Copies the last block of the file being appended to after the old index, so the records carrying it on follow
+     * straight after its old records
+     */
+    private void moveLastBlock() throws IOException {
+        flush();
+        int last = blockCount - 1;
+        ByteBuffer bytes = ByteBuffer.allocate((int) (lastBlockEnd - blockOffsets[last]));
+        readFully(bytes, blockOffsets[last]);
+        blockOffsets[last] = position;
+        writeFully(bytes, position);
+        position += bytes.capacity();
+    }
+
+    /**
+     * Starts a new block for the given date at the current position
+     */
+    private void startBlock(long epochDay) {
+        if(blockCount == blockDays.length){
+            int capacity = blockCount * 2;
+            blockDays = Arrays.copyOf(blockDays, capacity);
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+            blockCars = Arrays.copyOf(blockCars, capacity);
+            blockCounts = Arrays.copyOf(blockCounts, capacity);
+            blockLastMinutes = Arrays.copyOf(blockLastMinutes, capacity);
+        }
+        blockDays[blockCount] = epochDay;
+        blockOffsets[blockCount] = position + buffer.position();
+        blockCars[blockCount] = 0;
+        blockCounts[blockCount] = 0;
+        blockLastMinutes[blockCount] = 0;
+        blockCount++;
+        previousMinute = 0;
+    }
+
+    /**
+     * Writes the buffered records to the file
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        writeFully(buffer, position);
+        position += length;
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source, long at) throws IOException {
+        while(source.hasRemaining()){
+            at += channel.write(source, at);
+        }
+    }
+
+    private void readFully(ByteBuffer target, long at) throws IOException {
+        while(target.hasRemaining()){
+            int read = channel.read(target, at);
+            if(read < 0){
+                throw new IOException("Binary traffic counter file is cut short: " + path);
+            }
+            at += read;
+        }
+        target.flip();
+    }
+
+    /**
+     * Writes an unsigned value 7 bits at a time, lowest first, with the top bit set on every byte but the last
+     */
+    private void putVarLong(long value) {
+        while((value & ~0x7FL) != 0){
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Maps signed values to unsigned ones so small negative values stay small (0, -1, 1, -2 -> 0, 1, 2, 3)
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -1,56 +1,325 @@
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Main driver class that initially reads the traffic counter files and extracts the appropriate information
- * storing them in a fundamental object TrafficSnapshot for each individual traffic count, all of which are then
- * grouped and stored together in the TrafficSnapshotHolder object
+ * for each individual traffic count, each of which is then streamed into the TrafficStreamAggregator as it is read
  *
  * @author Ryan Cheng
  */
 public class TrafficCounter {
+    private static final String DEFAULT_FILE = "data/traffic1.txt";
+    private static final int DEFAULT_INTERVAL = 10;
+    // Reused by extractInfo() rather than creating a parser and its buffers for every line
+    private static final ThreadLocal<TrafficLineParser> PARSER = ThreadLocal.withInitial(TrafficLineParser::new);
 
     /**
-     * Driver method that reads the given .txt file holding the traffic counting
+     * Driver method that reads the given .txt file holding the traffic counting, the file is memory mapped and
+     * parsed in place. Usage: TrafficCounter [--parallel] [--threads n] [--follow [--interval s]] [--save file.tcb]
+     * [--metrics file.json] [--serve port] [--format text|csv|jsonl] [--sketch] [--max-bad n] [--quarantine file]
+     * [file | directory | glob ...]
+     *
+     * --parallel splits a single file across all cores (a file out of chronological order is noticed and sorted as
+     * without it), while giving more than one file, a directory or a glob (e.g. "data/*.txt") processes each file on
+     * its own on n worker threads (default one per core) followed by a fleet wide rollup. --follow keeps reading a
+     * single file as new records are added to it and outputs the updated results every s seconds (default 10) until
+     * stopped, the records having to be added in chronological order. --save also writes the records of a single file
+     * to the compact binary format, and files ending in .tcb are read as that format. Files ending in .gz or .zz are
+     * decompressed as they're read, see CompressedTrafficReader. --metrics registers the TrafficMetrics MBeans and
+     * writes the metrics summary to the file at exit. --serve loads every file given as a dataset named after the file
+     * and answers queries on them over HTTP on localhost, see TrafficServer. --format writes the results as CSV or JSON
+     * lines instead of text, see TrafficReportWriter. --sketch adds the approximate busiest half hours and percentiles
+     * of cars per half hour across every file to a batch rollup, see TrafficSketch. --max-bad skips up to n lines in
+     * each file that aren't valid records instead of stopping at the first one, and --quarantine copies them to a file
+     * (skipping any number of them unless --max-bad is given as well), see MalformedLinePolicy. An option that's
+     * missing its value or given a number out of range stops with a message on stderr and exit status 1
      * @param args standard main parameter
      */
     public static void main(String[] args) {
-        String timestamp;
-        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
-        try (FileReader fr = new FileReader("data/traffic1.txt");
-             BufferedReader br = new BufferedReader(fr)) {
-            while ((timestamp = br.readLine()) != null)  {
-                counter.add(extractInfo(timestamp));
+        List<String> fileNames = new ArrayList<>();
+        boolean parallel = false;
+        boolean follow = false;
+        int interval = DEFAULT_INTERVAL;
+        String saveName = null;
+        String metricsName = null;
+        int port = -1;
+        TrafficReportWriter.Format format = TrafficReportWriter.Format.TEXT;
+        boolean sketch = false;
+        long maxBad = -1;
+        String quarantineName = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for(int i = 0; i < args.length; i++){
+            if(args[i].equals("--parallel")){
+                parallel = true;
+            }
+            else if(args[i].equals("--threads")){
+                threads = (int) number(args, ++i, 1, Integer.MAX_VALUE);
+            }
+            else if(args[i].equals("--follow")){
+                follow = true;
+            }
+            else if(args[i].equals("--interval")){
+                interval = (int) number(args, ++i, 1, Integer.MAX_VALUE);
+            }
+            else if(args[i].equals("--save")){
+                saveName = value(args, ++i);
+            }
+            else if(args[i].equals("--metrics")){
+                metricsName = value(args, ++i);
+            }
+            else if(args[i].equals("--serve")){
+                port = (int) number(args, ++i, 0, 65535);
+            }
+            else if(args[i].equals("--format")){
+                try {
+                    format = TrafficReportWriter.Format.of(value(args, ++i));
+                }
+                catch (IllegalArgumentException e) {
+                    usage(e.getMessage());
+                }
+            }
+            else if(args[i].equals("--sketch")){
+                sketch = true;
+            }
+            else if(args[i].equals("--max-bad")){
+                maxBad = number(args, ++i, 0, Long.MAX_VALUE);
+            }
+            else if(args[i].equals("--quarantine")){
+                quarantineName = value(args, ++i);
+            }
+            else{
+                fileNames.add(args[i]);
             }
         }
-        catch (FileNotFoundException e) {
-            e.printStackTrace();
+        if(fileNames.isEmpty()){
+            fileNames.add(DEFAULT_FILE);
+        }
+        if(metricsName != null){
+            TrafficMetrics.registerMBeans();
+            TrafficMetrics.dumpAtExit(Paths.get(metricsName));
+        }
+        if(port >= 0){
+            serve(fileNames, port);
+            return;
+        }
+        MalformedLinePolicy policy = MalformedLinePolicy.STRICT;
+        try {
+            if(quarantineName != null){
+                policy = new MalformedLinePolicy(maxBad < 0 ? Long.MAX_VALUE : maxBad, Paths.get(quarantineName));
+            }
+            else if(maxBad > 0){
+                policy = new MalformedLinePolicy(maxBad);
+            }
         }
         catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Could not create the quarantine file: " + e);
+            System.exit(1);
         }
-        if(counter.isEmpty()){
-            System.out.println("File at location is empty, please check file");
+        boolean empty;
+        try {
+            String fileName = fileNames.get(0);
+            TrafficReportWriter writer = TrafficReportWriter.stdout(format);
+            if(fileNames.size() > 1 || TrafficBatch.isGlob(fileName) || Files.isDirectory(Paths.get(fileName))){
+                try {
+                    new TrafficBatch(threads, writer, sketch, policy).process(TrafficBatch.expand(fileNames));
+                }
+                catch (IOException e) {
+                    TrafficMetrics.readError();
+                    e.printStackTrace();
+                }
+                return;
+            }
+            if(follow){
+                try {
+                    new TrafficFollower(Paths.get(fileName), policy).follow(interval * 1000L, writer);
+                }
+                catch (IOException e) {
+                    TrafficMetrics.readError();
+                    e.printStackTrace();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            TrafficStreamAggregator counter = new TrafficStreamAggregator();
+            Path path = Paths.get(fileName);
+            MalformedLines errors = policy.forSource(fileName);
+            try {
+                if(saveName != null){
+                    save(path, Paths.get(saveName), counter, errors);
+                }
+                else if(parallel && !TrafficBinaryReader.isBinary(path) &&
+                        !CompressedTrafficReader.isCompressed(path)){
+                    counter = ParallelTrafficReader.read(path, ForkJoinPool.commonPool(), 3, errors);
+                }
+                else{
+                    counter = new TrafficSorter().read(path, TrafficStreamAggregator::new, errors);
+                }
+            }
+            catch (IOException e) {
+                TrafficMetrics.readError();
+                e.printStackTrace();
+            }
+            catch (NumberFormatException e) {
+                // Too many bad lines
+                writer.error(fileName, String.valueOf(e));
+                writer.flush();
+                close(policy);
+                System.exit(1);
+            }
+            if(counter.isEmpty()){
+                writer.empty(fileName);
+            }
+            else{
+                counter.processSnapshots(writer, fileName);
+            }
+            if(errors.getCount() > 0){
+                writer.skipped(fileName, errors.getCount());
+            }
+            writer.flush();
+            empty = counter.isEmpty();
+        }
+        finally {
+            close(policy);
+        }
+        if(empty){
             System.exit(0);
         }
-        counter.processSnapshots();
+    }
+
+    /**
+     * Gives the value of an option, stopping with a usage message if it's missing
+     *
+     * @param args command line arguments
+     * @param i index of the value, just after the option
+     * @return the value
+     */
+    private static String value(String[] args, int i) {
+        if(i == args.length){
+            usage(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+    /**
+     * Gives the whole number value of an option, stopping with a usage message if it's missing, not a number or
+     * out of range
+     *
+     * @param args command line arguments
+     * @param i index of the value, just after the option
+     * @param min smallest value that makes sense
+     * @param max largest value that makes sense
+     * @return the value
+     */
+    private static long number(String[] args, int i, long min, long max) {
+        String value = value(args, i);
+        try {
+            long number = Long.parseLong(value);
+            if(number >= min && number <= max){
+                return number;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Reported below along with values out of range
+        }
+        usage(args[i - 1] + " needs a whole number " + (max == Integer.MAX_VALUE || max == Long.MAX_VALUE ?
+                "of at least " + min : "from " + min + " to " + max) + ", not \"" + value + "\"");
+        return min;
+    }
+
+    /**
+     * Reports a bad command line to stderr and exits with status 1
+     */
+    private static void usage(String message) {
+        System.err.println(message);
+        System.exit(1);
+    }
+
+    /**
+     * Closes the quarantine file, if there is one, so every line copied to it is written out
+     */
+    private static void close(MalformedLinePolicy policy) {
+        try {
+            policy.close();
+        }
+        catch (IOException e) {
+            System.err.println("Could not write the quarantine file: " + e);
+        }
+    }
+
+    /**
+     * Loads every file as a dataset and starts the query server, which keeps running until the JVM is stopped
+     *
+     * @param fileNames files, directories or globs to load
+     * @param port port to listen on
+     */
+    private static void serve(List<String> fileNames, int port) {
+        try {
+            TrafficServer server = new TrafficServer(port);
+            for(Path path : TrafficBatch.expand(fileNames)){
+                server.load(path.getFileName().toString(), path);
+            }
+            server.start();
+            System.out.println("Serving on http://localhost:" + server.getPort() + "/");
+        }
+        catch (IOException e) {
+            TrafficMetrics.readError();
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads a file into the aggregator while writing every record to a new binary file
+     *
+     * @param path location of the traffic counter file, text, compressed or binary
+     * @param savePath location of the binary file to write
+     * @param counter empty aggregator to be fed
+     * @param errors where lines that aren't valid records go
+     * @throws IOException if either file can't be read or written
+     */
+    private static void save(Path path, Path savePath, TrafficStreamAggregator counter, MalformedLines errors)
+            throws IOException {
+        try (TrafficBinaryWriter writer = TrafficBinaryWriter.create(savePath)) {
+            TrafficRecordSink sink = (stamp, cars) -> {
+                counter.accept(stamp, cars);
+                writer.accept(stamp, cars);
+            };
+            if(TrafficBinaryReader.isBinary(path)){
+                new TrafficBinaryReader(path).read(sink);
+            }
+            else if(CompressedTrafficReader.isCompressed(path)){
+                new CompressedTrafficReader(sink, errors).read(path);
+            }
+            else{
+                new MappedTrafficReader(sink, errors).read(path);
+            }
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     /**
      * Extracts and parses the required information from the provided data which are then stored within a
-     * created TrafficSnapshot object
+     * created TrafficSnapshot object. Each thread reuses one parser, so the snapshot is the only object created. For
+     * reading a whole file use a TrafficLineParser instead, which avoids creating any objects per line
      *
      * @param timestamp String representation of the ISO 8601 date format
      * @return an individual snapshot of a traffic count
      */
     public static TrafficSnapshot extractInfo(String timestamp) {
-        // "2016-12-01T05:00:00 5" -> ("2016-12-01", "05:00:00 5")
-        String[] split = timestamp.split("T");
-        String date = split[0];
-        // "5:00:00 5" -> ("05:00:00", "5")
-        String[] timeAndCars = split[1].split(" ");
-        String time = timeAndCars[0];
-        int cars = Integer.parseInt(timeAndCars[1]);
-        TrafficSnapshot ts = new TrafficSnapshot(date, time, cars);
+        long start = TrafficMetrics.start();
+        TrafficLineParser parser = PARSER.get();
+        parser.parse(timestamp);
+        TrafficSnapshot ts = new TrafficSnapshot(parser.getStamp(), parser.getCars());
+        TrafficMetrics.EXTRACT_INFO.record(start);
         return ts;
     }
 }
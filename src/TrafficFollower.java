@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Follows a traffic counter file that is still being written to, like tail -f. Each poll reads only the bytes added
+ * since the last one and feeds the new records into a TrafficStreamAggregator, which updates the total, cars by
+ * date, top 3 and least 1.5 hour period in constant time per record, so a poll costs the same however long the file
+ * has been running.
+ *
+ * A line that is still being written is held back until its newline arrives. A last line without a newline (many
+ * files don't end in one) is taken as a record if it's a whole valid one, either straight away when the file is
+ * first read to the end or once a poll finds nothing added after it. If more of that line turns up after all, the
+ * record taken from it was wrong and the file is read again from the start. If the file is truncated or replaced
+ * (e.g. rotated), it's read again from the start with fresh results. Bad lines are handled by a MalformedLinePolicy,
+ * which by default stops at the first one.
+ *
+ * The records must be added in chronological order: the results are updated as each record arrives, so unlike a
+ * whole file a followed file can't be sorted first. A record earlier than the one before it fails the poll rather
+ * than giving wrong results.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficFollower {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    // Longest time between polls, however long the output interval is
+    private static final long POLL_MILLIS = 1000;
+
+    private final Path path;
+    private final MalformedLinePolicy policy;
+    private MalformedLines errors;
+    private final TrafficLineParser parser = new TrafficLineParser();
+    private TrafficStreamAggregator aggregator = new TrafficStreamAggregator();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int carry;
+    private long position;
+    private Object fileKey;
+    private long records;
+    private long previous = Long.MIN_VALUE;
+    // Whether the unfinished line at the start of the block has already been taken as a record
+    private boolean tailTaken;
+
+    /**
+     * @param path location of the traffic counter file, which doesn't have to exist yet
+     */
+    public TrafficFollower(Path path) {
+        this(path, MalformedLinePolicy.STRICT);
+    }
+
+    /**
+     * @param path location of the traffic counter file, which doesn't have to exist yet
+     * @param policy what to do with lines that aren't valid records
+     */
+    public TrafficFollower(Path path, MalformedLinePolicy policy) {
+        this.path = path;
+        this.policy = policy;
+        this.errors = policy.forSource(path.toString());
+    }
+
+    /**
+     * Polls the file and outputs the results in the same format as a single run every interval in which new
+     * records arrived, until the thread is interrupted
+     *
+     * @param intervalMillis time between outputs in milliseconds
+     * @throws IOException if the file can't be read
+     * @throws InterruptedException if the thread is interrupted while waiting for the next poll
+     */
+    public void follow(long intervalMillis) throws IOException, InterruptedException {
+        follow(intervalMillis, TrafficReportWriter.stdout(TrafficReportWriter.Format.TEXT));
+    }
+
+    /**
+     * Same as follow(intervalMillis), writing each update to a report in any of its formats
+     *
+     * @param intervalMillis time between outputs in milliseconds
+     * @param writer report to write to, flushed after every update
+     * @throws IOException if the file can't be read
+     * @throws InterruptedException if the thread is interrupted while waiting for the next poll
+     */
+    public void follow(long intervalMillis, TrafficReportWriter writer) throws IOException, InterruptedException {
+        boolean changed = false;
+        long nextOutput = System.nanoTime();
+        while(true){
+            changed |= poll() > 0;
+            if(changed && System.nanoTime() - nextOutput >= 0){
+                writer.line("==> " + path + " (" + records + " records) <==");
+                aggregator.processSnapshots(writer, path.toString());
+                if(errors.getCount() > 0){
+                    writer.skipped(path.toString(), errors.getCount());
+                }
+                writer.line("");
+                writer.flush();
+                changed = false;
+                nextOutput = System.nanoTime() + intervalMillis * 1_000_000;
+            }
+            Thread.sleep(Math.min(POLL_MILLIS, intervalMillis));
+        }
+    }
+
+    /**
+     * Reads any complete lines added to the file since the last poll into the results, and the last line if it
+     * has no newline but is a whole record that's been read to the end of the file for the first time or hasn't
+     * changed since the last poll
+     *
+     * @return number of new records
+     * @throws IOException if the file can't be read or a record is out of chronological order
+     * @throws NumberFormatException if there are more bad lines than allowed
+     */
+    public int poll() throws IOException {
+        long start = TrafficMetrics.start();
+        long before = records;
+        long positionBefore = position;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Start over if the file was replaced or cut short since the last poll
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            if(channel.size() < position || (key != null && fileKey != null && !Objects.equals(key, fileKey))){
+                reset();
+                before = 0;
+                positionBefore = 0;
+            }
+            fileKey = key;
+            boolean catchingUp = position == 0;
+            while(true){
+                int read = channel.read(ByteBuffer.wrap(block, carry, block.length - carry), position);
+                if(read <= 0){
+                    break;
+                }
+                if(tailTaken && block[carry] != '\n' && block[carry] != '\r'){
+                    // The last line was still being written, so start again rather than keep the record taken from it
+                    reset();
+                    before = 0;
+                    positionBefore = 0;
+                    catchingUp = true;
+                    continue;
+                }
+                position += read;
+                carry = readBlock(carry + read);
+            }
+            if(carry > 0 && !tailTaken && (catchingUp || position == positionBefore) &&
+                    parser.tryParse(block, 0, carry)){
+                accept(position - carry);
+                tailTaken = true;
+            }
+        }
+        catch (NoSuchFileException e) {
+            // Not created yet, or in the middle of being rotated
+        }
+        TrafficMetrics.recordsRead(records - before, position - positionBefore);
+        TrafficMetrics.INGEST.record(start);
+        return (int) (records - before);
+    }
+
+    /**
+     * Throws away the results and starts again from the beginning of the file
+     */
+    private void reset() {
+        aggregator = new TrafficStreamAggregator();
+        errors = policy.forSource(path.toString());
+        carry = 0;
+        position = 0;
+        records = 0;
+        previous = Long.MIN_VALUE;
+        tailTaken = false;
+    }
+
+    /**
+     * Parses every complete (newline terminated) line in the block, then moves any unfinished line to the start
+     *
+     * @param filled number of bytes in the block
+     * @return number of bytes of the unfinished line now at the start of the block
+     * @throws IOException if a record is earlier than the one before it
+     */
+    private int readBlock(int filled) throws IOException {
+        int lineStart = 0;
+        for(int i = 0; i < filled; i++){
+            if(block[i] == '\n'){
+                if(tailTaken){
+                    // Already taken as a record before its newline arrived
+                    tailTaken = false;
+                }
+                else if(parser.tryParse(block, lineStart, i)){
+                    accept(position - filled + lineStart);
+                }
+                else{
+                    // The block ends at the position read up to
+                    errors.reject(block, lineStart, i, position - filled + lineStart);
+                }
+                lineStart = i + 1;
+            }
+        }
+        int carry = filled - lineStart;
+        System.arraycopy(block, lineStart, block, 0, carry);
+        // A line that doesn't fit in the block
+        if(carry == block.length){
+            block = Arrays.copyOf(block, block.length * 2);
+        }
+        return carry;
+    }
+
+    /**
+     * Adds the record the parser holds to the results
+     *
+     * @param linePosition byte position of the record's line in the file
+     * @throws IOException if the record is earlier than the one before it
+     */
+    private void accept(long linePosition) throws IOException {
+        if(parser.getStamp() < previous){
+            throw new IOException("Record out of chronological order at byte " + linePosition + " of " + path +
+                    ", a followed file can't be sorted");
+        }
+        previous = parser.getStamp();
+        aggregator.accept(parser.getStamp(), parser.getCars());
+        records++;
+    }
+
+    /**
+     * @return the results of every complete record read so far
+     */
+    public TrafficStreamAggregator getAggregator() {
+        return this.aggregator;
+    }
+
+    /**
+     * @return number of complete records read so far
+     */
+    public long getRecords() {
+        return this.records;
+    }
+}
@@ -0,0 +1,287 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a single ISO 8601 traffic record (e.g. "2016-12-01T05:00:00 5") straight into primitive fields, reading
+ * the characters in place rather than splitting the line into Strings. A parser is reused for every line of a
+ * file and holds the fields of the last parsed line, so parsing creates no garbage at all.
+ *
+ * Hours may be written with or without their leading zero ("9:00:00" or "09:00:00"), see TrafficTime for how that
+ * is remembered.
+ *
+ * @author Ryan Cheng
+ */
+public final class TrafficLineParser {
+    private final ByteSequence bytes = new ByteSequence();
+    private byte[] scratch = new byte[64];
+    private long stamp;
+    private int cars;
+    // Records come in runs of the same date, so the last date's conversion is remembered
+    private int lastDate = -1;
+    private long lastEpochDay;
+    private long epochDay;
+
+    /**
+     * Parses a whole line of the traffic counter file
+     *
+     * @param line record in the format yyyy-MM-ddTHH:mm:ss N
+     * @throws NumberFormatException if the line is not a valid record
+     */
+    public void parse(CharSequence line) {
+        parse(line, 0, line.length());
+    }
+
+    /**
+     * Parses a record held in part of a CharSequence
+     *
+     * @param line characters holding the record
+     * @param from index of the first character of the record
+     * @param to index after the last character of the record
+     * @throws NumberFormatException if the characters are not a valid record
+     */
+    public void parse(CharSequence line, int from, int to) {
+        if(!tryParse(line, from, to)){
+            TrafficMetrics.malformedLine();
+            throw new NumberFormatException("Malformed traffic record: \"" + line.subSequence(from, to) + "\"");
+        }
+    }
+
+    /**
+     * Parses a record held in part of a CharSequence without throwing if it isn't valid, for readers that skip bad
+     * lines (see MalformedLines). The fields are only meaningful if it returns true
+     *
+     * @param line characters holding the record
+     * @param from index of the first character of the record
+     * @param to index after the last character of the record
+     * @return whether the characters are a valid record
+     */
+    public boolean tryParse(CharSequence line, int from, int to) {
+        return parseRecord(line, from, to);
+    }
+
+    /**
+     * Parses a record held as ASCII bytes in an array without throwing if it isn't valid
+     *
+     * @param bytes bytes holding the record
+     * @param from index of the first byte of the record
+     * @param to index after the last byte of the record
+     * @return whether the bytes are a valid record
+     */
+    public boolean tryParse(byte[] bytes, int from, int to) {
+        this.bytes.wrap(bytes);
+        return parseRecord(this.bytes, from, to);
+    }
+
+    /**
+     * Parses a record held as ASCII bytes in an array
+     *
+     * @param bytes bytes holding the record
+     * @param from index of the first byte of the record
+     * @param to index after the last byte of the record
+     * @throws NumberFormatException if the bytes are not a valid record
+     */
+    public void parse(byte[] bytes, int from, int to) {
+        this.bytes.wrap(bytes);
+        parse(this.bytes, from, to);
+    }
+
+    /**
+     * Parses a record held as ASCII bytes in a buffer, the buffer's position and limit are left untouched. A direct
+     * buffer (e.g. a memory mapped file) has the record copied into a reusable array first, which is cheaper than
+     * reading it a byte at a time
+     *
+     * @param buffer bytes holding the record
+     * @param from index of the first byte of the record
+     * @param to index after the last byte of the record
+     * @throws NumberFormatException if the bytes are not a valid record
+     */
+    public void parse(ByteBuffer buffer, int from, int to) {
+        if(buffer.hasArray()){
+            parse(buffer.array(), buffer.arrayOffset() + from, buffer.arrayOffset() + to);
+            return;
+        }
+        if(scratch.length < to - from){
+            scratch = new byte[to - from];
+        }
+        buffer.get(from, scratch, 0, to - from);
+        parse(scratch, 0, to - from);
+    }
+
+    /**
+     * @return packed timestamp of the last parsed record, see TrafficTime
+     */
+    public long getStamp() {
+        return this.stamp;
+    }
+
+    /**
+     * @return cars seen in the last parsed record
+     */
+    public int getCars() {
+        return this.cars;
+    }
+
+    /**
+     * @return days since 1970-01-01 of the last parsed record
+     */
+    public long getEpochDay() {
+        return TrafficTime.epochDay(this.stamp);
+    }
+
+    /**
+     * @return minutes since midnight of the last parsed record
+     */
+    public int getMinuteOfDay() {
+        return TrafficTime.minuteOfDay(this.stamp);
+    }
+
+    /**
+     * Packs a separate ISO 8601 date and time, as stored in a TrafficSnapshot, into a timestamp
+     *
+     * @param date String representation of the ISO 8601 date
+     * @param time String representation of the ISO 8601 time
+     * @return the packed timestamp, see TrafficTime
+     * @throws NumberFormatException if the date or time is not valid
+     */
+    public static long parseStamp(String date, String time) {
+        TrafficLineParser parser = new TrafficLineParser();
+        int dateEnd = parser.parseDate(date, 0, date.length());
+        int timeEnd = parser.parseTime(time, 0, time.length());
+        if(dateEnd != date.length() || timeEnd != time.length()){
+            TrafficMetrics.malformedLine();
+            throw new NumberFormatException("Malformed traffic timestamp: \"" + date + "T" + time + "\"");
+        }
+        return parser.stamp;
+    }
+
+    /**
+     * Parses the date, time and cars of a record into the fields
+     *
+     * @return whether the record is valid
+     */
+    private boolean parseRecord(CharSequence s, int from, int to) {
+        // Windows line endings
+        if(to > from && s.charAt(to - 1) == '\r'){
+            to--;
+        }
+        int i = parseDate(s, from, to);
+        if(i < 0 || i >= to || s.charAt(i) != 'T'){
+            return false;
+        }
+        i = parseTime(s, i + 1, to);
+        if(i < 0 || i >= to || s.charAt(i) != ' '){
+            return false;
+        }
+        // Number of cars, at most 9 digits so it can't overflow
+        int start = ++i, value = 0;
+        while(i < to && i - start < 9){
+            int digit = s.charAt(i) - '0';
+            if(digit < 0 || digit > 9){
+                return false;
+            }
+            value = value * 10 + digit;
+            i++;
+        }
+        if(i == start || i != to){
+            return false;
+        }
+        this.cars = value;
+        return true;
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date into days since 1970-01-01
+     *
+     * @return index after the date, or -1 if it is not valid
+     */
+    private int parseDate(CharSequence s, int i, int to) {
+        if(to - i < 10 || s.charAt(i + 4) != '-' || s.charAt(i + 7) != '-'){
+            return -1;
+        }
+        int year = digits(s, i, 4);
+        int month = digits(s, i + 5, 2);
+        int day = digits(s, i + 8, 2);
+        if((year | month | day) < 0){
+            return -1;
+        }
+        int date = (year * 100 + month) * 100 + day;
+        if(date != lastDate){
+            if(month < 1 || month > 12 || day < 1 || day > TrafficTime.lengthOfMonth(year, month)){
+                return -1;
+            }
+            lastDate = date;
+            lastEpochDay = TrafficTime.toEpochDay(year, month, day);
+        }
+        this.epochDay = lastEpochDay;
+        return i + 10;
+    }
+
+    /**
+     * Parses a H:mm:ss or HH:mm:ss time and adds it to the date already in the stamp
+     *
+     * @return index after the time, or -1 if it is not valid
+     */
+    private int parseTime(CharSequence s, int i, int to) {
+        boolean shortHour = to - i > 1 && s.charAt(i + 1) == ':';
+        int hourLength = shortHour ? 1 : 2;
+        if(to - i < hourLength + 6 || s.charAt(i + hourLength) != ':' || s.charAt(i + hourLength + 3) != ':'){
+            return -1;
+        }
+        int hour = digits(s, i, hourLength);
+        int minute = digits(s, i + hourLength + 1, 2);
+        int second = digits(s, i + hourLength + 4, 2);
+        if(hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59){
+            return -1;
+        }
+        this.stamp = TrafficTime.pack(this.epochDay, hour * 3600 + minute * 60 + second, shortHour);
+        return i + hourLength + 6;
+    }
+
+    /**
+     * Reads a fixed number of decimal digits
+     *
+     * @return the value of the digits, or -1 if any of them aren't a digit
+     */
+    private static int digits(CharSequence s, int i, int length) {
+        int value = 0;
+        for(int end = i + length; i < end; i++){
+            int digit = s.charAt(i) - '0';
+            if(digit < 0 || digit > 9){
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Reusable view of ASCII bytes as characters so the same parsing code can be used for both
+     */
+    private static final class ByteSequence implements CharSequence {
+        private byte[] bytes;
+
+        void wrap(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the stages of reading and querying traffic counts, for seeing where the time
+ * goes. Kept as static state for the whole JVM so it can be recorded from anywhere without being passed around, and
+ * exposed through JMX (trafficcounter:type=Metrics and trafficcounter:type=Stage,name=...) and as a JSON summary.
+ *
+ * Recording is cheap enough to leave on: counters are LongAdders that are added to once per file or block rather
+ * than once per record, and a stage timing is two System.nanoTime() calls and a few atomic increments. It can still
+ * be turned off with -Dtrafficcounter.metrics=false, in which case ENABLED is a false constant and the JIT removes
+ * the recording altogether.
+ *
+ * @author Ryan Cheng
+ */
+public final class TrafficMetrics {
+    public static final boolean ENABLED = !"false".equals(System.getProperty("trafficcounter.metrics"));
+
+    public static final Stage EXTRACT_INFO = new Stage("extractInfo");
+    public static final Stage INGEST = new Stage("ingest");
+    public static final Stage TOTAL_CARS = new Stage("totalCars");
+    public static final Stage CARS_BY_DATE = new Stage("carsByDate");
+    public static final Stage TOP_THREE = new Stage("topThree");
+    public static final Stage LEAST_CARS = new Stage("leastCars");
+    private static final List<Stage> STAGES = List.of(EXTRACT_INFO, INGEST, TOTAL_CARS, CARS_BY_DATE, TOP_THREE,
+            LEAST_CARS);
+
+    private static final LongAdder RECORDS_PARSED = new LongAdder();
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder MALFORMED_LINES = new LongAdder();
+    private static final LongAdder READ_ERRORS = new LongAdder();
+    private static final Set<TrafficSnapshotHolder> HOLDERS =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static boolean registered;
+
+    private TrafficMetrics() {
+    }
+
+    /**
+     * @return the time to pass to Stage.record() once the stage is done, or 0 if metrics are off
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts records read and the bytes they took, once per file or block read
+     */
+    public static void recordsRead(long records, long bytes) {
+        if(ENABLED){
+            RECORDS_PARSED.add(records);
+            BYTES_READ.add(bytes);
+        }
+    }
+
+    /**
+     * Counts a line that couldn't be parsed as a record
+     */
+    public static void malformedLine() {
+        if(ENABLED){
+            MALFORMED_LINES.increment();
+        }
+    }
+
+    /**
+     * Counts a file that couldn't be read
+     */
+    public static void readError() {
+        if(ENABLED){
+            READ_ERRORS.increment();
+        }
+    }
+
+    /**
+     * Tracks the memory used by a holder for as long as it's in use
+     */
+    static void register(TrafficSnapshotHolder counter) {
+        if(ENABLED){
+            HOLDERS.add(counter);
+        }
+    }
+
+    /**
+     * Registers the MBeans with the platform MBean server, only done once however many times it's called. This is
+     * left until it's asked for as starting the MBean server takes a noticeable part of a short run
+     */
+    public static synchronized void registerMBeans() {
+        if(registered || !ENABLED){
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new Summary(), new ObjectName("trafficcounter:type=Metrics"));
+            for(Stage stage : STAGES){
+                server.registerMBean(stage, new ObjectName("trafficcounter:type=Stage,name=" + stage.name));
+            }
+            registered = true;
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Could not register the metrics MBeans", e);
+        }
+    }
+
+    /**
+     * Writes the JSON summary to a file when the JVM exits
+     *
+     * @param path location of the summary
+     */
+    public static void dumpAtExit(Path path) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.write(path, toJson().getBytes(StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                System.err.println("Could not write metrics to " + path + ": " + e.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * @return records read from every file so far
+     */
+    public static long recordsParsed() {
+        return RECORDS_PARSED.sum();
+    }
+
+    /**
+     * @return bytes read from every file so far
+     */
+    public static long bytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    /**
+     * @return lines that couldn't be parsed so far
+     */
+    public static long malformedLines() {
+        return MALFORMED_LINES.sum();
+    }
+
+    /**
+     * @return files that couldn't be read so far
+     */
+    public static long readErrors() {
+        return READ_ERRORS.sum();
+    }
+
+    /**
+     * @return bytes used by the columns of every holder still in use
+     */
+    public static long holderHeapBytes() {
+        List<TrafficSnapshotHolder> holders;
+        synchronized (HOLDERS) {
+            holders = new ArrayList<>(HOLDERS);
+        }
+        long bytes = 0;
+        for(TrafficSnapshotHolder counter : holders){
+            bytes += counter.heapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return records parsed per second of time spent reading them
+     */
+    public static double recordsPerSecond() {
+        long nanos = INGEST.histogram.getTotalNanos();
+        return nanos == 0 ? 0 : recordsParsed() * 1e9 / nanos;
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public static void reset() {
+        RECORDS_PARSED.reset();
+        BYTES_READ.reset();
+        MALFORMED_LINES.reset();
+        READ_ERRORS.reset();
+        for(Stage stage : STAGES){
+            stage.reset();
+        }
+    }
+
+    /**
+     * @return every counter and stage latency as a JSON object
+     */
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"enabled\":").append(ENABLED)
+                .append(",\"recordsParsed\":").append(recordsParsed())
+                .append(",\"bytesRead\":").append(bytesRead())
+                .append(",\"malformedLines\":").append(malformedLines())
+                .append(",\"readErrors\":").append(readErrors())
+                .append(",\"recordsPerSecond\":").append(format(recordsPerSecond()))
+                .append(",\"holderHeapBytes\":").append(holderHeapBytes())
+                .append(",\"stages\":{");
+        for(int i = 0; i < STAGES.size(); i++){
+            Stage stage = STAGES.get(i);
+            sb.append(i > 0 ? "," : "").append('"').append(stage.name).append("\":{")
+                    .append("\"count\":").append(stage.getCount())
+                    .append(",\"meanMicros\":").append(format(stage.getMeanMicros()))
+                    .append(",\"p50Micros\":").append(format(stage.getP50Micros()))
+                    .append(",\"p90Micros\":").append(format(stage.getP90Micros()))
+                    .append(",\"p99Micros\":").append(format(stage.getP99Micros()))
+                    .append(",\"maxMicros\":").append(format(stage.getMaxMicros()))
+                    .append('}');
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Latencies of one stage of the application
+     */
+    public static final class Stage implements TrafficStageMXBean {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records the time since the stage started
+         *
+         * @param start value given by TrafficMetrics.start() when the stage started
+         */
+        public void record(long start) {
+            if(ENABLED){
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return this.histogram;
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return histogram.getMeanNanos() / 1000;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return histogram.getPercentileNanos(50) / 1000.0;
+        }
+
+        @Override
+        public double getP90Micros() {
+            return histogram.getPercentileNanos(90) / 1000.0;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return histogram.getPercentileNanos(99) / 1000.0;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return histogram.getMaxNanos() / 1000.0;
+        }
+
+        @Override
+        public void reset() {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * The MBean for the counters
+     */
+    private static final class Summary implements TrafficMetricsMXBean {
+        @Override
+        public long getRecordsParsed() {
+            return recordsParsed();
+        }
+
+        @Override
+        public long getBytesRead() {
+            return bytesRead();
+        }
+
+        @Override
+        public long getMalformedLines() {
+            return malformedLines();
+        }
+
+        @Override
+        public long getReadErrors() {
+            return readErrors();
+        }
+
+        @Override
+        public double getRecordsPerSecond() {
+            return recordsPerSecond();
+        }
+
+        @Override
+        public long getHolderHeapBytes() {
+            return holderHeapBytes();
+        }
+
+        @Override
+        public String getSummary() {
+            return toJson();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * JMX view of the counters kept by TrafficMetrics
+ *
+ * @author Ryan Cheng
+ */
+public interface TrafficMetricsMXBean {
+    long getRecordsParsed();
+
+    long getBytesRead();
+
+    long getMalformedLines();
+
+    long getReadErrors();
+
+    double getRecordsPerSecond();
+
+    long getHolderHeapBytes();
+
+    /**
+     * @return every counter and stage latency as JSON, the same as the summary written at exit
+     */
+    String getSummary();
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of the encoded results of queries on the TrafficServer, bounded by both the number of
+ * results and their total size in bytes. Results are keyed by the dataset, its version and the query, so a result
+ * can never be served for data that has since changed, and the results of a dataset are also dropped as soon as it
+ * changes so they don't take up room until they're evicted.
+ *
+ * Lookups don't take a lock: the results are in a ConcurrentHashMap, each one stamped with a tick of a shared clock
+ * when it's used, and hits and misses are counted in LongAdders. Only adding and dropping results take the
+ * eviction lock. Once the cache is over its bounds, the results used longest ago are evicted in one go, an extra
+ * sixteenth of the entries at a time so a full cache doesn't sort its results for every new one. Eviction is only
+ * approximately least recently used, as a result can be used while it's being evicted.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficQueryCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Map<String, Entry> results = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Object evictionLock = new Object();
+    // Only changed with the eviction lock held
+    private volatile long bytes;
+
+    /**
+     * @param maxEntries most results kept at once
+     * @param maxBytes most bytes of results kept at once
+     */
+    public TrafficQueryCache(int maxEntries, long maxBytes) {
+        if(maxEntries < 1 || maxBytes < 1){
+            throw new IllegalArgumentException("Cache must have room for at least one result");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds the key of a query on a version of a dataset
+     *
+     * @param dataset name of the dataset
+     * @param version version of the dataset, changed every time records are added
+     * @param query the query and its parameters in a fixed order, e.g. "topK?k=3"
+     * @return the key of the result
+     */
+    public static String key(String dataset, long version, String query) {
+        return dataset + '\0' + version + '\0' + query;
+    }
+
+    /**
+     * @param key key of the result, see key()
+     * @return the result, or null if it isn't cached
+     */
+    public byte[] get(String key) {
+        Entry entry = results.get(key);
+        if(entry == null){
+            misses.increment();
+            return null;
+        }
+        entry.lastUsed = clock.incrementAndGet();
+        hits.increment();
+        return entry.result;
+    }
+
+    /**
+     * Caches a result, evicting the least recently used results until it fits. A result larger than the whole
+     * cache isn't kept
+     *
+     * @param key key of the result, see key()
+     * @param result the encoded result
+     */
+    public void put(String key, byte[] result) {
+        if(result.length > maxBytes){
+            return;
+        }
+        synchronized (evictionLock) {
+            Entry previous = results.put(key, new Entry(result, clock.incrementAndGet()));
+            bytes += result.length - (previous == null ? 0 : previous.result.length);
+            if(results.size() > maxEntries || bytes > maxBytes){
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Evicts the results used longest ago until the cache is back within its bounds, with room for a sixteenth
+     * more entries
+     */
+    private void evict() {
+        List<Map.Entry<String, Entry>> eldest = new ArrayList<>(results.entrySet());
+        eldest.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+        int targetEntries = maxEntries - maxEntries / 16;
+        int size = eldest.size();
+        for(int i = 0; i < eldest.size() && (size > targetEntries || bytes > maxBytes); i++){
+            if(results.remove(eldest.get(i).getKey(), eldest.get(i).getValue())){
+                bytes -= eldest.get(i).getValue().result.length;
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Drops every result of a dataset, whatever its version
+     *
+     * @param dataset name of the dataset
+     */
+    public void invalidate(String dataset) {
+        invalidate(dataset, -1);
+    }
+
+    /**
+     * Drops every result of a dataset but those of one version, e.g. the results of a new version worked out before
+     * it was served
+     *
+     * @param dataset name of the dataset
+     * @param keep version whose results are kept
+     */
+    public void invalidate(String dataset, long keep) {
+        String prefix = dataset + '\0';
+        String kept = key(dataset, keep, "");
+        synchronized (evictionLock) {
+            for(Map.Entry<String, Entry> entry : results.entrySet()){
+                if(entry.getKey().startsWith(prefix) && !entry.getKey().startsWith(kept) &&
+                        results.remove(entry.getKey(), entry.getValue())){
+                    bytes -= entry.getValue().result.length;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of results cached
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * @return bytes of results cached
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return number of lookups that found a result
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups that didn't find a result
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * A cached result and the tick of the clock it was last used at
+     */
+    private static final class Entry {
+        private final byte[] result;
+        private volatile long lastUsed;
+
+        Entry(byte[] result, long lastUsed) {
+            this.result = result;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Anything that traffic records can be fed into as they are read, e.g. the TrafficSnapshotHolder to store them or the
+ * TrafficStreamAggregator to process them straight away. Records are given as primitive fields so no objects need to
+ * be created between reading a record and using it.
+ *
+ * @author Ryan Cheng
+ */
+@FunctionalInterface
+public interface TrafficRecordSink {
+    /**
+     * Takes the next record in file order
+     *
+     * @param stamp packed timestamp of the record, see TrafficTime
+     * @param cars number of cars seen in the record
+     */
+    void accept(long stamp, int cars);
+}
@@ -0,0 +1,520 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the results of the traffic counts as a report, either as the original text output or as CSV or JSON lines
+ * for other tools to read.
+ *
+ * Everything is appended to a single reusable StringBuilder, with timestamps formatted straight from their packed
+ * form (see TrafficTime), and only written to the stream when flush() is called or a large amount has built up. So
+ * a report costs one write and one flush rather than a locked and flushed System.out.println() for every line, which
+ * adds up over a batch of thousands of files. The text format is byte for byte what println() gave.
+ *
+ * CSV has one row per value with the columns source,section,rank,key,value: e.g. "data/traffic1.txt,date,,
+ * 2016-12-01,179" or "data/traffic1.txt,least,2,2016-12-01T15:00:00,0" where the rank is the position in the top 3
+ * or the number of the 1.5 hour period. Rows of the fleet rollup of a batch have an empty source. JSON lines has one
+ * object per report.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficReportWriter implements Flushable {
+    private static final String SEPARATOR = "----------------------";
+    private static final String CSV_HEADER = "source,section,rank,key,value";
+    // Written to the stream once this much has built up even without a flush
+    private static final int FLUSH_SIZE = 64 * 1024;
+    private static final int INITIAL_SIZE = 1024;
+    private static final Charset STDOUT_CHARSET = stdoutCharset();
+
+    /**
+     * Formats a report can be written in
+     */
+    public enum Format {
+        TEXT, CSV, JSONL;
+
+        /**
+         * @param name name of the format in any case, e.g. "csv"
+         * @return the format
+         * @throws IllegalArgumentException if there's no format with the name
+         */
+        public static Format of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown format " + name + ", expected text, csv or jsonl");
+            }
+        }
+    }
+
+    private final OutputStream out;
+    private final Format format;
+    private final Charset charset;
+    private final String newline = System.lineSeparator();
+    // Both grow to fit the largest report written so far
+    private final StringBuilder sb = new StringBuilder(INITIAL_SIZE);
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private boolean csvHeaderWritten;
+
+    /**
+     * @param out stream to write to, in the encoding System.out uses
+     * @param format format of the report
+     */
+    public TrafficReportWriter(OutputStream out, Format format) {
+        this(out, format, STDOUT_CHARSET);
+    }
+
+    /**
+     * @param out stream to write to
+     * @param format format of the report
+     * @param charset encoding of anything that isn't ASCII, such as file names
+     */
+    public TrafficReportWriter(OutputStream out, Format format, Charset charset) {
+        this.out = out;
+        this.format = format;
+        this.charset = charset;
+    }
+
+    /**
+     * @param format format of the report
+     * @return a writer to System.out as it is now
+     */
+    public static TrafficReportWriter stdout(Format format) {
+        return new TrafficReportWriter(System.out, format);
+    }
+
+    /**
+     * @return the encoding System.out uses
+     */
+    private static Charset stdoutCharset() {
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        try {
+            return name == null ? Charset.defaultCharset() : Charset.forName(name);
+        }
+        catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    public Format getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Writes a line that is only part of the text format, such as the heading of each file in a batch
+     *
+     * @param text the line, without its line separator
+     */
+    public void line(CharSequence text) {
+        if(format == Format.TEXT){
+            sb.append(text).append(newline);
+        }
+    }
+
+    /**
+     * Writes the results of one file, in the text format these are the same lines as outputResult() always gave
+     *
+     * @param source name of the file, not used by the text format
+     * @param total total cars seen
+     * @param carsByDate cars seen by date
+     * @param topThree top 3 snapshots with most cars, empty if there's not enough data
+     * @param leastCars 1.5 hour periods of least cars, every 3 snapshots being one period
+     */
+    public void report(String source, long total, Map<String, ? extends Number> carsByDate,
+                       List<TrafficSnapshot> topThree, List<TrafficSnapshot> leastCars) {
+        switch(format){
+            case TEXT:
+                textReport(total, carsByDate, topThree, leastCars);
+                break;
+            case CSV:
+                csvReport(source, total, carsByDate, topThree, leastCars);
+                break;
+            default:
+                jsonReport(source, total, carsByDate, topThree, leastCars);
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Writes that a file had no records
+     *
+     * @param source name of the file, not used by the text format
+     */
+    public void empty(String source) {
+        if(format == Format.TEXT){
+            line("File at location is empty, please check file");
+        }
+        else{
+            report(source, 0, Map.of(), List.of(), List.of());
+        }
+    }
+
+    /**
+     * Writes that a file couldn't be read
+     *
+     * @param source name of the file, not used by the text format
+     * @param message why the file couldn't be read
+     */
+    public void error(String source, String message) {
+        switch(format){
+            case TEXT:
+                line("Could not read file: " + message);
+                break;
+            case CSV:
+                csvRow(source, "error", 0, message, null);
+                break;
+            default:
+                sb.append("{\"source\":");
+                appendJsonString(sb, source);
+                sb.append(",\"error\":");
+                appendJsonString(sb, message);
+                sb.append('}').append(newline);
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Writes how many bad lines of a file were skipped, after its results
+     *
+     * @param source name of the file
+     * @param lines number of lines skipped
+     */
+    public void skipped(String source, long lines) {
+        switch(format){
+            case TEXT:
+                sb.append("Skipped ").append(lines).append(" malformed lines").append(newline);
+                break;
+            case CSV:
+                csvRow(source, "malformed", 0, null, lines);
+                break;
+            default:
+                sb.append("{\"source\":");
+                appendJsonString(sb, source);
+                sb.append(",\"malformed\":").append(lines).append('}').append(newline);
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Writes the rollup across every file of a batch
+     *
+     * @param files number of files read
+     * @param failed number of files that couldn't be read
+     * @param total total cars seen across every file
+     * @param carsByDate cars seen by date across every file
+     * @param top number of files ranked
+     * @param topNames names of the files with most cars, most first, at most top of them
+     * @param topTotals total cars of each of those files
+     */
+    public void fleet(int files, int failed, long total, Map<String, Long> carsByDate, int top,
+                      List<String> topNames, List<Long> topTotals) {
+        switch(format){
+            case TEXT:
+                line("==> Fleet rollup <==");
+                sb.append("Files: ").append(files);
+                if(failed > 0){
+                    sb.append(" (").append(failed).append(" could not be read)");
+                }
+                sb.append(newline).append("Total cars: ").append(total).append(newline);
+                line(SEPARATOR);
+                line("Cars by date:");
+                carsByDate.forEach((date, cars) -> sb.append(date).append(' ').append(cars).append(newline));
+                line(SEPARATOR);
+                sb.append("Top ").append(top).append(" files with most cars:").append(newline);
+                for(int i = 0; i < topNames.size(); i++){
+                    sb.append(topNames.get(i)).append(' ').append(topTotals.get(i)).append(newline);
+                }
+                line(SEPARATOR);
+                break;
+            case CSV:
+                csvRow("", "files", 0, null, (long) files);
+                csvRow("", "failed", 0, null, (long) failed);
+                csvRow("", "total", 0, null, total);
+                carsByDate.forEach((date, cars) -> csvRow("", "date", 0, date, cars));
+                for(int i = 0; i < topNames.size(); i++){
+                    csvRow("", "top", i + 1, topNames.get(i), topTotals.get(i));
+                }
+                break;
+            default:
+                sb.append("{\"fleet\":{\"files\":").append(files).append(",\"failed\":").append(failed)
+                        .append(",\"total\":").append(total).append(",\"carsByDate\":");
+                appendJsonDates(carsByDate);
+                sb.append(",\"topFiles\":[");
+                for(int i = 0; i < topNames.size(); i++){
+                    sb.append(i > 0 ? ",{\"source\":" : "{\"source\":");
+                    appendJsonString(sb, topNames.get(i));
+                    sb.append(",\"cars\":").append(topTotals.get(i)).append('}');
+                }
+                sb.append("]}}").append(newline);
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Writes the approximate rollup across every file of a batch from their merged sketches
+     *
+     * @param sketch sketch of every file read
+     * @param top number of half hours ranked
+     */
+    public void sketch(TrafficSketch sketch, int top) {
+        List<TrafficSnapshot> busiest = sketch.busiest(top);
+        long[] percentiles = {sketch.carsQuantile(0.5), sketch.carsQuantile(0.95), sketch.carsQuantile(0.99)};
+        switch(format){
+            case TEXT:
+                sb.append("Top ").append(top).append(" half hours across files (approximate, at most ")
+                        .append(sketch.getBusiestError()).append(" cars over):").append(newline);
+                for(TrafficSnapshot ts : busiest){
+                    ts.appendTo(sb).append(newline);
+                }
+                line(SEPARATOR);
+                sb.append("Cars per half hour (approximate): p50 ").append(percentiles[0]).append(", p95 ")
+                        .append(percentiles[1]).append(", p99 ").append(percentiles[2]).append(newline);
+                line(SEPARATOR);
+                break;
+            case CSV:
+                for(int i = 0; i < busiest.size(); i++){
+                    csvSnapshot("", "busiest", i + 1, busiest.get(i));
+                }
+                csvRow("", "busiestError", 0, null, sketch.getBusiestError());
+                csvRow("", "p50", 0, null, percentiles[0]);
+                csvRow("", "p95", 0, null, percentiles[1]);
+                csvRow("", "p99", 0, null, percentiles[2]);
+                break;
+            default:
+                sb.append("{\"sketch\":{\"busiest\":[");
+                for(int i = 0; i < busiest.size(); i++){
+                    appendJsonSnapshot(i > 0, busiest.get(i));
+                }
+                sb.append("],\"busiestError\":").append(sketch.getBusiestError())
+                        .append(",\"p50\":").append(percentiles[0])
+                        .append(",\"p95\":").append(percentiles[1])
+                        .append(",\"p99\":").append(percentiles[2]).append("}}").append(newline);
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Writes everything built up so far to the stream in one write and flushes it
+     *
+     * @throws UncheckedIOException if the stream can't be written to
+     */
+    @Override
+    public void flush() {
+        try {
+            int length = sb.length();
+            if(bytes.length < length){
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            // Reports are almost always ASCII, which is the same in any encoding System.out could use
+            int i = 0;
+            while(i < length && sb.charAt(i) < 0x80){
+                bytes[i] = (byte) sb.charAt(i);
+                i++;
+            }
+            if(i == length){
+                out.write(bytes, 0, length);
+            }
+            else{
+                out.write(sb.toString().getBytes(charset));
+            }
+            out.flush();
+            sb.setLength(0);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushIfFull() {
+        if(sb.length() >= FLUSH_SIZE){
+            flush();
+        }
+    }
+
+    private void textReport(long total, Map<String, ? extends Number> carsByDate, List<TrafficSnapshot> topThree,
+                            List<TrafficSnapshot> leastCars) {
+        // Total cars seen in data
+        sb.append("Total cars: ").append(total).append(newline);
+        line(SEPARATOR);
+
+        // Number of cars seen by date
+        line("Cars by date:");
+        carsByDate.forEach((date, cars) -> sb.append(date).append(' ').append(cars).append(newline));
+        line(SEPARATOR);
+
+        // Top 3 timestamps with most cars
+        if(topThree.isEmpty()){
+            line("Top 3 half hours with most cars NOT APPLICABLE");
+        }
+        else {
+            line("Top 3 half hours with most cars:");
+            for(TrafficSnapshot ts : topThree){
+                ts.appendTo(sb).append(newline);
+            }
+            line(SEPARATOR);
+        }
+
+        // Least 1.5 period of cars
+        if(leastCars.isEmpty()){
+            line("Least 1.5 hour period NOT APPLICABLE");
+        }
+        else {
+            line("1.5 hour period with least cars:");
+            for(int i = 0; i < leastCars.size(); i++){
+                leastCars.get(i).appendTo(sb).append(newline);
+                if(i % 3 == 2){
+                    line(SEPARATOR);
+                }
+            }
+        }
+    }
+
+    private void csvReport(String source, long total, Map<String, ? extends Number> carsByDate,
+                           List<TrafficSnapshot> topThree, List<TrafficSnapshot> leastCars) {
+        csvRow(source, "total", 0, null, total);
+        carsByDate.forEach((date, cars) -> csvRow(source, "date", 0, date, cars.longValue()));
+        for(int i = 0; i < topThree.size(); i++){
+            csvSnapshot(source, "top", i + 1, topThree.get(i));
+        }
+        for(int i = 0; i < leastCars.size(); i++){
+            csvSnapshot(source, "least", i / 3 + 1, leastCars.get(i));
+        }
+    }
+
+    private void jsonReport(String source, long total, Map<String, ? extends Number> carsByDate,
+                            List<TrafficSnapshot> topThree, List<TrafficSnapshot> leastCars) {
+        sb.append("{\"source\":");
+        appendJsonString(sb, source);
+        sb.append(",\"total\":").append(total).append(",\"carsByDate\":");
+        appendJsonDates(carsByDate);
+        sb.append(",\"topThree\":[");
+        for(int i = 0; i < topThree.size(); i++){
+            appendJsonSnapshot(i > 0, topThree.get(i));
+        }
+        sb.append("],\"leastCars\":[");
+        for(int i = 0; i < leastCars.size(); i++){
+            // Each period is an array of its 3 snapshots
+            if(i % 3 == 0){
+                sb.append(i > 0 ? ",[" : "[");
+            }
+            appendJsonSnapshot(i % 3 > 0, leastCars.get(i));
+            if(i % 3 == 2 || i == leastCars.size() - 1){
+                sb.append(']');
+            }
+        }
+        sb.append("]}").append(newline);
+    }
+
+    private void csvSnapshot(String source, String section, int rank, TrafficSnapshot ts) {
+        csvSource(source);
+        sb.append(section).append(',').append(rank).append(',');
+        appendTimestamp(ts.getStamp());
+        sb.append(',').append(ts.getCars()).append(newline);
+    }
+
+    /**
+     * Writes a CSV row, leaving out a rank of 0 and a null key or value
+     */
+    private void csvRow(String source, String section, int rank, String key, Number value) {
+        csvSource(source);
+        sb.append(section).append(',');
+        if(rank > 0){
+            sb.append(rank);
+        }
+        sb.append(',');
+        if(key != null){
+            appendCsvField(key);
+        }
+        sb.append(',');
+        if(value != null){
+            sb.append(value.longValue());
+        }
+        sb.append(newline);
+    }
+
+    /**
+     * Starts a CSV row with its source, writing the header first if it hasn't been yet
+     */
+    private void csvSource(String source) {
+        if(!csvHeaderWritten){
+            sb.append(CSV_HEADER).append(newline);
+            csvHeaderWritten = true;
+        }
+        appendCsvField(source);
+        sb.append(',');
+    }
+
+    /**
+     * Appends a CSV field, quoted if it has a comma, quote or line break in it
+     */
+    private void appendCsvField(String field) {
+        boolean quote = false;
+        for(int i = 0; i < field.length() && !quote; i++){
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote){
+            sb.append(field);
+            return;
+        }
+        sb.append('"');
+        for(int i = 0; i < field.length(); i++){
+            char c = field.charAt(i);
+            sb.append(c == '"' ? "\"\"" : String.valueOf(c));
+        }
+        sb.append('"');
+    }
+
+    private void appendJsonDates(Map<String, ? extends Number> carsByDate) {
+        sb.append('{');
+        boolean first = true;
+        for(Map.Entry<String, ? extends Number> date : carsByDate.entrySet()){
+            sb.append(first ? "\"" : ",\"").append(date.getKey()).append("\":").append(date.getValue().longValue());
+            first = false;
+        }
+        sb.append('}');
+    }
+
+    private void appendJsonSnapshot(boolean comma, TrafficSnapshot ts) {
+        sb.append(comma ? ",{\"timestamp\":\"" : "{\"timestamp\":\"");
+        appendTimestamp(ts.getStamp());
+        sb.append("\",\"cars\":").append(ts.getCars()).append('}');
+    }
+
+    /**
+     * Appends the ISO 8601 timestamp, e.g. 2016-12-01T05:30:00
+     */
+    private void appendTimestamp(long stamp) {
+        TrafficTime.appendDate(sb, TrafficTime.epochDay(stamp));
+        sb.append('T');
+        TrafficTime.appendTime(sb, stamp);
+    }
+
+    /**
+     * Appends the text as a JSON string, with quotes, backslashes and control characters escaped
+     *
+     * @param sb builder to append to
+     * @param text the text
+     */
+    static void appendJsonString(StringBuilder sb, String text) {
+        sb.append('"');
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\'){
+                sb.append('\\').append(c);
+            }
+            else if(c < ' '){
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else{
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
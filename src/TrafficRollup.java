@@ -0,0 +1,407 @@
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Index of the cars seen in each half hour, built once from a set of records so that the total over any range of
+ * time (an hour, a day, an ISO week, a month or any two timestamps) is answered by two binary searches rather than a
+ * scan of every record.
+ *
+ * The records are summed into one bucket per half hour that has any records (records in between half hours, e.g. at
+ * 05:15:00, go in the half hour they fall in), kept sorted by time as primitive arrays along with a running total of
+ * the cars before each bucket. The records don't have to be in chronological order, records for the same half hour
+ * are added together wherever they are, and an already sorted set of records is found with one pass and not sorted
+ * again. Only half hours that have records take up space, so data spread over many years costs no more than dense
+ * data. The labelled totals of each period are built the first time they're asked for and kept, as the rollup
+ * never changes once built.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficRollup {
+    public static final int SLOT_SECONDS = 1800;
+    private static final int SLOTS_PER_HOUR = 2;
+    private static final int SLOTS_PER_DAY = TrafficTime.SECONDS_PER_DAY / SLOT_SECONDS;
+    private static final int DAYS_PER_WEEK = 7;
+    // 1970-01-01 was a Thursday, so Mondays are 3 days after a multiple of 7 days from the epoch
+    private static final int MONDAY_OFFSET = 3;
+
+    /**
+     * Periods of time the cars can be grouped by
+     */
+    public enum Bucket { HOUR, DAY, WEEK, MONTH }
+
+    // Half hours since the epoch that have records, in ascending order. An int covers 120,000 years either side
+    private final int[] slots;
+    // Cars and records in the buckets before each one, one longer than the buckets
+    private final long[] carsBefore;
+    private final int[] recordsBefore;
+    private final int count;
+    // Cars by each bucket and by date once asked for, handed out as copies
+    private final AtomicReferenceArray<LinkedHashMap<String, Long>> carsBy =
+            new AtomicReferenceArray<>(Bucket.values().length);
+    private volatile LinkedHashMap<String, Integer> carsByDate;
+
+    /**
+     * Builds the index for the first size records of the columns, which are left untouched. The buckets are counted
+     * before they're filled so the index takes exactly 16 bytes per half hour with records, and records already in
+     * order need nothing else. Records out of order take another 8 bytes each while they're sorted
+     *
+     * @param stamps packed timestamps of the records
+     * @param cars cars seen in each record
+     * @param size number of records
+     */
+    public TrafficRollup(long[] stamps, int[] cars, int size) {
+        boolean sorted = true;
+        int buckets = 0;
+        long previous = 0;
+        for(int i = 0; i < size && sorted; i++){
+            long slot = slotOf(stamps[i]);
+            if(i > 0 && slot < previous){
+                sorted = false;
+            }
+            else if(i == 0 || slot != previous){
+                buckets++;
+            }
+            previous = slot;
+        }
+        long min = 0;
+        long[] keys = null;
+        if(!sorted){
+            min = Long.MAX_VALUE;
+            for(int i = 0; i < size; i++){
+                min = Math.min(min, slotOf(stamps[i]));
+            }
+            keys = sortedKeys(stamps, size, min);
+            buckets = 0;
+            for(int i = 0; i < size; i++){
+                if(i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32){
+                    buckets++;
+                }
+            }
+        }
+
+        slots = new int[buckets];
+        carsBefore = new long[buckets + 1];
+        recordsBefore = new int[buckets + 1];
+        int bucket = 0;
+        for(int i = 0; i < size; i++){
+            int record = sorted ? i : (int) keys[i];
+            int slot = (int) (sorted ? slotOf(stamps[i]) : min + (keys[i] >>> 32));
+            if(bucket == 0 || slots[bucket - 1] != slot){
+                slots[bucket] = slot;
+                carsBefore[bucket + 1] = carsBefore[bucket];
+                recordsBefore[bucket + 1] = recordsBefore[bucket];
+                bucket++;
+            }
+            carsBefore[bucket] += cars[record];
+            recordsBefore[bucket]++;
+        }
+        count = buckets;
+    }
+
+    private TrafficRollup(int[] slots, long[] carsBefore, int[] recordsBefore, int count) {
+        this.slots = slots;
+        this.carsBefore = carsBefore;
+        this.recordsBefore = recordsBefore;
+        this.count = count;
+    }
+
+    /**
+     * Builds the index of these records followed by more, only reading the new records. This index is left as it is
+     * so it can still be used while the new one is built
+     *
+     * @param stamps packed timestamps of the records
+     * @param cars cars seen in each record
+     * @param from position of the first new record
+     * @param to position after the last new record
+     * @return the index of the records of this one and the new ones
+     * @throws IllegalArgumentException if the new records aren't in order from the last half hour of this index on
+     */
+    public TrafficRollup extend(long[] stamps, int[] cars, int from, int to) {
+        int buckets = count;
+        long previous = count > 0 ? slots[count - 1] : Long.MIN_VALUE;
+        for(int i = from; i < to; i++){
+            long slot = slotOf(stamps[i]);
+            if(slot < previous){
+                throw new IllegalArgumentException("Record " + i + " is earlier than the records before it");
+            }
+            if(slot != previous){
+                buckets++;
+            }
+            previous = slot;
+        }
+
+        int[] extendedSlots = Arrays.copyOf(slots, buckets);
+        long[] extendedCars = Arrays.copyOf(carsBefore, buckets + 1);
+        int[] extendedRecords = Arrays.copyOf(recordsBefore, buckets + 1);
+        int bucket = count;
+        for(int i = from; i < to; i++){
+            int slot = (int) slotOf(stamps[i]);
+            if(bucket == 0 || extendedSlots[bucket - 1] != slot){
+                extendedSlots[bucket] = slot;
+                extendedCars[bucket + 1] = extendedCars[bucket];
+                extendedRecords[bucket + 1] = extendedRecords[bucket];
+                bucket++;
+            }
+            extendedCars[bucket] += cars[i];
+            extendedRecords[bucket]++;
+        }
+        return new TrafficRollup(extendedSlots, extendedCars, extendedRecords, buckets);
+    }
+
+    /**
+     * @return half hours since the epoch of a packed timestamp
+     */
+    private static long slotOf(long stamp) {
+        return Math.floorDiv(TrafficTime.epochSecond(stamp), SLOT_SECONDS);
+    }
+
+    /**
+     * Sorts the records by half hour as primitives rather than boxed indexes: the half hour (relative to the
+     * earliest) goes in the top bits and the record's index in the bottom 32 bits
+     */
+    private static long[] sortedKeys(long[] stamps, int size, long min) {
+        long[] keys = new long[size];
+        for(int i = 0; i < size; i++){
+            keys[i] = ((slotOf(stamps[i]) - min) << 32) | i;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Totals the cars seen from one time up to another, to the half hour
+     *
+     * @param fromStamp packed timestamp of the start of the range, included
+     * @param toStamp packed timestamp of the end of the range, excluded
+     * @return cars seen in the range
+     */
+    public long carsBetween(long fromStamp, long toStamp) {
+        return carsBetweenSlots(slotOf(fromStamp), slotOf(toStamp));
+    }
+
+    /**
+     * @param epochHour hours since 1970-01-01T00:00:00
+     * @return cars seen in the hour
+     */
+    public long carsInHour(long epochHour) {
+        return carsBetweenSlots(epochHour * SLOTS_PER_HOUR, (epochHour + 1) * SLOTS_PER_HOUR);
+    }
+
+    /**
+     * @param epochDay days since 1970-01-01
+     * @return cars seen on the date
+     */
+    public long carsOnDay(long epochDay) {
+        return carsBetweenSlots(epochDay * SLOTS_PER_DAY, (epochDay + 1) * SLOTS_PER_DAY);
+    }
+
+    /**
+     * @param weekYear ISO week based year
+     * @param week ISO week of the year from 1 to 53, weeks start on a Monday
+     * @return cars seen in the week
+     */
+    public long carsInWeek(int weekYear, int week) {
+        // Week 1 is the week with the 4th of January in it
+        long january4 = TrafficTime.toEpochDay(weekYear, 1, 4);
+        long monday = january4 - Math.floorMod(january4 + MONDAY_OFFSET, DAYS_PER_WEEK) +
+                (long) (week - 1) * DAYS_PER_WEEK;
+        return carsBetweenSlots(monday * SLOTS_PER_DAY, (monday + DAYS_PER_WEEK) * SLOTS_PER_DAY);
+    }
+
+    /**
+     * @param year the year
+     * @param month month of the year from 1 to 12
+     * @return cars seen in the month
+     */
+    public long carsInMonth(int year, int month) {
+        long first = TrafficTime.toEpochDay(year, month, 1);
+        long last = first + TrafficTime.lengthOfMonth(year, month);
+        return carsBetweenSlots(first * SLOTS_PER_DAY, last * SLOTS_PER_DAY);
+    }
+
+    /**
+     * @return total cars seen
+     */
+    public long totalCars() {
+        return carsBefore[count];
+    }
+
+    /**
+     * Gives the cars seen on each date with any records. Unlike a scan in file order, records on the same date are
+     * always added together even if other dates come in between
+     *
+     * @return cars seen by date (e.g. "2016-12-01"), in chronological order
+     */
+    public LinkedHashMap<String, Integer> carsByDate() {
+        LinkedHashMap<String, Integer> dateHashMap = carsByDate;
+        if(dateHashMap == null){
+            dateHashMap = new LinkedHashMap<>();
+            for(Map.Entry<String, Long> date : cachedCarsBy(Bucket.DAY).entrySet()){
+                dateHashMap.put(date.getKey(), (int) (long) date.getValue());
+            }
+            carsByDate = dateHashMap;
+        }
+        return new LinkedHashMap<>(dateHashMap);
+    }
+
+    /**
+     * Gives the cars seen in each hour, date, ISO week or month with any records
+     *
+     * @param bucket period of time to group by
+     * @return cars seen in each period, in chronological order, labelled "2016-12-01T05", "2016-12-01", "2016-W48"
+     * or "2016-12"
+     */
+    public LinkedHashMap<String, Long> carsBy(Bucket bucket) {
+        return new LinkedHashMap<>(cachedCarsBy(bucket));
+    }
+
+    /**
+     * Labels the periods of a bucket the first time they're asked for, the rollup never changing afterwards. Two
+     * threads asking at once may both label them, only one map being kept
+     *
+     * @return cars seen in each period, which must not be changed
+     */
+    private LinkedHashMap<String, Long> cachedCarsBy(Bucket bucket) {
+        LinkedHashMap<String, Long> cached = carsBy.get(bucket.ordinal());
+        if(cached == null){
+            carsBy.compareAndSet(bucket.ordinal(), null, labelCarsBy(bucket));
+            cached = carsBy.get(bucket.ordinal());
+        }
+        return cached;
+    }
+
+    private LinkedHashMap<String, Long> labelCarsBy(Bucket bucket) {
+        LinkedHashMap<String, Long> carsBy = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder(13);
+        int start = 0;
+        long startKey = 0;
+        for(int i = 0; i <= count; i++){
+            long key = i < count ? key(bucket, slots[i]) : 0;
+            if(i > 0 && (i == count || key != startKey)){
+                sb.setLength(0);
+                appendLabel(sb, bucket, slots[start]);
+                carsBy.put(sb.toString(), carsBefore[i] - carsBefore[start]);
+                start = i;
+            }
+            startKey = key;
+        }
+        return carsBy;
+    }
+
+    /**
+     * Same totals as carsBy(Bucket.HOUR) as primitives without labelling them, for combining the hours of many
+     * rollups
+     *
+     * @return hours since 1970-01-01T00:00:00 that have records in ascending order, then the cars seen in each hour
+     */
+    public long[][] carsByHour() {
+        long[] hours = new long[count];
+        long[] hourCars = new long[count];
+        int hourCount = 0;
+        for(int i = 0; i < count; i++){
+            long hour = Math.floorDiv(slots[i], SLOTS_PER_HOUR);
+            if(hourCount == 0 || hours[hourCount - 1] != hour){
+                hours[hourCount++] = hour;
+            }
+            hourCars[hourCount - 1] += carsBefore[i + 1] - carsBefore[i];
+        }
+        return new long[][]{Arrays.copyOf(hours, hourCount), Arrays.copyOf(hourCars, hourCount)};
+    }
+
+    /**
+     * @return number of half hours with records
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return whether there are no records
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return number of records in the half hours from one up to another
+     */
+    public long recordsBetween(long fromStamp, long toStamp) {
+        int from = firstAtOrAfter(slotOf(fromStamp));
+        int to = firstAtOrAfter(slotOf(toStamp));
+        return to > from ? recordsBefore[to] - recordsBefore[from] : 0;
+    }
+
+    /**
+     * Totals the cars of the half hours from one up to (not including) another
+     */
+    private long carsBetweenSlots(long fromSlot, long toSlot) {
+        int from = firstAtOrAfter(fromSlot);
+        int to = firstAtOrAfter(toSlot);
+        return to > from ? carsBefore[to] - carsBefore[from] : 0;
+    }
+
+    /**
+     * @return position of the first bucket at or after the given half hour, or count if there's none
+     */
+    private int firstAtOrAfter(long slot) {
+        int low = 0;
+        int high = count;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(slots[middle] < slot){
+                low = middle + 1;
+            }
+            else{
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return a number that is the same for every half hour in the same period and increases with time
+     */
+    private static long key(Bucket bucket, long slot) {
+        long epochDay = Math.floorDiv(slot, SLOTS_PER_DAY);
+        switch(bucket){
+            case HOUR:
+                return Math.floorDiv(slot, SLOTS_PER_HOUR);
+            case DAY:
+                return epochDay;
+            case WEEK:
+                return Math.floorDiv(epochDay + MONDAY_OFFSET, DAYS_PER_WEEK);
+            default:
+                LocalDate date = LocalDate.ofEpochDay(epochDay);
+                return date.getYear() * 12L + date.getMonthValue();
+        }
+    }
+
+    /**
+     * Appends the label of the period the half hour is in
+     */
+    private static void appendLabel(StringBuilder sb, Bucket bucket, long slot) {
+        long epochDay = Math.floorDiv(slot, SLOTS_PER_DAY);
+        switch(bucket){
+            case HOUR:
+                TrafficTime.appendDate(sb, epochDay);
+                int hour = Math.floorMod(slot, SLOTS_PER_DAY) / SLOTS_PER_HOUR;
+                sb.append('T').append(hour < 10 ? "0" : "").append(hour);
+                break;
+            case DAY:
+                TrafficTime.appendDate(sb, epochDay);
+                break;
+            case WEEK:
+                LocalDate date = LocalDate.ofEpochDay(epochDay);
+                int week = date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+                sb.append(date.get(IsoFields.WEEK_BASED_YEAR)).append("-W").append(week < 10 ? "0" : "").append(week);
+                break;
+            default:
+                TrafficTime.appendDate(sb, epochDay);
+                sb.setLength(sb.length() - 3);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded HTTP server on localhost that answers queries on traffic counter datasets loaded once into memory, so
+ * scripts can ask many questions without starting a JVM and reading the file for each one. Every answer is JSON:
+ *
+ * GET /datasets                        the loaded datasets with their number of records and version
+ * GET /total?dataset=name              total cars seen
+ * GET /carsByDate?dataset=name         cars seen by date, in chronological order
+ * GET /topK?dataset=name&k=3           the k half hours with most cars, earlier first for equal cars
+ * GET /leastWindow?dataset=name&minutes=90  window of contiguous records with least cars, null if there's none
+ * GET /mostWindow?dataset=name&minutes=90   window of contiguous records with most cars, null if there's none
+ *                                           (minutes is a multiple of 30 up to a year)
+ * GET /stats                           request latencies, cache use and the TrafficMetrics summary
+ * POST /append?dataset=name            adds the records in the body, one line each in the same format as the files
+ *
+ * The dataset can be left out when only one is loaded. Answers are kept in a TrafficQueryCache keyed by the dataset's
+ * version, which changes whenever records are appended, and the common queries are worked out ahead of time for
+ * every load and append, before the new version is served, so they're always answered from the cache.
+ *
+ * Requests are handled on virtual threads when the JVM has them (Java 21 on), otherwise on a fixed pool of threads.
+ * A dataset is never changed once it's served: an append copies its records with the new ones added, sorts them and
+ * builds their rollup index while queries carry on with the old copy, then swaps the new copy in. Queries don't take
+ * a lock and never wait for an append, at the cost of holding both copies while the new one is made. Records
+ * appended in order after the last ones only extend the rollup index rather than building it again.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficServer implements Closeable {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 1024;
+    private static final int CACHE_ENTRIES = 10_000;
+    private static final long CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_K = 3;
+    private static final int DEFAULT_WINDOW_MINUTES = 90;
+    private static final int MAX_K = 10_000;
+    // A year, as every distinct length is its own cached answer and the window keeps a slot per half hour of it
+    private static final int MAX_WINDOW_MINUTES = 366 * 24 * 60;
+    private static final String JSON = "application/json";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Dataset> datasets = new ConcurrentSkipListMap<>();
+    private final TrafficQueryCache cache = new TrafficQueryCache(CACHE_ENTRIES, CACHE_BYTES);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Versions are never reused, even by a dataset loaded again under the same name
+    private final AtomicLong versions = new AtomicLong();
+    // Held while a dataset is swapped in, so an append never copies a dataset that's being replaced
+    private final Object swapLock = new Object();
+
+    /**
+     * Binds the server to the loopback address, call start() once the datasets are loaded
+     *
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException if the port can't be bound
+     */
+    public TrafficServer(int port) throws IOException {
+        this(port, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param port port to listen on, 0 for any free port
+     * @param threads size of the pool handling requests when virtual threads aren't available
+     * @throws IOException if the port can't be bound
+     */
+    public TrafficServer(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        executor = newExecutor(threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Creates a virtual thread per request executor, looked up by reflection as the build targets Java 17, falling
+     * back to a fixed pool of platform threads
+     */
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(1, threads));
+        }
+    }
+
+    /**
+     * Starts answering requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops answering requests and releases the port
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return port the server is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Reads a text or binary traffic counter file, in any order, as a dataset
+     *
+     * @param name name of the dataset in queries, replacing any dataset with the same name
+     * @param path location of the file
+     * @throws IOException if the file can't be read
+     */
+    public void load(String name, Path path) throws IOException {
+        load(name, new TrafficSorter().read(path, TrafficSnapshotHolder::new));
+    }
+
+    /**
+     * Serves a holder as a dataset, the holder must not be changed afterwards (append() changes a copy of it)
+     *
+     * @param name name of the dataset in queries, replacing any dataset with the same name
+     * @param counter the records of the dataset
+     */
+    public void load(String name, TrafficSnapshotHolder counter) {
+        prepare(counter);
+        Dataset dataset = new Dataset(name, counter, versions.incrementAndGet());
+        precompute(dataset);
+        synchronized (swapLock) {
+            datasets.put(name, dataset);
+        }
+        cache.invalidate(name, dataset.version);
+    }
+
+    /**
+     * Adds records to the end of a dataset, which needn't be in chronological order, and drops every cached answer
+     * for it
+     *
+     * @param name name of the dataset
+     * @param stamps packed timestamps of the records
+     * @param cars cars seen in each record
+     * @param count number of records
+     * @return the new version of the dataset
+     * @throws IllegalArgumentException if there's no dataset with the name
+     */
+    public long append(String name, long[] stamps, int[] cars, int count) {
+        Dataset dataset;
+        synchronized (swapLock) {
+            Dataset previous = datasets.get(name);
+            if(previous == null){
+                throw new IllegalArgumentException("No dataset named " + name);
+            }
+            TrafficSnapshotHolder counter = previous.counter.copyWith(stamps, cars, count);
+            prepare(counter);
+            dataset = new Dataset(name, counter, versions.incrementAndGet());
+            precompute(dataset);
+            datasets.put(name, dataset);
+        }
+        cache.invalidate(name, dataset.version);
+        return dataset.version;
+    }
+
+    /**
+     * Puts the records in order and builds the rollup index before the holder is served, so queries never change it
+     */
+    private static void prepare(TrafficSnapshotHolder counter) {
+        counter.sort();
+        counter.rollup();
+    }
+
+    /**
+     * @return the cache of answers
+     */
+    public TrafficQueryCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * @return time taken to handle each request, from reading it to writing the answer
+     */
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Works out the answers to the queries with their default parameters so they're cached before they're asked
+     */
+    private void precompute(Dataset dataset) {
+        for(String query : new String[]{"total", "carsByDate", "topK", "leastWindow", "mostWindow"}){
+            try {
+                answer(dataset, query, Map.of());
+            }
+            catch (QueryException e) {
+                throw new IllegalStateException("Default query failed: " + query, e);
+            }
+        }
+    }
+
+    /**
+     * Handles every request, answering with JSON and an error status for anything that can't be answered
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String query = exchange.getRequestURI().getPath().substring(1);
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            byte[] body;
+            if(query.equals("append")){
+                requireMethod(exchange, "POST");
+                body = append(dataset(params), exchange.getRequestBody());
+            }
+            else{
+                requireMethod(exchange, "GET");
+                if(query.equals("datasets")){
+                    body = datasetsJson();
+                }
+                else if(query.equals("stats")){
+                    body = statsJson();
+                }
+                else{
+                    body = answer(dataset(params), query, params);
+                }
+            }
+            respond(exchange, 200, body);
+        }
+        catch (QueryException e) {
+            respond(exchange, e.status, ("{\"error\":" + quote(e.getMessage()) + "}").getBytes(StandardCharsets.UTF_8));
+        }
+        finally {
+            exchange.close();
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Answers a query on a dataset from the cache, working it out and caching it if it isn't there
+     */
+    private byte[] answer(Dataset dataset, String query, Map<String, String> params) throws QueryException {
+        String key;
+        int k = 0;
+        int minutes = 0;
+        switch(query){
+            case "total":
+            case "carsByDate":
+                key = query;
+                break;
+            case "topK":
+                k = intParam(params, "k", DEFAULT_K, 1, MAX_K);
+                key = query + "?k=" + k;
+                break;
+            case "leastWindow":
+            case "mostWindow":
+                minutes = intParam(params, "minutes", DEFAULT_WINDOW_MINUTES, WindowAggregator.RECORD_MINUTES,
+                        MAX_WINDOW_MINUTES);
+                if(minutes % WindowAggregator.RECORD_MINUTES != 0){
+                    throw new QueryException(400, "minutes must be a multiple of " + WindowAggregator.RECORD_MINUTES);
+                }
+                key = query + "?minutes=" + minutes;
+                break;
+            default:
+                throw new QueryException(404, "Unknown query: /" + query);
+        }
+        String cacheKey = TrafficQueryCache.key(dataset.name, dataset.version, key);
+        byte[] result = cache.get(cacheKey);
+        if(result == null){
+            StringBuilder sb = new StringBuilder();
+            TrafficSnapshotHolder counter = dataset.counter;
+            switch(query){
+                case "total":
+                    sb.append("{\"total\":").append(counter.totalCars()).append('}');
+                    break;
+                case "carsByDate":
+                    appendCarsByDate(sb, counter);
+                    break;
+                case "topK":
+                    appendSnapshots(sb, counter.topK(k));
+                    break;
+                case "leastWindow":
+                    appendWindow(sb, counter.leastWindow(minutes));
+                    break;
+                default:
+                    appendWindow(sb, counter.mostWindow(minutes));
+            }
+            result = sb.toString().getBytes(StandardCharsets.UTF_8);
+            cache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Parses every line of the body and appends them to the dataset, nothing is appended if any line is malformed
+     */
+    private byte[] append(Dataset dataset, InputStream in) throws IOException, QueryException {
+        byte[] bytes = in.readAllBytes();
+        TrafficLineParser parser = new TrafficLineParser();
+        long[] stamps = new long[16];
+        int[] cars = new int[16];
+        int count = 0;
+        int lineStart = 0;
+        for(int i = 0; i <= bytes.length; i++){
+            if(i == bytes.length || bytes[i] == '\n'){
+                if(i > lineStart){
+                    try {
+                        parser.parse(bytes, lineStart, i);
+                    }
+                    catch (NumberFormatException e) {
+                        throw new QueryException(400, e.getMessage());
+                    }
+                    if(count == stamps.length){
+                        stamps = Arrays.copyOf(stamps, count * 2);
+                        cars = Arrays.copyOf(cars, count * 2);
+                    }
+                    stamps[count] = parser.getStamp();
+                    cars[count++] = parser.getCars();
+                }
+                lineStart = i + 1;
+            }
+        }
+        long version = append(dataset.name, stamps, cars, count);
+        return ("{\"appended\":" + count + ",\"version\":" + version + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the dataset named in the parameters, or the only dataset if none is named
+     */
+    private Dataset dataset(Map<String, String> params) throws QueryException {
+        String name = params.get("dataset");
+        if(name == null){
+            if(datasets.size() != 1){
+                throw new QueryException(400, "dataset must be given when " + datasets.size() + " are loaded");
+            }
+            return datasets.values().iterator().next();
+        }
+        Dataset dataset = datasets.get(name);
+        if(dataset == null){
+            throw new QueryException(404, "No dataset named " + name);
+        }
+        return dataset;
+    }
+
+    private byte[] datasetsJson() {
+        StringBuilder sb = new StringBuilder("{\"datasets\":[");
+        List<Dataset> loaded = new ArrayList<>(datasets.values());
+        for(int i = 0; i < loaded.size(); i++){
+            Dataset dataset = loaded.get(i);
+            sb.append(i > 0 ? "," : "").append("{\"name\":").append(quote(dataset.name))
+                    .append(",\"records\":").append(dataset.counter.size())
+                    .append(",\"version\":").append(dataset.version).append('}');
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] statsJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"requests\":").append(latency.getCount())
+                .append(",\"p50Micros\":").append(latency.getPercentileNanos(50) / 1000.0)
+                .append(",\"p99Micros\":").append(latency.getPercentileNanos(99) / 1000.0)
+                .append(",\"maxMicros\":").append(latency.getMaxNanos() / 1000.0)
+                .append(",\"cache\":{\"entries\":").append(cache.size())
+                .append(",\"bytes\":").append(cache.getBytes())
+                .append(",\"hits\":").append(cache.getHits())
+                .append(",\"misses\":").append(cache.getMisses())
+                .append("},\"metrics\":").append(TrafficMetrics.toJson()).append('}');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendCarsByDate(StringBuilder sb, TrafficSnapshotHolder counter) {
+        sb.append('{');
+        boolean first = true;
+        for(Map.Entry<String, Integer> date : counter.carsByDate().entrySet()){
+            sb.append(first ? "" : ",").append('"').append(date.getKey()).append("\":").append(date.getValue());
+            first = false;
+        }
+        sb.append('}');
+    }
+
+    private static void appendSnapshots(StringBuilder sb, List<TrafficSnapshot> snapshots) {
+        sb.append('[');
+        for(int i = 0; i < snapshots.size(); i++){
+            TrafficSnapshot ts = snapshots.get(i);
+            sb.append(i > 0 ? "," : "").append("{\"timestamp\":");
+            appendTimestamp(sb, ts.getStamp());
+            sb.append(",\"cars\":").append(ts.getCars()).append('}');
+        }
+        sb.append(']');
+    }
+
+    private static void appendWindow(StringBuilder sb, TrafficWindow window) {
+        if(window == null){
+            sb.append("null");
+            return;
+        }
+        sb.append("{\"start\":");
+        appendTimestamp(sb, window.getStart());
+        sb.append(",\"end\":");
+        appendTimestamp(sb, window.getEnd());
+        sb.append(",\"cars\":").append(window.getCars()).append(",\"ties\":").append(window.getTies()).append('}');
+    }
+
+    /**
+     * Appends the quoted ISO 8601 timestamp, e.g. "2016-12-01T05:30:00"
+     */
+    private static void appendTimestamp(StringBuilder sb, long stamp) {
+        sb.append('"');
+        TrafficTime.appendDate(sb, TrafficTime.epochDay(stamp));
+        sb.append('T');
+        TrafficTime.appendTime(sb, stamp);
+        sb.append('"');
+    }
+
+    /**
+     * @return the text as a JSON string, with quotes, backslashes and control characters escaped
+     */
+    private static String quote(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2);
+        TrafficReportWriter.appendJsonString(sb, text);
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseParams(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if(rawQuery == null || rawQuery.isEmpty()){
+            return params;
+        }
+        for(String param : rawQuery.split("&")){
+            int equals = param.indexOf('=');
+            String name = equals < 0 ? param : param.substring(0, equals);
+            String value = equals < 0 ? "" : param.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max)
+            throws QueryException {
+        String value = params.get(name);
+        if(value == null){
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if(parsed >= min && parsed <= max){
+                return parsed;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new QueryException(400, name + " must be a number from " + min + " to " + max + ": " + value);
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) throws QueryException {
+        if(!exchange.getRequestMethod().equals(method)){
+            throw new QueryException(405, method + " is needed for " + exchange.getRequestURI().getPath());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * A version of a dataset, never changed once it's served
+     */
+    private static final class Dataset {
+        private final String name;
+        private final TrafficSnapshotHolder counter;
+        private final long version;
+
+        Dataset(String name, TrafficSnapshotHolder counter, long version) {
+            this.name = name;
+            this.counter = counter;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A request that can't be answered, with the HTTP status to give
+     */
+    private static final class QueryException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        QueryException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
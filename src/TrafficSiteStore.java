@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Traffic counts of many sites (e.g. one counter per intersection) held side by side, each site in a partition of
+ * its own: a TrafficSnapshotHolder built from the site's file exactly as for a single file, so every query on one
+ * site gives the same answer as it would on its own. Sites are registered by their ID and numbered from 0 in the
+ * order they were registered, and the partitions are kept in an array indexed by that number rather than looked up
+ * in a map. Results that come from more than one site are TrafficSiteTotals, which carry the site ID.
+ *
+ * No two partitions share anything on the ingest path: a site's file is read into a new holder on its own thread,
+ * which also builds its rollup index, and only swapped in once it's complete, so loading many sites scales across
+ * cores without contending and queries never change a partition. Registering a site and swapping its partition in
+ * are the only steps under the store's lock, once per site rather than once per record. Queries on every site run on
+ * a fork join pool, one task per site, and the cross-site queries combine the results of each site afterwards. A
+ * partition filled through partition() directly must not be queried while it's being filled.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficSiteStore {
+    private static final int INITIAL_SITES = 16;
+    private static final int SECONDS_PER_HOUR = 3600;
+    private static final int HOURS_PER_DAY = 24;
+
+    private final ForkJoinPool pool;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[INITIAL_SITES];
+    private TrafficSnapshotHolder[] partitions = new TrafficSnapshotHolder[INITIAL_SITES];
+    private int size;
+
+    /**
+     * Creates an empty store that loads and queries sites on the common fork join pool
+     */
+    public TrafficSiteStore() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool pool to load and query the sites on
+     */
+    public TrafficSiteStore(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a site with an empty partition, unless it's already in the store
+     *
+     * @param site ID of the site
+     * @return number of the site
+     */
+    public int register(String site) {
+        return put(site, null);
+    }
+
+    /**
+     * Adds a site unless it's already in the store, then replaces its records with a complete partition if one is
+     * given
+     */
+    private synchronized int put(String site, TrafficSnapshotHolder partition) {
+        Integer id = ids.get(site);
+        if(id == null){
+            if(size == names.length){
+                int capacity = size + (size >> 1);
+                names = Arrays.copyOf(names, capacity);
+                partitions = Arrays.copyOf(partitions, capacity);
+            }
+            names[size] = site;
+            partitions[size] = new TrafficSnapshotHolder();
+            ids.put(site, size);
+            id = size++;
+        }
+        if(partition != null){
+            partitions[id] = partition;
+        }
+        return id;
+    }
+
+    /**
+     * @param site ID of the site
+     * @return number of the site, or -1 if it isn't in the store
+     */
+    public synchronized int siteNumber(String site) {
+        Integer id = ids.get(site);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param site number of the site
+     * @return ID of the site
+     */
+    public synchronized String siteId(int site) {
+        Objects.checkIndex(site, size);
+        return names[site];
+    }
+
+    /**
+     * @return number of sites
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gives the records of a site, which can also be fed records directly (e.g. by a reader) by one thread at a time
+     *
+     * @param site number of the site
+     * @return the partition of the site
+     */
+    public synchronized TrafficSnapshotHolder partition(int site) {
+        Objects.checkIndex(site, size);
+        return partitions[site];
+    }
+
+    /**
+     * @return the partitions of every site as they are now, indexed by site number
+     */
+    private synchronized TrafficSnapshotHolder[] partitions() {
+        return Arrays.copyOf(partitions, size);
+    }
+
+    /**
+     * Reads a site's file into its partition, registering the site if it's new and replacing any records it had.
+     * The file is read the same way as a single file, sorting it if it's out of chronological order. Nothing
+     * changes if the file can't be read
+     *
+     * @param site ID of the site
+     * @param path location of the site's text, compressed or binary traffic counter file
+     * @throws IOException if the file can't be read
+     * @throws NumberFormatException if a line is not a valid record
+     */
+    public void load(String site, Path path) throws IOException {
+        put(site, read(new TrafficSorter(), path));
+    }
+
+    /**
+     * Reads the files of many sites at the same time on the pool, each into a partition of its own. No site is
+     * registered or replaced unless every file is read
+     *
+     * @param files location of the file of each site, by site ID
+     * @throws IOException if a file can't be read
+     * @throws NumberFormatException if a line is not a valid record
+     */
+    public void loadAll(Map<String, Path> files) throws IOException {
+        // Files out of chronological order are sorted, sharing the memory budget between the threads
+        long sortBudget = Runtime.getRuntime().maxMemory() / 4 / Math.max(1, pool.getParallelism());
+        Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+        List<String> sites = new ArrayList<>();
+        List<Callable<TrafficSnapshotHolder>> tasks = new ArrayList<>();
+        for(Map.Entry<String, Path> file : files.entrySet()){
+            sites.add(file.getKey());
+            Path path = file.getValue();
+            tasks.add(() -> read(new TrafficSorter(sortBudget, spillDirectory), path));
+        }
+        List<TrafficSnapshotHolder> loaded = new ArrayList<>();
+        for(Future<TrafficSnapshotHolder> future : pool.invokeAll(tasks)){
+            loaded.add(join(future));
+        }
+        for(int i = 0; i < sites.size(); i++){
+            put(sites.get(i), loaded.get(i));
+        }
+    }
+
+    /**
+     * Reads a site's file into a new partition and builds its rollup index, so it's complete before any query
+     * sees it
+     */
+    private static TrafficSnapshotHolder read(TrafficSorter sorter, Path path) throws IOException {
+        TrafficSnapshotHolder partition = sorter.read(path, TrafficSnapshotHolder::new);
+        partition.rollup();
+        return partition;
+    }
+
+    /**
+     * Runs a query on every site at the same time on the pool
+     *
+     * @param query the query on the records of one site
+     * @param <T> type of the result of the query
+     * @return the result for each site, indexed by site number
+     */
+    public <T> List<T> perSite(Function<TrafficSnapshotHolder, T> query) {
+        List<Callable<T>> tasks = new ArrayList<>();
+        for(TrafficSnapshotHolder partition : partitions()){
+            tasks.add(() -> query.apply(partition));
+        }
+        List<T> results = new ArrayList<>();
+        for(Future<T> future : pool.invokeAll(tasks)){
+            try {
+                results.add(join(future));
+            }
+            catch (IOException e) {
+                // Queries don't read files
+                throw new IllegalStateException(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param k number of snapshots wanted for each site
+     * @return the k snapshots with the most cars at each site, indexed by site number
+     */
+    public List<ArrayList<TrafficSnapshot>> topK(int k) {
+        return perSite(partition -> partition.topK(k));
+    }
+
+    /**
+     * @param windowMinutes length of the window in minutes, a positive multiple of 30
+     * @return the window of contiguous records with the least cars at each site (null for a site without one),
+     * indexed by site number
+     */
+    public List<TrafficWindow> leastWindow(int windowMinutes) {
+        return perSite(partition -> partition.leastWindow(windowMinutes));
+    }
+
+    /**
+     * @return cars seen by date at each site, indexed by site number
+     */
+    public List<LinkedHashMap<String, Integer>> carsByDate() {
+        return perSite(TrafficSnapshotHolder::carsByDate);
+    }
+
+    /**
+     * Ranks the sites by the cars seen on a date, leaving out sites with no records that day
+     *
+     * @param epochDay days since 1970-01-01
+     * @return the total of each site for the date, most cars first and the site registered first on equal totals
+     */
+    public List<TrafficSiteTotal> rankOnDay(long epochDay) {
+        return rank(TrafficTime.pack(epochDay, 0, false), TrafficTime.pack(epochDay + 1, 0, false));
+    }
+
+    /**
+     * Ranks the sites by the cars seen from one time up to another, to the half hour, leaving out sites with no
+     * records in that time. Each site's total comes from its rollup index, so this doesn't scan any records once
+     * the indexes are built
+     *
+     * @param fromStamp packed timestamp of the start of the range, included
+     * @param toStamp packed timestamp of the end of the range, excluded
+     * @return the total of each site for the range, most cars first and the site registered first on equal totals
+     */
+    public List<TrafficSiteTotal> rank(long fromStamp, long toStamp) {
+        List<long[]> totals = perSite(partition -> {
+            TrafficRollup rollup = partition.rollup();
+            return new long[]{rollup.carsBetween(fromStamp, toStamp), rollup.recordsBetween(fromStamp, toStamp)};
+        });
+        List<Integer> order = new ArrayList<>();
+        for(int i = 0; i < totals.size(); i++){
+            if(totals.get(i)[1] > 0){
+                order.add(i);
+            }
+        }
+        // Stable sort keeps the site registered first first for equal totals
+        order.sort((a, b) -> Long.compare(totals.get(b)[0], totals.get(a)[0]));
+        List<TrafficSiteTotal> ranking = new ArrayList<>();
+        for(int site : order){
+            ranking.add(new TrafficSiteTotal(siteId(site), fromStamp, totals.get(site)[0]));
+        }
+        return ranking;
+    }
+
+    /**
+     * Finds the site that saw the most cars in every hour any site has records for. The cars by hour of each site
+     * are totalled on the pool, then every site's hours are sorted together by hour as primitives and the busiest
+     * site of each hour picked out in one pass
+     *
+     * @return the busiest site of each hour in chronological order, the site registered first on equal totals
+     */
+    public List<TrafficSiteTotal> busiestSiteByHour() {
+        List<long[][]> siteHours = perSite(partition -> partition.rollup().carsByHour());
+        int count = 0;
+        for(long[][] hours : siteHours){
+            count += hours[0].length;
+        }
+        long[] hours = new long[count];
+        int[] entries = new int[count];
+        long[] cars = new long[count];
+        int[] sites = new int[count];
+        int entry = 0;
+        for(int site = 0; site < siteHours.size(); site++){
+            long[][] siteHour = siteHours.get(site);
+            for(int i = 0; i < siteHour[0].length; i++){
+                hours[entry] = siteHour[0][i];
+                cars[entry] = siteHour[1][i];
+                sites[entry] = site;
+                entries[entry] = entry;
+                entry++;
+            }
+        }
+        // Stable, so sites stay in the order they were registered within each hour
+        TrafficSorter.sort(hours, entries, count);
+        List<TrafficSiteTotal> busiest = new ArrayList<>();
+        int best = -1;
+        for(int i = 0; i <= count; i++){
+            if(i > 0 && (i == count || hours[i] != hours[i - 1])){
+                long hour = hours[i - 1];
+                busiest.add(new TrafficSiteTotal(siteId(sites[best]), TrafficTime.pack(Math.floorDiv(hour,
+                        HOURS_PER_DAY), Math.floorMod(hour, HOURS_PER_DAY) * SECONDS_PER_HOUR, false),
+                        cars[best]));
+                best = -1;
+            }
+            if(i < count && (best < 0 || cars[entries[i]] > cars[best])){
+                best = entries[i];
+            }
+        }
+        return busiest;
+    }
+
+    /**
+     * Waits for a task on the pool, throwing the same exception it would have thrown on the calling thread
+     */
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a site", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // The fork join pool wraps the checked exceptions of a task in a plain RuntimeException, which may itself
+            // be wrapped again to give it the stack of the waiting thread
+            while(cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null){
+                cause = cause.getCause();
+            }
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Cars seen at one site over a period of time, as given by the cross-site queries of a TrafficSiteStore. Unlike a
+ * TrafficSnapshot it says which site the cars were seen at
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficSiteTotal {
+    private final String site;
+    private final long stamp;
+    private final long cars;
+
+    /**
+     * @param site ID of the site
+     * @param stamp packed timestamp of the start of the period
+     * @param cars total cars seen at the site in the period
+     */
+    public TrafficSiteTotal(String site, long stamp, long cars) {
+        this.site = site;
+        this.stamp = stamp;
+        this.cars = cars;
+    }
+
+    /**
+     * @return ID of the site
+     */
+    public String getSite() {
+        return site;
+    }
+
+    /**
+     * @return packed timestamp of the start of the period
+     */
+    public long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * @return total cars seen at the site in the period
+     */
+    public long getCars() {
+        return cars;
+    }
+
+    /**
+     * Formats the total as the start of the period, the site and the cars seen, e.g. "2016-12-01T05:00:00 north 31"
+     *
+     * @return String form of the total
+     */
+    @Override
+    public String toString() {
+        return TrafficTime.formatDate(stamp) + "T" + TrafficTime.formatTime(stamp) + " " + site + " " + cars;
+    }
+}
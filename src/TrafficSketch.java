@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Approximate summary of any number of traffic counter files in fixed memory, for rollups across a whole fleet where
+ * keeping the exact cars of every half hour isn't practical. Built from the same records as the other sinks:
+ *
+ * - the half hours with most cars across every file, summed over the files, by a SpaceSaving summary. The cars given
+ *   are never below the true total and at most getBusiestError() above it, which is at most the total cars / 1024.
+ * - the cars in any half hour across every file, by a Count-Min sketch that is within 0.1% of the total cars of the
+ *   true total with 99% probability, also taking the SpaceSaving bound when it's tighter.
+ * - percentiles of the cars seen in each record by a KllSketch, with the rank of each off by at most 1.65% with 99%
+ *   confidence.
+ *
+ * Sketches of separate files or parts of a file merge cheaply in any order, with the same bounds on the result, so
+ * each file can be sketched on its own thread and merged as it's done.
+ *
+ * Half hours are keyed on the local time of the record without whether its hour was written as a single digit, so
+ * "5:00" and "05:00" are the same half hour, and busiest() always gives two digit hours. The times have no zone, so
+ * in a file that runs through the end of daylight saving time the repeated hour is added to the same half hours as
+ * the first one, as it is by the TrafficRollup.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficSketch implements TrafficRecordSink {
+    static final int BUSIEST_CAPACITY = 1024;
+    static final double SLOT_EPSILON = 0.001;
+    static final double SLOT_DELTA = 0.01;
+    private static final int SLOT_SECONDS = WindowAggregator.RECORD_MINUTES * 60;
+
+    private final SpaceSaving busiest = new SpaceSaving(BUSIEST_CAPACITY);
+    // Only made once there are more half hours than the SpaceSaving can hold exactly, as most single files never do
+    private CountMinSketch slotCars;
+    private final KllSketch carsPerRecord = new KllSketch();
+
+    /**
+     * Adds a record to every sketch
+     *
+     * @param stamp packed timestamp of the record
+     * @param cars number of cars seen in the record
+     */
+    @Override
+    public void accept(long stamp, int cars) {
+        long slot = Math.floorDiv(TrafficTime.epochSecond(stamp), SLOT_SECONDS);
+        if(slotCars == null && busiest.size() == BUSIEST_CAPACITY){
+            slotCars = exactSlotCars();
+        }
+        busiest.add(slot, cars);
+        if(slotCars != null){
+            slotCars.add(slot, cars);
+        }
+        carsPerRecord.add(cars);
+    }
+
+    /**
+     * Merges the sketch of other files into this one
+     *
+     * @param other sketch of other files, left untouched
+     */
+    public void merge(TrafficSketch other) {
+        if(slotCars != null || other.slotCars != null || busiest.size() + other.busiest.size() > BUSIEST_CAPACITY){
+            if(slotCars == null){
+                slotCars = exactSlotCars();
+            }
+            slotCars.merge(other.slotCars != null ? other.slotCars : other.exactSlotCars());
+        }
+        busiest.merge(other.busiest);
+        carsPerRecord.merge(other.carsPerRecord);
+    }
+
+    /**
+     * @return Count-Min sketch of the half hours of the SpaceSaving while it still holds every one of them exactly
+     */
+    private CountMinSketch exactSlotCars() {
+        CountMinSketch sketch = CountMinSketch.withError(SLOT_EPSILON, SLOT_DELTA);
+        for(long[] slot : busiest.top(BUSIEST_CAPACITY)){
+            sketch.add(slot[0], slot[1]);
+        }
+        return sketch;
+    }
+
+    /**
+     * @return number of records sketched
+     */
+    public long getCount() {
+        return carsPerRecord.getCount();
+    }
+
+    /**
+     * @return total cars of every record sketched, exact
+     */
+    public long totalCars() {
+        return busiest.getTotal();
+    }
+
+    /**
+     * Gives the half hours with most cars summed across every file, the earlier half hour first for equal cars
+     *
+     * @param k number of half hours wanted
+     * @return snapshots of the start of each half hour with its estimated cars, most cars first
+     */
+    public List<TrafficSnapshot> busiest(int k) {
+        List<TrafficSnapshot> top = new ArrayList<>();
+        for(long[] slot : busiest.top(k)){
+            top.add(new TrafficSnapshot(slotStamp(slot[0]), (int) Math.min(Integer.MAX_VALUE, slot[1])));
+        }
+        return top;
+    }
+
+    /**
+     * @return most the cars given by busiest() are above the true totals
+     */
+    public long getBusiestError() {
+        return busiest.getFloor();
+    }
+
+    /**
+     * Estimates the cars in the half hour of a timestamp summed across every file, never below the true total
+     *
+     * @param stamp packed timestamp in the half hour
+     * @return the estimated cars
+     */
+    public long estimateCars(long stamp) {
+        long slot = Math.floorDiv(TrafficTime.epochSecond(stamp), SLOT_SECONDS);
+        return slotCars == null ? busiest.estimate(slot) : Math.min(busiest.estimate(slot), slotCars.estimate(slot));
+    }
+
+    /**
+     * @param fraction the quantile from 0 to 1, e.g. 0.99 for p99
+     * @return estimated cars seen in a record at that quantile
+     */
+    public long carsQuantile(double fraction) {
+        return carsPerRecord.quantile(fraction);
+    }
+
+    /**
+     * @return packed timestamp of the start of a half hour
+     */
+    private static long slotStamp(long slot) {
+        long second = slot * SLOT_SECONDS;
+        return TrafficTime.pack(Math.floorDiv(second, TrafficTime.SECONDS_PER_DAY),
+                Math.floorMod(second, TrafficTime.SECONDS_PER_DAY), false);
+    }
+}
@@ -5,20 +5,29 @@
  * @author Ryan Cheng
  */
 public class TrafficSnapshot {
-    private int cars;
-    private String date;
-    private String time;
+    // Kept as the primitive fields it was parsed into, the Strings are only made when they're asked for
+    private final long stamp;
+    private final int cars;
 
     /**
      * standard constructor method for instantiating this object
      * @param date String representation of the ISO 8601 date
      * @param time String representation of the ISO 8601 time
      * @param cars number of cars seen in the respective timestamp
+     * @throws NumberFormatException if the date or time is not valid
      */
     public TrafficSnapshot(String date, String time, int cars){
+        this(TrafficLineParser.parseStamp(date, time), cars);
+    }
+
+    /**
+     * Creates the snapshot from the primitive fields it was parsed into, see TrafficTime
+     * @param stamp packed timestamp
+     * @param cars number of cars seen in the respective timestamp
+     */
+    public TrafficSnapshot(long stamp, int cars){
+        this.stamp = stamp;
         this.cars = cars;
-        this.date = date;
-        this.time = time;
     }
 
     /**
@@ -26,9 +35,19 @@ public class TrafficSnapshot {
      * @return String representing the same format as the input
      */
     public String backToTimeStamp(){
-        String timestamp;
-        timestamp = this.date + "T" + this.time + " " + this.cars;
-        return timestamp;
+        return appendTo(new StringBuilder(24)).toString();
+    }
+
+    /**
+     * Appends the snapshot in the same format as backToTimeStamp(), without creating any Strings
+     * @param sb builder to append to
+     * @return the builder
+     */
+    public StringBuilder appendTo(StringBuilder sb){
+        TrafficTime.appendDate(sb, TrafficTime.epochDay(stamp));
+        sb.append('T');
+        TrafficTime.appendTime(sb, stamp);
+        return sb.append(' ').append(cars);
     }
 
     /**
@@ -44,7 +63,7 @@ public class TrafficSnapshot {
      * @return the String date of the timestamp
      */
     public String getDate() {
-        return this.date;
+        return TrafficTime.formatDate(stamp);
     }
 
     /**
@@ -52,6 +71,14 @@ public class TrafficSnapshot {
      * @return the String time of the timestamp
      */
     public String getTime() {
-        return this.time;
+        return TrafficTime.formatTime(stamp);
+    }
+
+    /**
+     * Retrieves the object's packed timestamp, see TrafficTime
+     * @return the packed timestamp
+     */
+    public long getStamp() {
+        return this.stamp;
     }
 }
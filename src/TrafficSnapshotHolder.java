@@ -1,15 +1,171 @@
 import java.util.*;
 
 /**
- * This class is the powerhouse of the application. Inherits and behaves like an ArrayList but with the extended
- * functionality for the purpose of the program. It contains all the TrafficSnapshot objects and methods to process
- * them for the desired correct output.
+ * This class is the powerhouse of the application. It contains all the traffic counts and methods to process them
+ * for the desired correct output.
+ *
+ * The counts are stored in columns of primitives rather than as a list of TrafficSnapshot objects: one long array
+ * of packed timestamps (see TrafficTime) and one int array of cars, 12 bytes per half hour record. TrafficSnapshot
+ * objects are only created when a record is retrieved or returned as a result.
  *
  * @author Ryan Cheng
  */
-public class TrafficSnapshotHolder extends ArrayList<TrafficSnapshot> {
+public class TrafficSnapshotHolder implements TrafficRecordSink {
     // Since the timestamp changes by either increments of 30 or 70 (e.g. 500 -> 530 -> 600)
     private static final int MAX_TIME_DIFFERENCE = 70;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] stamps = new long[INITIAL_CAPACITY];
+    private int[] cars = new int[INITIAL_CAPACITY];
+    private int size;
+    // Built the first time it's needed and thrown away when a record is added. Volatile so that holders queried
+    // from many threads, such as the partitions of a TrafficSiteStore, only ever see a complete rollup
+    private volatile TrafficRollup rollup;
+
+    public TrafficSnapshotHolder() {
+        TrafficMetrics.register(this);
+    }
+
+    /**
+     * Adds a snapshot to the end of the holder
+     *
+     * @param ts an individual snapshot of a traffic count
+     */
+    public void add(TrafficSnapshot ts) {
+        add(ts.getStamp(), ts.getCars());
+    }
+
+    /**
+     * Adds a record to the end of the holder, growing the columns by half when they're full like an ArrayList
+     *
+     * @param stamp packed timestamp of the record
+     * @param cars number of cars seen in the record
+     */
+    public void add(long stamp, int cars) {
+        if(size == stamps.length){
+            int capacity = size + (size >> 1);
+            stamps = Arrays.copyOf(stamps, capacity);
+            this.cars = Arrays.copyOf(this.cars, capacity);
+        }
+        stamps[size] = stamp;
+        this.cars[size] = cars;
+        size++;
+        rollup = null;
+    }
+
+    /**
+     * Makes room for at least the given number of records without growing the columns again, e.g. before loading
+     * a file whose number of records is known
+     *
+     * @param capacity number of records to make room for
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity > stamps.length){
+            stamps = Arrays.copyOf(stamps, capacity);
+            cars = Arrays.copyOf(cars, capacity);
+        }
+    }
+
+    /**
+     * Copies the records into a new holder with more added to the end, leaving this holder as it is so it can still
+     * be queried while the copy is made. When the new records are in order from the last half hour of this holder's
+     * rollup index on, the copy's index extends it rather than being built from every record again
+     *
+     * @param stamps packed timestamps of the records to add
+     * @param cars cars seen in each record to add
+     * @param count number of records to add
+     * @return the new holder
+     */
+    public TrafficSnapshotHolder copyWith(long[] stamps, int[] cars, int count) {
+        TrafficSnapshotHolder copy = new TrafficSnapshotHolder();
+        copy.stamps = Arrays.copyOf(this.stamps, size + count);
+        copy.cars = Arrays.copyOf(this.cars, size + count);
+        System.arraycopy(stamps, 0, copy.stamps, size, count);
+        System.arraycopy(cars, 0, copy.cars, size, count);
+        copy.size = size + count;
+        TrafficRollup built = rollup;
+        if(built != null){
+            try {
+                copy.rollup = built.extend(copy.stamps, copy.cars, size, copy.size);
+            }
+            catch (IllegalArgumentException e) {
+                // Out of order, built from every record when it's next needed
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Puts the records in chronological order, keeping records with the same timestamp in the order they were added.
+     * Records that are already in order are only checked, not sorted again
+     */
+    public void sort() {
+        if(!TrafficSorter.isSorted(stamps, size)){
+            TrafficSorter.sort(stamps, cars, size);
+            rollup = null;
+        }
+    }
+
+    /**
+     * Stores the next record read from a file, same as add()
+     *
+     * @param stamp packed timestamp of the record
+     * @param cars number of cars seen in the record
+     */
+    @Override
+    public void accept(long stamp, int cars) {
+        add(stamp, cars);
+    }
+
+    /**
+     * Creates the snapshot for the record at the given position
+     *
+     * @param index position of the record in the order it was added
+     * @return the snapshot of the record
+     */
+    public TrafficSnapshot get(int index) {
+        Objects.checkIndex(index, size);
+        return new TrafficSnapshot(stamps[index], cars[index]);
+    }
+
+    /**
+     * @param index position of the record in the order it was added
+     * @return packed timestamp of the record
+     */
+    public long getStamp(int index) {
+        Objects.checkIndex(index, size);
+        return stamps[index];
+    }
+
+    /**
+     * @param index position of the record in the order it was added
+     * @return number of cars seen in the record
+     */
+    public int getCars(int index) {
+        Objects.checkIndex(index, size);
+        return cars[index];
+    }
+
+    /**
+     * @return number of records held
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether no records are held
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return bytes taken by the columns, including room not yet filled
+     */
+    public long heapBytes() {
+        return (long) stamps.length * Long.BYTES + (long) cars.length * Integer.BYTES;
+    }
 
     /**
      * Simple method which groups and calls the methods needed for the output
@@ -23,152 +179,182 @@ public class TrafficSnapshotHolder extends ArrayList<TrafficSnapshot> {
     }
 
     /**
-     * Iterates over the TrafficSnapshotHolder ArrayList and sums all the total cars seen
+     * Same as processSnapshots(), writing the results to a report in any of its formats. The report isn't flushed
+     *
+     * @param writer report to write to
+     * @param source name of the file the records came from
+     */
+    public void processSnapshots(TrafficReportWriter writer, String source) {
+        writer.report(source, totalCars(), carsByDate(), topThree(), leastCars());
+    }
+
+    /**
+     * Iterates over the cars column and sums all the total cars seen
      */
     public int totalCars() {
+        long start = TrafficMetrics.start();
         int total = 0;
-        for (TrafficSnapshot ts : this){
-            total += ts.getCars();
+        for(int i = 0; i < size; i++){
+            total += cars[i];
         }
+        TrafficMetrics.TOTAL_CARS.record(start);
         return total;
     }
 
     /**
      * WIth the whole traffic data, this method will check the total cars seen on a particular date.
-     * Stored within a LinkedHashMap for easy adding and iteration for an ordered output (with the assumption that
-     * the data provided in the file is ordered in chronological order)
+     * Stored within a LinkedHashMap for easy iteration in chronological order. The totals come from the rollup
+     * index, so records on the same date are added together even when the data isn't in chronological order, and are
+     * kept until another record is added
      */
     public LinkedHashMap<String, Integer> carsByDate() {
-        LinkedHashMap<String, Integer> dateHashMap = new LinkedHashMap<>();
-        String currentDate = this.get(0).getDate();
-        int currentCars = 0;
-        for(TrafficSnapshot ts : this){
-            // Sum cars seen by date, or else change to new date and continue to put in the hashmap
-            if(ts.getDate().equals(currentDate)){
-                currentCars += ts.getCars();
-            }
-            else{
-                currentDate = ts.getDate();
-                currentCars = ts.getCars();
-            }
-            dateHashMap.put(currentDate, currentCars);
-        }
+        long start = TrafficMetrics.start();
+        LinkedHashMap<String, Integer> dateHashMap = rollup().carsByDate();
+        TrafficMetrics.CARS_BY_DATE.record(start);
         return dateHashMap;
     }
 
     /**
-     * Method that calculates the top 3 traffic snapshots given the whole data. Uses a 'blank' pre-filled ArrayList
-     * for ease of logic of only needing 3 objects in it
+     * Gives the index of cars seen in each half hour for totals over any range of time, built once and kept until
+     * another record is added. Safe to call from many threads at once while no records are being added, though
+     * each may build the index if none has been yet
+     *
+     * @return the rollup index of all the records
+     */
+    public TrafficRollup rollup() {
+        TrafficRollup built = rollup;
+        if(built == null){
+            built = new TrafficRollup(stamps, cars, size);
+            rollup = built;
+        }
+        return built;
+    }
+
+    /**
+     * Throws away the rollup index so the next query that needs it builds it again (only for benchmarking the
+     * queries rather than the kept results)
+     */
+    void dropRollup() {
+        rollup = null;
+    }
+
+    /**
+     * Method that calculates the top 3 traffic snapshots given the whole data, for an equal number of cars the
+     * earlier timestamp comes first
      */
     public ArrayList<TrafficSnapshot> topThree() {
-        TrafficSnapshot blank = new TrafficSnapshot("", "", 0);
-        TrafficSnapshot temp, tempTwo;
-        ArrayList<TrafficSnapshot> topThreeSnapshots = new ArrayList<>();
+        long start = TrafficMetrics.start();
         // Standard check if it's not possible to find top 3
-        if(this.size() < 3){
-            return topThreeSnapshots;
+        ArrayList<TrafficSnapshot> topThree = size < 3 ? new ArrayList<>() : topK(3);
+        TrafficMetrics.TOP_THREE.record(start);
+        return topThree;
+    }
+
+    /**
+     * Calculates the k traffic snapshots with the most cars given the whole data, using a bounded heap so it's
+     * O(n log k). For an equal number of cars the earlier timestamp comes first
+     *
+     * @param k number of snapshots wanted
+     * @return ArrayList of the top k snapshots (fewer if there isn't enough data), most cars first
+     */
+    public ArrayList<TrafficSnapshot> topK(int k) {
+        TopK top = new TopK(k);
+        for(int i = 0; i < size; i++){
+            top.offer(stamps[i], cars[i]);
         }
-        topThreeSnapshots.addAll(Arrays.asList(blank, blank, blank));
-        for(TrafficSnapshot ts :this){
-            if(ts.getCars() > topThreeSnapshots.get(0).getCars()){
-                temp = topThreeSnapshots.get(0);
-                topThreeSnapshots.set(0, ts);
-            }
-            // If not a new max, check if current is bigger than 2nd in ArrayList
-            else{
-                temp = ts;
-            }
-            if(temp.getCars() > topThreeSnapshots.get(1).getCars()){
-                tempTwo = topThreeSnapshots.get(1);
-                topThreeSnapshots.set(1, temp);
-            }
-            // If not a new max, check if current is bigger than 3rd in ArrayList
-            else{
-                tempTwo = temp;
-            }
-            if(tempTwo.getCars() > topThreeSnapshots.get(2).getCars()){
-                topThreeSnapshots.set(2, tempTwo);
+        return top.toSnapshots();
+    }
+
+    /**
+     * Calculates the k traffic snapshots with the most cars within each month of the data
+     *
+     * @param k number of snapshots wanted for each month
+     * @return the top k snapshots of each month (e.g. "2016-12"), in the order the months were first seen
+     */
+    public LinkedHashMap<String, ArrayList<TrafficSnapshot>> topKByMonth(int k) {
+        LinkedHashMap<String, TopK> months = new LinkedHashMap<>();
+        TopK month = null;
+        for(int i = 0; i < size; i++){
+            // "2016-12-01" -> "2016-12", only looked up again when the date changes
+            if(i == 0 || TrafficTime.epochDay(stamps[i]) != TrafficTime.epochDay(stamps[i - 1])){
+                month = months.computeIfAbsent(TrafficTime.formatDate(stamps[i]).substring(0, 7),
+                        key -> new TopK(k));
             }
+            month.offer(stamps[i], cars[i]);
         }
-        return topThreeSnapshots;
+        LinkedHashMap<String, ArrayList<TrafficSnapshot>> topKByMonth = new LinkedHashMap<>();
+        months.forEach((key, top) -> topKByMonth.put(key, top.toSnapshots()));
+        return topKByMonth;
     }
 
     /**
-     * Finds the least cars found in a 1.5 hour period (3 contiguous half hour records) by utilising ArrayLists to
-     * manipulate the data. By using the possibleTimestamps method, we have filtered to only an ArrayList of
-     * possible contiguous records so that we only need simple ArrayList manipulation to find the least cars period/s.
+     * Finds the least cars found in a 1.5 hour period (3 contiguous half hour records). Every record is passed once
+     * through a LeastPeriodFinder, which only ever holds on to the start of the current contiguous block and the
+     * last 2 records of the possible periods, so this is linear in the size of the data and needs no copies of it.
      */
     public ArrayList<TrafficSnapshot> leastCars() {
-        ArrayList<TrafficSnapshot> possibleTimestamps = new ArrayList<>();
-        ArrayList<TrafficSnapshot> leastCars = new ArrayList<>();
-        ArrayList<TrafficSnapshot> temp = new ArrayList<>();
-        String currentDate;
-        int currentTime, nextTime, currentPeriod;
-        int min = Integer.MAX_VALUE;
-        // Check if it's not possible to compute the least 1.5 hour period
-        if(this.size() < 3 || !possiblePeriods(possibleTimestamps)){
-            return leastCars;
-        }
-        currentDate = possibleTimestamps.get(0).getDate();
-        currentTime = parseTime(possibleTimestamps.get(0).getTime());
-        for(TrafficSnapshot ts : possibleTimestamps){
-            nextTime = parseTime(ts.getTime());
-            // If we come across a new date or discontinuous time of the day, clear ArrayList and continue
-            if(!currentDate.equals(ts.getDate()) || !(nextTime - currentTime <= MAX_TIME_DIFFERENCE)){
-                temp.clear();
-            }
-            temp.add(ts);
-            currentDate = ts.getDate();
-            currentTime = nextTime;
-            // If the new contiguous block found is the new min, replace and clear current. If equal, we keep both
-            // periods then remove first item so that ArrayList is back to 2 items for the next iteration
-            if(temp.size() == 3){
-                currentPeriod = temp.get(0).getCars() + temp.get(1).getCars() + temp.get(2).getCars();
-                if(currentPeriod < min){
-                    min = currentPeriod;
-                    leastCars.clear();
-                    leastCars.addAll(temp);
-                }
-                else if (currentPeriod == min) {
-                    leastCars.addAll(temp);
-                }
-                temp.remove(0);
-            }
+        long start = TrafficMetrics.start();
+        LeastPeriodFinder leastPeriodFinder = new LeastPeriodFinder();
+        for(int i = 0; i < size; i++){
+            leastPeriodFinder.accept(stamps[i], cars[i]);
         }
+        ArrayList<TrafficSnapshot> leastCars = leastPeriodFinder.getLeastCars();
+        TrafficMetrics.LEAST_CARS.record(start);
         return leastCars;
     }
 
     /**
-     * With the whole ArrayList of timestamps this method filters out the ones that do not make it possible to obtain
-     * a 3 half hour contiguous block and retains all the possible combinations of periods
+     * Finds the window of contiguous half hour records of the given length with the least cars seen. Unlike
+     * leastCars() the gaps are found from the real time between records, so windows can cross midnight
+     *
+     * @param windowMinutes length of the window in minutes, a positive multiple of 30
+     * @return the earliest window with the least cars, or null if there's no window of contiguous records
+     */
+    public TrafficWindow leastWindow(int windowMinutes) {
+        return windows(windowMinutes).getLeast();
+    }
+
+    /**
+     * Finds the window of contiguous half hour records of the given length with the most cars seen
+     *
+     * @param windowMinutes length of the window in minutes, a positive multiple of 30
+     * @return the earliest window with the most cars, or null if there's no window of contiguous records
+     */
+    public TrafficWindow mostWindow(int windowMinutes) {
+        return windows(windowMinutes).getMost();
+    }
+
+    /**
+     * Passes every record through a WindowAggregator of the given length
+     */
+    private WindowAggregator windows(int windowMinutes) {
+        WindowAggregator windowAggregator = new WindowAggregator(windowMinutes);
+        for(int i = 0; i < size; i++){
+            windowAggregator.accept(stamps[i], cars[i]);
+        }
+        return windowAggregator;
+    }
+
+    /**
+     * With the whole data this method filters out the records that do not make it possible to obtain a 3 half hour
+     * contiguous block and retains all the possible combinations of periods
      *
      * @param possiblePeriods empty ArrayList to be filled with possible periods of least cars
      * @return boolean value of whether possible periods exist
      */
     public boolean possiblePeriods(ArrayList<TrafficSnapshot> possiblePeriods) {
-        ArrayList<TrafficSnapshot> temp = new ArrayList<>();
-        int nextTime;
-        String currentDate = this.get(0).getDate();
-        int currentTime = parseTime(this.get(0).getTime());
-        for(TrafficSnapshot ts : this){
-            nextTime = parseTime(ts.getTime());
-            // If current iterated TrafficSnapshot makes a possible 1.5 hour block, add it
-            if(ts.getDate().equals(currentDate) && (nextTime - currentTime <= MAX_TIME_DIFFERENCE)){
-                temp.add(ts);
-                currentDate = ts.getDate();
-                currentTime = parseTime(ts.getTime());
-            }
-            // Get here if current snapshot doesn't make a block or file is just one date, then add previous
-            // timestamps to possible period ArrayList if possible, then replace
-            if(!ts.getDate().equals(currentDate) || nextTime - currentTime > MAX_TIME_DIFFERENCE ||
-                    this.indexOf(ts) == this.size() -1){
-                if(temp.size() > 2){
-                    possiblePeriods.addAll(temp);
+        int start = 0;
+        for(int i = 1; i <= size; i++){
+            // Once the current record doesn't continue the block (or the data ends), keep the block if it's long
+            // enough to be a possible 1.5 hour period
+            if(i == size || TrafficTime.epochDay(stamps[i]) != TrafficTime.epochDay(stamps[i - 1]) ||
+                    TrafficTime.clockTime(stamps[i]) - TrafficTime.clockTime(stamps[i - 1]) > MAX_TIME_DIFFERENCE){
+                if(i - start > 2){
+                    for(int j = start; j < i; j++){
+                        possiblePeriods.add(get(j));
+                    }
                 }
-                temp.clear();
-                currentDate = ts.getDate();
-                currentTime = nextTime;
-                temp.add(ts);
+                start = i;
             }
         }
         // No possible period available
@@ -184,12 +370,22 @@ public class TrafficSnapshotHolder extends ArrayList<TrafficSnapshot> {
      * @param timeStamp String representing the hour and  time of the timestamp
      * @return the hour-minute timestamp as an integer
      */
-    public int parseTime(String timeStamp) {
-        String time;
-        int result;
-        String[] split = timeStamp.split(":");
-        time = split[0] + split[1];
-        result = Integer.parseInt(time);
+    public static int parseTime(String timeStamp) {
+        int result = 0;
+        int colons = 0;
+        // Read the digits up to the seconds in place, "05:30:00" -> 530
+        for(int i = 0; i < timeStamp.length() && colons < 2; i++){
+            char c = timeStamp.charAt(i);
+            if(c == ':'){
+                colons++;
+            }
+            else if(c >= '0' && c <= '9'){
+                result = result * 10 + (c - '0');
+            }
+            else{
+                throw new NumberFormatException("For input string: \"" + timeStamp + "\"");
+            }
+        }
         return result;
     }
 
@@ -201,43 +397,11 @@ public class TrafficSnapshotHolder extends ArrayList<TrafficSnapshot> {
      * @param topThreeSnapshots ArrayList with top 3 timestamps of most cars
      * @param leastCars ArrayList with the 1.5 hour periods of least cars
      */
-    private void outputResult(int total, LinkedHashMap<String, Integer> dateHashMap,
-                              ArrayList<TrafficSnapshot> topThreeSnapshots,
-                              ArrayList<TrafficSnapshot> leastCars) {
-        int i = 0;
-        // Total cars seen in data
-        System.out.println("Total cars: " + total);
-        System.out.println("----------------------");
-
-        // Number of cars seen by date
-        System.out.println("Cars by date:");
-        dateHashMap.forEach((key,value) -> System.out.println(key + " " + value));
-        System.out.println("----------------------");
-
-        // Top 3 timestamps with most cars
-        if(topThreeSnapshots.isEmpty()){
-            System.out.println("Top 3 half hours with most cars NOT APPLICABLE");
-        }
-        else {
-            System.out.println("Top 3 half hours with most cars:");
-            topThreeSnapshots.forEach(name -> System.out.println(name.backToTimeStamp()));
-            System.out.println("----------------------");
-        }
-
-        // Least 1.5 period of cars
-        if(leastCars.isEmpty()){
-            System.out.println("Least 1.5 hour period NOT APPLICABLE");
-        }
-        else {
-            System.out.println("1.5 hour period with least cars:");
-            for (TrafficSnapshot ts : leastCars) {
-                System.out.println(ts.backToTimeStamp());
-                i++;
-                if (i == 3) {
-                    System.out.println("----------------------");
-                    i = 0;
-                }
-            }
-        }
+    static void outputResult(int total, LinkedHashMap<String, Integer> dateHashMap,
+                             ArrayList<TrafficSnapshot> topThreeSnapshots,
+                             ArrayList<TrafficSnapshot> leastCars) {
+        TrafficReportWriter writer = TrafficReportWriter.stdout(TrafficReportWriter.Format.TEXT);
+        writer.report("", total, dateHashMap, topThreeSnapshots, leastCars);
+        writer.flush();
     }
 }
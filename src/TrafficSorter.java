@@ -0,0 +1,413 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Reads a traffic counter file that may not be in chronological order (e.g. files from several collectors joined
+ * together) and feeds its records to a sink in chronological order, keeping records with the same timestamp in
+ * file order.
+ *
+ * The file is first read straight into the sink, only checking each timestamp against the one before it, so a file
+ * that is already in order costs nothing extra. At the first record out of order the sink is thrown away and the
+ * file is read again into a buffer of primitive columns: if the whole file fits within the memory budget it's sorted
+ * there, otherwise each full buffer is sorted and spilled to a run file on disk and the runs are merged at the end,
+ * so files larger than the heap can still be analysed.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficSorter {
+    // Two columns while sorting (a long and an int for each record) and the merge sort's copy of them
+    private static final int BYTES_PER_RECORD = 2 * (Long.BYTES + Integer.BYTES);
+    private static final int RUN_RECORD_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Something that reads records into a sink, such as a MappedTrafficReader on a file
+     */
+    @FunctionalInterface
+    public interface Source {
+        void read(TrafficRecordSink sink) throws IOException;
+    }
+
+    private final int maxRecords;
+    private final Path spillDirectory;
+    private int runs;
+
+    /**
+     * Creates a sorter with a quarter of the maximum heap as its budget, spilling to the temp directory
+     */
+    public TrafficSorter() {
+        this(Runtime.getRuntime().maxMemory() / 4, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param memoryBudget bytes of heap the sorter may use for records
+     * @param spillDirectory directory for the run files of files too large to sort within the budget
+     */
+    public TrafficSorter(long memoryBudget, Path spillDirectory) {
+        this.maxRecords = (int) Math.max(1, Math.min(memoryBudget / BYTES_PER_RECORD, Integer.MAX_VALUE - 8));
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Reads a text, compressed or binary traffic counter file into a sink in chronological order
+     *
+     * @param path location of the file
+     * @param sinks creates the sink, called again if the file turns out not to be in order
+     * @return the sink given the records in chronological order
+     * @throws IOException if the file can't be read or a run file can't be written
+     */
+    public <S extends TrafficRecordSink> S read(Path path, Supplier<S> sinks) throws IOException {
+        return read(path, sinks, MalformedLinePolicy.STRICT.forSource(path.toString()));
+    }
+
+    /**
+     * Reads a text, compressed or binary traffic counter file into a sink in chronological order, skipping bad lines
+     * within the budget. Bad lines are only counted once even if the file is read twice
+     *
+     * @param path location of the file
+     * @param sinks creates the sink, called again if the file turns out not to be in order
+     * @param errors where lines that aren't valid records go
+     * @return the sink given the records in chronological order
+     * @throws IOException if the file can't be read or a run file can't be written
+     * @throws NumberFormatException if there are more bad lines than allowed
+     */
+    public <S extends TrafficRecordSink> S read(Path path, Supplier<S> sinks, MalformedLines errors)
+            throws IOException {
+        if(TrafficBinaryReader.isBinary(path)){
+            TrafficBinaryReader reader = new TrafficBinaryReader(path);
+            return read(reader::read, sinks);
+        }
+        if(CompressedTrafficReader.isCompressed(path)){
+            return read(sink -> {
+                errors.rewind();
+                new CompressedTrafficReader(sink, errors).read(path);
+            }, sinks);
+        }
+        return read(sink -> {
+            errors.rewind();
+            new MappedTrafficReader(sink, errors).read(path);
+        }, sinks);
+    }
+
+    /**
+     * Reads records into a sink in chronological order
+     *
+     * @param source reads the records, called a second time if they turn out not to be in order
+     * @param sinks creates the sink, called again if the records turn out not to be in order
+     * @return the sink given the records in chronological order
+     * @throws IOException if the records can't be read or a run file can't be written
+     */
+    public <S extends TrafficRecordSink> S read(Source source, Supplier<S> sinks) throws IOException {
+        S sink = sinks.get();
+        OrderCheck check = new OrderCheck(sink);
+        try {
+            source.read(check);
+            return sink;
+        }
+        catch (OutOfOrder e) {
+            // Start again with a fresh sink
+        }
+        sink = sinks.get();
+        sort(source, sink);
+        return sink;
+    }
+
+    /**
+     * @return number of run files spilled to disk by the last sort
+     */
+    public int getRuns() {
+        return this.runs;
+    }
+
+    /**
+     * Sorts every record the source gives and feeds them to the sink, spilling sorted runs to disk whenever the
+     * buffer is full and merging them at the end
+     */
+    private void sort(Source source, TrafficRecordSink sink) throws IOException {
+        Buffer buffer = new Buffer(maxRecords);
+        List<Path> runFiles = new ArrayList<>();
+        runs = 0;
+        try {
+            source.read((stamp, cars) -> {
+                if(buffer.size == maxRecords){
+                    try {
+                        runFiles.add(spill(buffer));
+                    }
+                    catch (IOException e) {
+                        throw new SpillFailed(e);
+                    }
+                }
+                buffer.add(stamp, cars);
+            });
+            if(runFiles.isEmpty()){
+                sort(buffer.stamps, buffer.cars, buffer.size);
+                for(int i = 0; i < buffer.size; i++){
+                    sink.accept(buffer.stamps[i], buffer.cars[i]);
+                }
+                return;
+            }
+            runFiles.add(spill(buffer));
+            merge(runFiles, sink);
+        }
+        catch (SpillFailed e) {
+            throw e.getCause();
+        }
+        finally {
+            for(Path runFile : runFiles){
+                Files.deleteIfExists(runFile);
+            }
+        }
+    }
+
+    /**
+     * Sorts the buffer and writes it to a new run file, leaving the buffer empty
+     */
+    private Path spill(Buffer buffer) throws IOException {
+        sort(buffer.stamps, buffer.cars, buffer.size);
+        Path runFile = Files.createTempFile(spillDirectory, "traffic-run", ".tmp");
+        runs++;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile),
+                RUN_BUFFER_SIZE))) {
+            for(int i = 0; i < buffer.size; i++){
+                out.writeLong(buffer.stamps[i]);
+                out.writeInt(buffer.cars[i]);
+            }
+        }
+        buffer.size = 0;
+        return runFile;
+    }
+
+    /**
+     * Merges the sorted run files into the sink, taking the record with the earliest timestamp next and the earlier
+     * run for equal timestamps so that records stay in file order
+     */
+    private static void merge(List<Path> runFiles, TrafficRecordSink sink) throws IOException {
+        int count = runFiles.size();
+        DataInputStream[] inputs = new DataInputStream[count];
+        long[] remaining = new long[count];
+        long[] stamps = new long[count];
+        int[] cars = new int[count];
+        // Min heap of the runs that still have records, by their next timestamp
+        int[] heap = new int[count];
+        int heapSize = 0;
+        try {
+            for(int run = 0; run < count; run++){
+                remaining[run] = Files.size(runFiles.get(run)) / RUN_RECORD_SIZE;
+                inputs[run] = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFiles.get(run)),
+                        RUN_BUFFER_SIZE));
+                if(remaining[run] > 0){
+                    stamps[run] = inputs[run].readLong();
+                    cars[run] = inputs[run].readInt();
+                    remaining[run]--;
+                    heap[heapSize] = run;
+                    siftUp(heap, heapSize++, stamps);
+                }
+            }
+            while(heapSize > 0){
+                int run = heap[0];
+                sink.accept(stamps[run], cars[run]);
+                if(remaining[run] > 0){
+                    stamps[run] = inputs[run].readLong();
+                    cars[run] = inputs[run].readInt();
+                    remaining[run]--;
+                }
+                else{
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, stamps);
+            }
+        }
+        finally {
+            for(DataInputStream input : inputs){
+                if(input != null){
+                    input.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether run a comes before run b in the merge
+     */
+    private static boolean before(int a, int b, long[] stamps) {
+        return stamps[a] < stamps[b] || (stamps[a] == stamps[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int i, long[] stamps) {
+        while(i > 0){
+            int parent = (i - 1) >>> 1;
+            if(!before(heap[i], heap[parent], stamps)){
+                return;
+            }
+            int run = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = run;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, long[] stamps) {
+        int i = 0;
+        while(true){
+            int child = 2 * i + 1;
+            if(child >= size){
+                return;
+            }
+            if(child + 1 < size && before(heap[child + 1], heap[child], stamps)){
+                child++;
+            }
+            if(!before(heap[child], heap[i], stamps)){
+                return;
+            }
+            int run = heap[i];
+            heap[i] = heap[child];
+            heap[child] = run;
+            i = child;
+        }
+    }
+
+    /**
+     * Sorts the first size records of the columns by timestamp, keeping records with the same timestamp in the
+     * order they were in. A bottom up merge sort on the primitive columns, as sorting boxed records would take many
+     * times the memory
+     *
+     * @param stamps packed timestamps of the records
+     * @param cars cars seen in each record, moved along with their timestamps
+     * @param size number of records
+     */
+    public static void sort(long[] stamps, int[] cars, int size) {
+        if(isSorted(stamps, size)){
+            return;
+        }
+        long[] stampsCopy = new long[size];
+        int[] carsCopy = new int[size];
+        long[] fromStamps = stamps;
+        int[] fromCars = cars;
+        long[] toStamps = stampsCopy;
+        int[] toCars = carsCopy;
+        for(int width = 1; width < size; width *= 2){
+            for(int low = 0; low < size; low += 2 * width){
+                int middle = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int left = low;
+                int right = middle;
+                for(int i = low; i < high; i++){
+                    // Take from the left on equal timestamps to keep the original order
+                    if(left < middle && (right >= high || fromStamps[left] <= fromStamps[right])){
+                        toStamps[i] = fromStamps[left];
+                        toCars[i] = fromCars[left++];
+                    }
+                    else{
+                        toStamps[i] = fromStamps[right];
+                        toCars[i] = fromCars[right++];
+                    }
+                }
+            }
+            long[] swapStamps = fromStamps;
+            fromStamps = toStamps;
+            toStamps = swapStamps;
+            int[] swapCars = fromCars;
+            fromCars = toCars;
+            toCars = swapCars;
+        }
+        if(fromStamps != stamps){
+            System.arraycopy(fromStamps, 0, stamps, 0, size);
+            System.arraycopy(fromCars, 0, cars, 0, size);
+        }
+    }
+
+    /**
+     * @return whether the first size timestamps are in chronological order
+     */
+    public static boolean isSorted(long[] stamps, int size) {
+        for(int i = 1; i < size; i++){
+            if(stamps[i] < stamps[i - 1]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes records through to a sink until one is out of order
+     */
+    private static final class OrderCheck implements TrafficRecordSink {
+        private final TrafficRecordSink sink;
+        private long previous = Long.MIN_VALUE;
+
+        OrderCheck(TrafficRecordSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(long stamp, int cars) {
+            if(stamp < previous){
+                throw new OutOfOrder();
+            }
+            previous = stamp;
+            sink.accept(stamp, cars);
+        }
+    }
+
+    /**
+     * Records waiting to be sorted
+     */
+    private static final class Buffer {
+        private long[] stamps = new long[16];
+        private int[] cars = new int[16];
+        private int size;
+        private final int max;
+
+        Buffer(int max) {
+            this.max = max;
+        }
+
+        void add(long stamp, int cars) {
+            if(size == stamps.length){
+                int capacity = (int) Math.min((long) size * 2, max);
+                stamps = Arrays.copyOf(stamps, capacity);
+                this.cars = Arrays.copyOf(this.cars, capacity);
+            }
+            stamps[size] = stamp;
+            this.cars[size] = cars;
+            size++;
+        }
+    }
+
+    /**
+     * Stops the first read at a record out of order, without the cost of a stack trace
+     */
+    private static final class OutOfOrder extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        OutOfOrder() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Carries an IOException from spilling a run out of the sink
+     */
+    private static final class SpillFailed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SpillFailed(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
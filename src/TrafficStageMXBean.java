@@ -0,0 +1,21 @@
+/**
+ * JMX view of the latency of one stage of the application (e.g. parsing a line or finding the least cars), see
+ * TrafficMetrics
+ *
+ * @author Ryan Cheng
+ */
+public interface TrafficStageMXBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
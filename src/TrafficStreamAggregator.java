@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Streaming counterpart of the TrafficSnapshotHolder. Each record is given to the aggregator as soon as it is parsed
+ * and all the required results (total, cars by date, top 3 and least 1.5 hour period) are kept up to date in a
+ * single pass, so the records themselves never have to be stored. Records are given as primitive timestamps (see
+ * TrafficTime) and TrafficSnapshot objects are only created for the results.
+ *
+ * Memory only depends on the number of dates seen (and the number of tied least periods), not the size of the file.
+ * An aggregator for part of a file also keeps the records at its start needed to join its least periods with the
+ * ones before it.
+ *
+ * Separate parts of a file can be aggregated at the same time and then merged in file order, see
+ * ParallelTrafficReader.
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficStreamAggregator implements TrafficRecordSink {
+    private int count;
+    private int total;
+    // Sum of each run of the same date in file order, turned into the cars by date when asked for
+    private long[] dateRuns = new long[4];
+    private int[] dateRunCars = new int[4];
+    private int dateRunCount;
+    private final TopK top;
+    private final LeastPeriodFinder leastPeriodFinder;
+
+    /**
+     * Creates an aggregator for a whole file keeping the top 3
+     */
+    public TrafficStreamAggregator() {
+        this(3);
+    }
+
+    /**
+     * Creates an aggregator for a whole file
+     *
+     * @param topSize number of snapshots with the most cars to keep, see topK()
+     */
+    public TrafficStreamAggregator(int topSize) {
+        this(topSize, false);
+    }
+
+    /**
+     * @param topSize number of snapshots with the most cars to keep, see topK()
+     * @param startsMidFile whether the records given start part way through a file, in which case the aggregator
+     *                      can only be merged into one holding the records before it
+     */
+    TrafficStreamAggregator(int topSize, boolean startsMidFile) {
+        this.top = new TopK(topSize);
+        this.leastPeriodFinder = new LeastPeriodFinder(startsMidFile);
+    }
+
+    /**
+     * Adds the next snapshot read from the file to all of the results
+     *
+     * @param ts an individual snapshot of a traffic count, in file order
+     */
+    public void accept(TrafficSnapshot ts) {
+        accept(ts.getStamp(), ts.getCars());
+    }
+
+    /**
+     * Adds the next record read from the file to all of the results
+     *
+     * @param stamp packed timestamp of the record, in file order
+     * @param cars number of cars seen in the record
+     */
+    @Override
+    public void accept(long stamp, int cars) {
+        total += cars;
+        addToDate(TrafficTime.epochDay(stamp), cars);
+        top.offer(stamp, cars);
+        leastPeriodFinder.accept(stamp, cars);
+        count++;
+    }
+
+    /**
+     * Sums cars seen by date, or else starts a run of the new date
+     */
+    private void addToDate(long date, int cars) {
+        if(dateRunCount > 0 && dateRuns[dateRunCount - 1] == date){
+            dateRunCars[dateRunCount - 1] += cars;
+            return;
+        }
+        if(dateRunCount == dateRuns.length){
+            dateRuns = Arrays.copyOf(dateRuns, dateRunCount * 2);
+            dateRunCars = Arrays.copyOf(dateRunCars, dateRunCount * 2);
+        }
+        dateRuns[dateRunCount] = date;
+        dateRunCars[dateRunCount] = cars;
+        dateRunCount++;
+    }
+
+    /**
+     * Adds the results of the records that directly follow this aggregator's records in the file, as if they had
+     * been given to this aggregator one by one
+     *
+     * @param later aggregator of the next part of the file, created with startsMidFile
+     */
+    void merge(TrafficStreamAggregator later) {
+        total += later.total;
+        count += later.count;
+        for(int i = 0; i < later.dateRunCount; i++){
+            addToDate(later.dateRuns[i], later.dateRunCars[i]);
+        }
+        top.merge(later.top);
+        leastPeriodFinder.merge(later.leastPeriodFinder);
+    }
+
+    /**
+     * Groups and outputs the results in the same format as TrafficSnapshotHolder.processSnapshots()
+     */
+    public void processSnapshots() {
+        TrafficSnapshotHolder.outputResult(totalCars(), carsByDate(), topThree(), leastCars());
+    }
+
+    /**
+     * Same as TrafficSnapshotHolder.processSnapshots(writer, source), the report isn't flushed
+     *
+     * @param writer report to write to
+     * @param source name of the file the records came from
+     */
+    public void processSnapshots(TrafficReportWriter writer, String source) {
+        writer.report(source, totalCars(), carsByDate(), topThree(), leastCars());
+    }
+
+    /**
+     * @return whether no records have been given yet
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return total cars seen so far
+     */
+    public int totalCars() {
+        long start = TrafficMetrics.start();
+        int total = this.total;
+        TrafficMetrics.TOTAL_CARS.record(start);
+        return total;
+    }
+
+    /**
+     * Same as TrafficSnapshotHolder.carsByDate(), every run of the same date is added together
+     *
+     * @return the cars seen by date so far, in chronological order
+     */
+    public LinkedHashMap<String, Integer> carsByDate() {
+        long start = TrafficMetrics.start();
+        long[] stamps = new long[dateRunCount];
+        for(int i = 0; i < dateRunCount; i++){
+            stamps[i] = TrafficTime.pack(dateRuns[i], 0, false);
+        }
+        LinkedHashMap<String, Integer> dateHashMap = new TrafficRollup(stamps, dateRunCars, dateRunCount).carsByDate();
+        TrafficMetrics.CARS_BY_DATE.record(start);
+        return dateHashMap;
+    }
+
+    /**
+     * @return the top 3 snapshots with most cars, earlier first for equal cars, empty if less than 3 records have
+     * been seen
+     */
+    public ArrayList<TrafficSnapshot> topThree() {
+        long start = TrafficMetrics.start();
+        ArrayList<TrafficSnapshot> topThree = new ArrayList<>();
+        if(count >= 3){
+            topThree.addAll(topK().subList(0, Math.min(3, top.size())));
+        }
+        TrafficMetrics.TOP_THREE.record(start);
+        return topThree;
+    }
+
+    /**
+     * @return the snapshots with most cars, as many as the aggregator was created to keep, earlier first for equal
+     * cars
+     */
+    public ArrayList<TrafficSnapshot> topK() {
+        return top.toSnapshots();
+    }
+
+    /**
+     * @return the 1.5 hour periods of least cars so far, every 3 snapshots being one period
+     */
+    public ArrayList<TrafficSnapshot> leastCars() {
+        long start = TrafficMetrics.start();
+        ArrayList<TrafficSnapshot> leastCars = leastPeriodFinder.getLeastCars();
+        TrafficMetrics.LEAST_CARS.record(start);
+        return leastCars;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Static helpers for the primitive representation of a timestamp used instead of the date and time Strings. A
+ * timestamp is packed into a single long holding the seconds since the epoch (1970-01-01T00:00:00), shifted left by
+ * one so the lowest bit can remember if the hour was written without its leading zero (e.g. "9:00:00"), which lets
+ * the exact same text be written back out. Packed timestamps still sort in chronological order.
+ *
+ * @author Ryan Cheng
+ */
+public final class TrafficTime {
+    public static final int SECONDS_PER_DAY = 86400;
+    private static final int SHORT_HOUR = 1;
+    // Days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar
+    private static final long DAYS_0000_TO_1970 = 719468;
+
+    private TrafficTime() {
+    }
+
+    /**
+     * Packs the fields of a timestamp into its primitive representation
+     *
+     * @param epochDay days since 1970-01-01
+     * @param secondOfDay seconds since midnight
+     * @param shortHour whether the hour was written as a single digit
+     * @return the packed timestamp
+     */
+    public static long pack(long epochDay, int secondOfDay, boolean shortHour) {
+        return ((epochDay * SECONDS_PER_DAY + secondOfDay) << 1) | (shortHour ? SHORT_HOUR : 0);
+    }
+
+    /**
+     * @return seconds since 1970-01-01T00:00:00 of the packed timestamp
+     */
+    public static long epochSecond(long stamp) {
+        return stamp >> 1;
+    }
+
+    /**
+     * @return minutes since 1970-01-01T00:00:00 of the packed timestamp
+     */
+    public static long epochMinute(long stamp) {
+        return Math.floorDiv(stamp >> 1, 60);
+    }
+
+    /**
+     * @return days since 1970-01-01 of the packed timestamp
+     */
+    public static long epochDay(long stamp) {
+        return Math.floorDiv(stamp >> 1, SECONDS_PER_DAY);
+    }
+
+    /**
+     * @return seconds since midnight of the packed timestamp
+     */
+    public static int secondOfDay(long stamp) {
+        return Math.floorMod(stamp >> 1, SECONDS_PER_DAY);
+    }
+
+    /**
+     * @return minutes since midnight of the packed timestamp
+     */
+    public static int minuteOfDay(long stamp) {
+        return secondOfDay(stamp) / 60;
+    }
+
+    /**
+     * Gives the same hour-minute integer as TrafficSnapshotHolder.parseTime() (e.g. 05:30:00 -> 530)
+     *
+     * @return the hour-minute time of the packed timestamp as an integer
+     */
+    public static int clockTime(long stamp) {
+        int minuteOfDay = minuteOfDay(stamp);
+        return minuteOfDay / 60 * 100 + minuteOfDay % 60;
+    }
+
+    /**
+     * @return whether the hour of the packed timestamp was written as a single digit
+     */
+    public static boolean isShortHour(long stamp) {
+        return (stamp & SHORT_HOUR) != 0;
+    }
+
+    /**
+     * Converts a calendar date to days since 1970-01-01, without needing to create a LocalDate
+     *
+     * @param year the year
+     * @param month month of the year from 1 to 12
+     * @param day day of the month from 1 to 31
+     * @return days since 1970-01-01
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        // Count years from March so that the leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * @return number of days in the given month of the given year
+     */
+    public static int lengthOfMonth(int year, int month) {
+        if(month == 2){
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * Appends the ISO 8601 date (e.g. 2016-12-01) of the given day
+     *
+     * @param sb builder to append to
+     * @param epochDay days since 1970-01-01
+     */
+    public static void appendDate(StringBuilder sb, long epochDay) {
+        long z = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if(year >= 0 && year < 1000){
+            sb.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        sb.append(year).append('-');
+        appendTwoDigits(sb, month);
+        sb.append('-');
+        appendTwoDigits(sb, day);
+    }
+
+    /**
+     * Appends the ISO 8601 time (e.g. 05:30:00) of the packed timestamp, keeping a single digit hour if that's how
+     * it was originally written
+     *
+     * @param sb builder to append to
+     * @param stamp packed timestamp
+     */
+    public static void appendTime(StringBuilder sb, long stamp) {
+        int secondOfDay = secondOfDay(stamp);
+        int hour = secondOfDay / 3600;
+        if(isShortHour(stamp) && hour < 10){
+            sb.append((char) ('0' + hour));
+        }
+        else{
+            appendTwoDigits(sb, hour);
+        }
+        sb.append(':');
+        appendTwoDigits(sb, secondOfDay / 60 % 60);
+        sb.append(':');
+        appendTwoDigits(sb, secondOfDay % 60);
+    }
+
+    /**
+     * @return String representation of the ISO 8601 date of the packed timestamp
+     */
+    public static String formatDate(long stamp) {
+        StringBuilder sb = new StringBuilder(10);
+        appendDate(sb, epochDay(stamp));
+        return sb.toString();
+    }
+
+    /**
+     * @return String representation of the ISO 8601 time of the packed timestamp
+     */
+    public static String formatTime(long stamp) {
+        StringBuilder sb = new StringBuilder(8);
+        appendTime(sb, stamp);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a value from 0 to 99 with a leading zero if needed
+     */
+    private static void appendTwoDigits(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
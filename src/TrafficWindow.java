@@ -0,0 +1,65 @@
+/**
+ * A window of contiguous half hour records found by a WindowAggregator, kept as the packed timestamps (see
+ * TrafficTime) of its first and last record along with the cars seen over the whole window
+ *
+ * @author Ryan Cheng
+ */
+public class TrafficWindow {
+    private final long start;
+    private final long end;
+    private final long cars;
+    private final int ties;
+
+    /**
+     * @param start packed timestamp of the first record in the window
+     * @param end packed timestamp of the last record in the window
+     * @param cars total cars seen in the window
+     * @param ties number of other windows with the same total of cars
+     */
+    public TrafficWindow(long start, long end, long cars, int ties) {
+        this.start = start;
+        this.end = end;
+        this.cars = cars;
+        this.ties = ties;
+    }
+
+    /**
+     * @return packed timestamp of the first record in the window
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return packed timestamp of the last record in the window
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return total cars seen in the window
+     */
+    public long getCars() {
+        return cars;
+    }
+
+    /**
+     * @return number of other windows with the same total of cars
+     */
+    public int getTies() {
+        return ties;
+    }
+
+    /**
+     * Formats the window as its first and last timestamp followed by the cars seen, e.g.
+     * "2016-12-01T05:00:00 - 2016-12-01T06:00:00 31"
+     *
+     * @return String form of the window
+     */
+    @Override
+    public String toString() {
+        return TrafficTime.formatDate(start) + "T" + TrafficTime.formatTime(start) + " - " +
+                TrafficTime.formatDate(end) + "T" + TrafficTime.formatTime(end) + " " + cars;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Incrementally finds the windows of contiguous half hour records with the least and the most cars seen, for any
+ * window length that is a whole number of half hours (e.g. 1.5 hours, 3 hours or 24 hours).
+ *
+ * Records are contiguous when they are exactly half an hour apart in real time, worked out from the epoch minute
+ * of the packed timestamps (see TrafficTime), so a window can carry on past midnight into the next day while a
+ * missing record anywhere breaks it. The cars of the current block are kept in a ring buffer the size of the window
+ * along with their running sum, so each record is O(1) whatever the window length and the results can be asked
+ * for at any time while records are still arriving.
+ *
+ * For windows with equal totals the earliest one is kept and the others are counted as ties.
+ *
+ * @author Ryan Cheng
+ */
+public class WindowAggregator implements TrafficRecordSink {
+    public static final int RECORD_MINUTES = 30;
+
+    private final int windowLength;
+
+    // Cars of the last windowLength records of the current contiguous block
+    private final int[] ring;
+    private final long[] ringStamps;
+    private int blockLength;
+    private long previousMinute;
+    private long sum;
+
+    private boolean found;
+    private long leastStart;
+    private long leastEnd;
+    private long leastCars;
+    private int leastTies;
+    private long mostStart;
+    private long mostEnd;
+    private long mostCars;
+    private int mostTies;
+
+    /**
+     * @param windowMinutes length of the window in minutes, a positive multiple of 30 (e.g. 90 for 1.5 hours)
+     */
+    public WindowAggregator(int windowMinutes) {
+        if(windowMinutes <= 0 || windowMinutes % RECORD_MINUTES != 0){
+            throw new IllegalArgumentException("Window must be a positive multiple of " + RECORD_MINUTES +
+                    " minutes: " + windowMinutes);
+        }
+        windowLength = windowMinutes / RECORD_MINUTES;
+        ring = new int[windowLength];
+        ringStamps = new long[windowLength];
+    }
+
+    /**
+     * Adds the next record in chronological order
+     *
+     * @param stamp packed timestamp of the record
+     * @param cars number of cars seen in the record
+     */
+    @Override
+    public void accept(long stamp, int cars) {
+        long minute = TrafficTime.epochMinute(stamp);
+        // A new block starts with the first record, or after any record that isn't exactly half an hour before
+        if(blockLength == 0 || minute - previousMinute != RECORD_MINUTES){
+            blockLength = 0;
+            sum = 0;
+        }
+        previousMinute = minute;
+        int slot = blockLength % windowLength;
+        if(blockLength >= windowLength){
+            sum -= ring[slot];
+        }
+        ring[slot] = cars;
+        ringStamps[slot] = stamp;
+        sum += cars;
+        blockLength++;
+        if(blockLength < windowLength){
+            return;
+        }
+
+        // The oldest record in the ring is the start of the window just completed
+        long start = ringStamps[blockLength % windowLength];
+        if(!found){
+            found = true;
+            leastStart = mostStart = start;
+            leastEnd = mostEnd = stamp;
+            leastCars = mostCars = sum;
+            return;
+        }
+        if(sum < leastCars){
+            leastStart = start;
+            leastEnd = stamp;
+            leastCars = sum;
+            leastTies = 0;
+        }
+        else if(sum == leastCars){
+            leastTies++;
+        }
+        if(sum > mostCars){
+            mostStart = start;
+            mostEnd = stamp;
+            mostCars = sum;
+            mostTies = 0;
+        }
+        else if(sum == mostCars){
+            mostTies++;
+        }
+    }
+
+    /**
+     * @return length of the window in minutes
+     */
+    public int getWindowMinutes() {
+        return windowLength * RECORD_MINUTES;
+    }
+
+    /**
+     * @return the earliest window with the least cars seen so far, or null if there's no window of contiguous
+     * records yet
+     */
+    public TrafficWindow getLeast() {
+        if(!found){
+            return null;
+        }
+        return new TrafficWindow(leastStart, leastEnd, leastCars, leastTies);
+    }
+
+    /**
+     * @return the earliest window with the most cars seen so far, or null if there's no window of contiguous
+     * records yet
+     */
+    public TrafficWindow getMost() {
+        if(!found){
+            return null;
+        }
+        return new TrafficWindow(mostStart, mostEnd, mostCars, mostTies);
+    }
+}
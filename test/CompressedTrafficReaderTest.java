@@ -0,0 +1,153 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Test class that checks compressed files give exactly the same records as the files they were made from, whether
+ * decompressed on their own thread or not, and are read anywhere a text file is
+ *
+ * @author  Ryan Cheng
+ */
+public class CompressedTrafficReaderTest {
+
+    private Path compress(byte[] bytes, String suffix) throws IOException {
+        Path path = Files.createTempFile("traffic", suffix);
+        try (OutputStream out = suffix.equals(".gz") ? new GZIPOutputStream(Files.newOutputStream(path)) :
+                new DeflaterOutputStream(Files.newOutputStream(path))) {
+            out.write(bytes);
+        }
+        return path;
+    }
+
+    private void assertSameRecords(TrafficSnapshotHolder expected, TrafficSnapshotHolder actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            Assert.assertEquals(expected.get(i).getStamp(), actual.get(i).getStamp());
+            Assert.assertEquals(expected.get(i).getCars(), actual.get(i).getCars());
+        }
+    }
+
+    /**
+     * Test to check gzip and zlib files give the same records as the text file, including lines split across the
+     * buffers the decompressing thread hands over, with and without a newline at the end
+     */
+    @Test
+    public void readTest() throws IOException {
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 40000; i++){
+            LocalDateTime time = LocalDateTime.of(2016, 12, 1, 0, 0).plusMinutes(30L * i);
+            text.append(time.format(format)).append(' ').append(i % 97).append(i % 5 == 0 ? "\r\n" : "\n");
+        }
+        text.append("2019-04-01T00:00:00 7");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.ISO_8859_1);
+        Path plain = Files.createTempFile("traffic", ".txt");
+        Files.write(plain, bytes);
+        try {
+            TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+            new MappedTrafficReader(expected).read(plain);
+            for(String suffix : new String[]{".gz", ".zz"}){
+                Path path = compress(bytes, suffix);
+                try {
+                    Assert.assertTrue(CompressedTrafficReader.isCompressed(path));
+                    TrafficSnapshotHolder pipelined = new TrafficSnapshotHolder();
+                    CompressedTrafficReader reader = new CompressedTrafficReader(pipelined);
+                    reader.read(path);
+                    Assert.assertEquals(bytes.length, reader.getBytes());
+                    Assert.assertEquals(expected.size(), reader.getRecords());
+                    assertSameRecords(expected, pipelined);
+                    TrafficSnapshotHolder inline = new TrafficSnapshotHolder();
+                    new CompressedTrafficReader(inline, MalformedLinePolicy.STRICT.forSource(null), false).read(path);
+                    assertSameRecords(expected, inline);
+                }
+                finally {
+                    Files.delete(path);
+                }
+            }
+            Assert.assertFalse(CompressedTrafficReader.isCompressed(plain));
+        }
+        finally {
+            Files.delete(plain);
+        }
+    }
+
+    /**
+     * Test to check bad lines are quarantined with their positions in the decompressed file, and that failing part
+     * way stops the decompressing thread and passes the exception on
+     */
+    @Test
+    public void malformedTest() throws IOException {
+        Path path = compress(("2016-12-01T05:00:00 5\n2016-12-01T05:30:00 12\n2016-12-01T06:0\n" +
+                "2016-12-01T06:00:00 14\nbad\n").getBytes(StandardCharsets.ISO_8859_1), ".gz");
+        Path quarantine = Files.createTempFile("quarantine", ".txt");
+        try (MalformedLinePolicy policy = new MalformedLinePolicy(2, quarantine)) {
+            TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+            new CompressedTrafficReader(counter, policy.forSource("bad.gz")).read(path);
+            Assert.assertEquals(3, counter.size());
+            Assert.assertEquals(List.of("bad.gz\t45\t2016-12-01T06:0", "bad.gz\t84\tbad"),
+                    Files.readAllLines(quarantine));
+            try {
+                new CompressedTrafficReader(new TrafficSnapshotHolder()).read(path);
+                Assert.fail("The strict policy should fail on the first bad line");
+            }
+            catch (NumberFormatException e) {
+                Assert.assertEquals("Malformed traffic record: \"2016-12-01T06:0\"", e.getMessage());
+            }
+
+            Path broken = Files.createTempFile("traffic", ".gz");
+            Files.write(broken, new byte[]{1, 2, 3, 4});
+            try {
+                new CompressedTrafficReader(new TrafficSnapshotHolder()).read(broken);
+                Assert.fail("A file that isn't gzip should fail");
+            }
+            catch (IOException e) {
+                // Expected
+            }
+            finally {
+                Files.delete(broken);
+            }
+        }
+        finally {
+            Files.delete(path);
+            Files.delete(quarantine);
+        }
+    }
+
+    /**
+     * Test to check the sorter and a batch read compressed files, sorting one that is out of order
+     */
+    @Test
+    public void batchTest() throws IOException {
+        Path unsorted = compress("2016-12-01T06:00:00 14\n2016-12-01T05:00:00 5\n2016-12-01T05:30:00 12\n"
+                .getBytes(StandardCharsets.ISO_8859_1), ".gz");
+        Path traffic1 = compress(Files.readAllBytes(Path.of("data/traffic1.txt")), ".gz");
+        try {
+            TrafficSnapshotHolder sorted = new TrafficSorter().read(unsorted, TrafficSnapshotHolder::new);
+            Assert.assertEquals(3, sorted.size());
+            Assert.assertEquals(5, sorted.get(0).getCars());
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new TrafficBatch(1, new TrafficReportWriter(expected, TrafficReportWriter.Format.CSV,
+                    StandardCharsets.UTF_8)).process(List.of(Path.of("data/traffic1.txt")));
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            new TrafficBatch(1, new TrafficReportWriter(actual, TrafficReportWriter.Format.CSV,
+                    StandardCharsets.UTF_8)).process(List.of(traffic1));
+            Assert.assertEquals(expected.toString(StandardCharsets.UTF_8).replace("data/traffic1.txt",
+                    traffic1.toString()), actual.toString(StandardCharsets.UTF_8));
+        }
+        finally {
+            Files.delete(unsorted);
+            Files.delete(traffic1);
+        }
+    }
+}
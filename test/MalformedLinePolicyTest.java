@@ -0,0 +1,146 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test class that checks bad lines are skipped, counted and quarantined within their budget, giving the same results
+ * as the file without them, and fail once there are more than the budget
+ *
+ * @author  Ryan Cheng
+ */
+public class MalformedLinePolicyTest {
+    private static final String GOOD = "2016-12-01T05:00:00 5\n2016-12-01T05:30:00 12\n2016-12-01T06:00:00 14\n" +
+            "2016-12-01T06:30:00 15\n";
+    // Blank, truncated, corrupted by a power loss and not a number
+    private static final String BAD = "2016-12-01T05:00:00 5\n\n2016-12-01T05:30:00 12\n2016-12-01T06:0\n" +
+            "2016-12-01T06:00:00 14\n\0\0\0\0\n2016-12-01T06:30:00 15\n2016-12-01T07:00:00 lots";
+
+    private Path write(String text) throws IOException {
+        Path path = Files.createTempFile("traffic", ".txt");
+        Files.write(path, text.getBytes(StandardCharsets.ISO_8859_1));
+        return path;
+    }
+
+    /**
+     * Test to check bad lines within the budget are skipped and quarantined with their positions
+     */
+    @Test
+    public void skipTest() throws IOException {
+        Path path = write(BAD);
+        Path good = write(GOOD);
+        Path quarantine = Files.createTempFile("quarantine", ".txt");
+        try (MalformedLinePolicy policy = new MalformedLinePolicy(4, quarantine)) {
+            MalformedLines errors = policy.forSource("bad.txt");
+            TrafficSnapshotHolder actual = new TrafficSnapshotHolder();
+            new MappedTrafficReader(actual, errors).read(path);
+            TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+            new MappedTrafficReader(expected).read(good);
+
+            Assert.assertEquals(4, errors.getCount());
+            Assert.assertEquals(expected.size(), actual.size());
+            Assert.assertEquals(expected.totalCars(), actual.totalCars());
+            Assert.assertEquals(List.of("bad.txt\t22\t", "bad.txt\t46\t2016-12-01T06:0", "bad.txt\t85\t\0\0\0\0",
+                    "bad.txt\t113\t2016-12-01T07:00:00 lots"),
+                    Files.readAllLines(quarantine, StandardCharsets.ISO_8859_1));
+        }
+        finally {
+            Files.delete(path);
+            Files.delete(good);
+            Files.delete(quarantine);
+        }
+    }
+
+    /**
+     * Test to check a file fails once it has more bad lines than the budget, and straight away when strict
+     */
+    @Test
+    public void budgetTest() throws IOException {
+        Path path = write(BAD);
+        try {
+            try {
+                new MappedTrafficReader(new TrafficSnapshotHolder(), new MalformedLinePolicy(3).forSource("bad.txt"))
+                        .read(path);
+                Assert.fail("More bad lines than the budget should fail");
+            }
+            catch (NumberFormatException e) {
+                Assert.assertTrue(e.getMessage().startsWith("More than 3 malformed lines in bad.txt, the last at " +
+                        "byte 113"));
+            }
+            try {
+                new MappedTrafficReader(new TrafficSnapshotHolder()).read(path);
+                Assert.fail("The strict policy should fail on the first bad line");
+            }
+            catch (NumberFormatException e) {
+                Assert.assertEquals("Malformed traffic record: \"\"", e.getMessage());
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check a file read twice by the sorter only counts and quarantines its bad lines once
+     */
+    @Test
+    public void sorterTest() throws IOException {
+        Path path = write("2016-12-01T06:00:00 14\nbad\n2016-12-01T05:00:00 5\n\n2016-12-01T05:30:00 12\n");
+        Path quarantine = Files.createTempFile("quarantine", ".txt");
+        try (MalformedLinePolicy policy = new MalformedLinePolicy(2, quarantine)) {
+            MalformedLines errors = policy.forSource("unsorted.txt");
+            TrafficStreamAggregator counter = new TrafficSorter().read(path, TrafficStreamAggregator::new, errors);
+            Assert.assertEquals(31, counter.totalCars());
+            Assert.assertEquals(2, errors.getCount());
+            Assert.assertEquals(List.of("unsorted.txt\t23\tbad", "unsorted.txt\t49\t"),
+                    Files.readAllLines(quarantine));
+        }
+        finally {
+            Files.delete(path);
+            Files.delete(quarantine);
+        }
+    }
+
+    /**
+     * Test to check the chunks of a file read in parallel share the budget, and a batch reports what it skipped
+     */
+    @Test
+    public void parallelTest() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 1000; i++){
+            text.append(GOOD).append(i % 100 == 0 ? "2016-12-01T0\n" : "");
+        }
+        Path path = write(text.toString());
+        try (FileChannel channel = FileChannel.open(path)) {
+            MalformedLines errors = new MalformedLinePolicy(10).forSource("parallel.txt");
+            TrafficStreamAggregator counter = ParallelTrafficReader.read(channel, new ForkJoinPool(4), 8, 3, errors);
+            Assert.assertEquals(10, errors.getCount());
+            Assert.assertEquals(1000 * 46, counter.totalCars());
+            try {
+                ParallelTrafficReader.read(channel, new ForkJoinPool(4), 8, 3,
+                        new MalformedLinePolicy(9).forSource("parallel.txt"));
+                Assert.fail("More bad lines than the budget should fail");
+            }
+            catch (NumberFormatException e) {
+                // Expected
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new TrafficBatch(1, new TrafficReportWriter(out, TrafficReportWriter.Format.CSV, StandardCharsets.UTF_8),
+                    false, new MalformedLinePolicy(10)).process(List.of(path, Paths.get("data/traffic1.txt")));
+            String report = out.toString(StandardCharsets.UTF_8);
+            Assert.assertTrue(report.contains(path + ",malformed,,,10\n"));
+            Assert.assertFalse(report.contains("traffic1.txt,malformed"));
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+}
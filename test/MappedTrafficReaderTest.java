@@ -0,0 +1,86 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Test class that checks the MappedTrafficReader reads exactly the same records as reading the file line by line
+ *
+ * @author  Ryan Cheng
+ */
+public class MappedTrafficReaderTest {
+
+    /**
+     * Reads the file line by line with extractInfo, the same as before memory mapping
+     *
+     * @param path file to be read
+     * @return a filled TrafficSnapshotHolder
+     */
+    private TrafficSnapshotHolder readLines(Path path) throws IOException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        List<String> lines = Files.readAllLines(path);
+        for(String line : lines){
+            counter.add(TrafficCounter.extractInfo(line));
+        }
+        return counter;
+    }
+
+    /**
+     * Helper to check two holders have the same records in the same order
+     */
+    private void assertSameRecords(TrafficSnapshotHolder expected, TrafficSnapshotHolder actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            Assert.assertEquals(expected.getStamp(i), actual.getStamp(i));
+            Assert.assertEquals(expected.getCars(i), actual.getCars(i));
+        }
+    }
+
+    /**
+     * Test to check a whole data file is read the same as line by line
+     */
+    @Test
+    public void readFileTest() throws IOException {
+        Path path = Paths.get("data/traffic4.txt");
+        TrafficSnapshotHolder actual = new TrafficSnapshotHolder();
+        MappedTrafficReader reader = new MappedTrafficReader(actual);
+        reader.read(path);
+        assertSameRecords(readLines(path), actual);
+        Assert.assertEquals(actual.size(), reader.getRecords());
+        Assert.assertEquals(Files.size(path), reader.getBytes());
+    }
+
+    /**
+     * Test to check lines that are split across mapped windows are still read whole
+     */
+    @Test
+    public void smallWindowTest() throws IOException {
+        Path path = Paths.get("data/traffic1.txt");
+        TrafficSnapshotHolder actual = new TrafficSnapshotHolder();
+        new MappedTrafficReader(actual, MalformedLinePolicy.STRICT.forSource(null), 50).read(path);
+        assertSameRecords(readLines(path), actual);
+    }
+
+    /**
+     * Test to check Windows line endings and a trailing newline are handled
+     */
+    @Test
+    public void lineEndingsTest() throws IOException {
+        Path path = Files.createTempFile("traffic", ".txt");
+        try {
+            Files.write(path,
+                    "2016-12-01T05:00:00 5\r\n2016-12-01T05:30:00 12\r\n".getBytes(StandardCharsets.US_ASCII));
+            TrafficSnapshotHolder actual = new TrafficSnapshotHolder();
+            new MappedTrafficReader(actual).read(path);
+            Assert.assertEquals(2, actual.size());
+            Assert.assertEquals("2016-12-01T05:30:00 12", actual.get(1).backToTimeStamp());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test class that checks splitting a file into chunks and merging their results gives exactly the same results as
+ * reading the file in one go, whatever the number of chunks
+ *
+ * @author  Ryan Cheng
+ */
+public class ParallelTrafficReaderTest {
+    private static final String[] FILE_NAMES = {"data/traffic1.txt", "data/traffic2.txt", "data/traffic3.txt",
+            "data/traffic4.txt", "data/traffic5.txt", "data/traffic6.txt"};
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    /**
+     * Helper to compare two lists of snapshots by their timestamp
+     */
+    private void assertSameSnapshots(ArrayList<TrafficSnapshot> expected, ArrayList<TrafficSnapshot> actual){
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            Assert.assertEquals(expected.get(i).backToTimeStamp(), actual.get(i).backToTimeStamp());
+        }
+    }
+
+    /**
+     * Test to check every result matches for all the data files, split from 1 chunk up to a chunk for every line so
+     * that dates, top 3 ties and 1.5 hour periods all end up crossing chunks
+     */
+    @Test
+    public void sameAsSequentialTest() throws IOException {
+        for(String fileName : FILE_NAMES){
+            Path path = Paths.get(fileName);
+            TrafficStreamAggregator expected = new TrafficStreamAggregator();
+            new MappedTrafficReader(expected).read(path);
+            for(int chunks = 1; chunks <= 30; chunks++){
+                TrafficStreamAggregator actual;
+                try (FileChannel channel = FileChannel.open(path)) {
+                    actual = ParallelTrafficReader.read(channel, pool, chunks);
+                }
+                Assert.assertEquals(expected.totalCars(), actual.totalCars());
+                Assert.assertEquals(expected.carsByDate(), actual.carsByDate());
+                assertSameSnapshots(expected.topThree(), actual.topThree());
+                assertSameSnapshots(expected.leastCars(), actual.leastCars());
+            }
+        }
+    }
+
+    /**
+     * Test to check a file out of order gives the same results as reading it without --parallel, whether the records
+     * are out of order within a chunk or only across chunks
+     */
+    @Test
+    public void outOfOrderTest() throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get("data/traffic1.txt"));
+        List<String> halvesSwapped = new ArrayList<>(lines.subList(lines.size() / 2, lines.size()));
+        halvesSwapped.addAll(lines.subList(0, lines.size() / 2));
+        List<String> shuffled = new ArrayList<>(lines);
+        Collections.shuffle(shuffled, new Random(7));
+        Path path = Files.createTempFile("traffic", ".txt");
+        try {
+            for(List<String> unsorted : List.of(halvesSwapped, shuffled)){
+                Files.write(path, unsorted);
+                MalformedLines errors = MalformedLinePolicy.STRICT.forSource(path.toString());
+                TrafficStreamAggregator expected = new TrafficSorter().read(path, TrafficStreamAggregator::new);
+                for(int chunks = 1; chunks <= 8; chunks++){
+                    TrafficStreamAggregator actual;
+                    try (FileChannel channel = FileChannel.open(path)) {
+                        actual = ParallelTrafficReader.read(channel, pool, chunks, 3, errors);
+                    }
+                    Assert.assertEquals(expected.totalCars(), actual.totalCars());
+                    Assert.assertEquals(expected.carsByDate(), actual.carsByDate());
+                    assertSameSnapshots(expected.topThree(), actual.topThree());
+                    assertSameSnapshots(expected.leastCars(), actual.leastCars());
+                }
+                Assert.assertEquals(String.valueOf(expected.carsByDate()), String.valueOf(ParallelTrafficReader
+                        .read(path, pool, 3, errors).carsByDate()));
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check a bad line in a later chunk is still reported the same way as reading in one go
+     */
+    @Test(expected = NumberFormatException.class)
+    public void malformedChunkTest() throws IOException {
+        Path path = Files.createTempFile("traffic", ".txt");
+        try {
+            Files.write(path, ("2016-12-01T05:00:00 5\n2016-12-01T05:30:00 12\n2016-12-01T06:00:00 14\n" +
+                    "2016-12-01T06:3").getBytes(StandardCharsets.US_ASCII));
+            try (FileChannel channel = FileChannel.open(path)) {
+                ParallelTrafficReader.read(channel, pool, 3);
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Test class that checks the TrafficBatch finds the right files for each kind of argument, and reports each file in
+ * the order given followed by the fleet rollup
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficBatchTest {
+
+    /**
+     * Test to check a glob gives every matching file in its directory, sorted by name
+     */
+    @Test
+    public void globTest() throws IOException {
+        List<Path> paths = TrafficBatch.expand(Arrays.asList("data/traffic[1-3].txt"));
+        Assert.assertEquals(Arrays.asList(Paths.get("data/traffic1.txt"), Paths.get("data/traffic2.txt"),
+                Paths.get("data/traffic3.txt")), paths);
+    }
+
+    /**
+     * Test to check a directory gives every file in it
+     */
+    @Test
+    public void directoryTest() throws IOException {
+        List<Path> paths = TrafficBatch.expand(Arrays.asList("data"));
+        Assert.assertEquals(6, paths.size());
+        Assert.assertEquals(Paths.get("data/traffic1.txt"), paths.get(0));
+    }
+
+    /**
+     * Test to check plain files are kept in the order given, even if they don't exist yet
+     */
+    @Test
+    public void filesTest() throws IOException {
+        List<Path> paths = TrafficBatch.expand(Arrays.asList("data/traffic4.txt", "missing.txt"));
+        Assert.assertEquals(Arrays.asList(Paths.get("data/traffic4.txt"), Paths.get("missing.txt")), paths);
+    }
+
+    /**
+     * Test to check the reports come out in the order the files were given whichever finishes first, a file that
+     * can't be read is reported and skipped while the rest carry on, and the fleet totals add up every file read
+     */
+    @Test
+    public void processTest() throws IOException {
+        List<Path> paths = Arrays.asList(Paths.get("data/traffic2.txt"), Paths.get("missing.txt"),
+                Paths.get("data/traffic1.txt"), Paths.get("data/traffic3.txt"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TrafficBatch(3, new TrafficReportWriter(out, TrafficReportWriter.Format.CSV, StandardCharsets.UTF_8))
+                .process(paths);
+
+        List<String> sources = new ArrayList<>();
+        List<String> fleet = new ArrayList<>();
+        for(String row : out.toString(StandardCharsets.UTF_8).split("\\R")){
+            String source = row.substring(0, row.indexOf(','));
+            if(source.isEmpty()){
+                fleet.add(row);
+            }
+            else if(!source.equals("source") && (sources.isEmpty() || !sources.get(sources.size() - 1).equals(source))){
+                sources.add(source);
+            }
+        }
+        Assert.assertEquals(Arrays.asList("data/traffic2.txt", "missing.txt", "data/traffic1.txt",
+                "data/traffic3.txt"), sources);
+        Assert.assertTrue(out.toString(StandardCharsets.UTF_8).contains("missing.txt,error,,"));
+
+        long total = 0;
+        Map<String, Long> byDate = new TreeMap<>();
+        for(Path path : Arrays.asList(paths.get(0), paths.get(2), paths.get(3))){
+            TrafficSnapshotHolder counter = new TrafficSorter().read(path, TrafficSnapshotHolder::new);
+            total += counter.totalCars();
+            counter.carsByDate().forEach((date, cars) -> byDate.merge(date, (long) cars, Long::sum));
+        }
+        List<String> expected = new ArrayList<>(Arrays.asList(",files,,,3", ",failed,,,1", ",total,,," + total));
+        byDate.forEach((date, cars) -> expected.add(",date,," + date + "," + cars));
+        Assert.assertEquals(expected, fleet.subList(0, expected.size()));
+        Assert.assertEquals(expected.size() + 3, fleet.size());
+    }
+}
@@ -0,0 +1,222 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Test class that checks records written with the TrafficBinaryWriter are read back exactly the same by the
+ * TrafficBinaryReader, including after appending to a file
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficBinaryReaderTest {
+    private static final String[] FILE_NAMES = {"data/traffic1.txt", "data/traffic2.txt", "data/traffic3.txt",
+            "data/traffic4.txt", "data/traffic5.txt", "data/traffic6.txt"};
+
+    /**
+     * Reads a text file into a new holder
+     */
+    private TrafficSnapshotHolder readText(String fileName) throws IOException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        new MappedTrafficReader(counter).read(Paths.get(fileName));
+        return counter;
+    }
+
+    /**
+     * Helper to check two holders have the same records in the same order
+     */
+    private void assertSameRecords(TrafficSnapshotHolder expected, TrafficSnapshotHolder actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            Assert.assertEquals(expected.getStamp(i), actual.getStamp(i));
+            Assert.assertEquals(expected.getCars(i), actual.getCars(i));
+        }
+    }
+
+    /**
+     * Test to check each of the data files is read back the same, and the totals from the index match
+     */
+    @Test
+    public void roundTripTest() throws IOException {
+        Path path = Files.createTempFile("traffic", TrafficBinaryReader.EXTENSION);
+        try {
+            for(String fileName : FILE_NAMES){
+                TrafficSnapshotHolder expected = readText(fileName);
+                TrafficBinaryWriter.write(path, expected);
+                TrafficBinaryReader reader = new TrafficBinaryReader(path);
+                Assert.assertEquals(expected.size(), reader.getRecords());
+                assertSameRecords(expected, reader.load());
+                Assert.assertEquals(expected.totalCars(), reader.totalCars());
+                Assert.assertEquals(expected.carsByDate(), reader.carsByDate());
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check single digit hours, seconds, going back in time and large counts are all kept
+     */
+    @Test
+    public void unusualRecordsTest() throws IOException {
+        TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+        expected.add(TrafficCounter.extractInfo("2016-12-01T9:00:00 5"));
+        expected.add(TrafficCounter.extractInfo("2016-12-01T09:30:17 123456789"));
+        expected.add(TrafficCounter.extractInfo("2016-12-01T05:00:00 0"));
+        expected.add(TrafficCounter.extractInfo("1969-12-31T23:59:59 1"));
+        Path path = Files.createTempFile("traffic", TrafficBinaryReader.EXTENSION);
+        try {
+            TrafficBinaryWriter.write(path, expected);
+            TrafficSnapshotHolder actual = new TrafficBinaryReader(path).load();
+            assertSameRecords(expected, actual);
+            Assert.assertEquals("2016-12-01T9:00:00 5", actual.get(0).backToTimeStamp());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check appending a file in parts gives the same as writing it in one go, carrying on the last block
+     * when the next record is on the same date
+     */
+    @Test
+    public void appendTest() throws IOException {
+        TrafficSnapshotHolder expected = readText("data/traffic1.txt");
+        Path path = Files.createTempFile("traffic", TrafficBinaryReader.EXTENSION);
+        Files.delete(path);
+        try {
+            for(int i = 0; i < expected.size(); i += 4){
+                try (TrafficBinaryWriter writer = TrafficBinaryWriter.append(path)) {
+                    for(int j = i; j < Math.min(i + 4, expected.size()); j++){
+                        writer.write(expected.getStamp(j), expected.getCars(j));
+                    }
+                }
+            }
+            TrafficBinaryReader reader = new TrafficBinaryReader(path);
+            assertSameRecords(expected, reader.load());
+            Assert.assertEquals(expected.carsByDate().size(), reader.getBlocks());
+            Assert.assertEquals(expected.carsByDate(), reader.carsByDate());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Writes records from one position up to another of the holder on to the end of a file
+     */
+    private void append(Path path, TrafficSnapshotHolder counter, int from, int to) throws IOException {
+        try (TrafficBinaryWriter writer = TrafficBinaryWriter.append(path)) {
+            for(int i = from; i < to; i++){
+                writer.write(counter.getStamp(i), counter.getCars(i));
+            }
+        }
+    }
+
+    /**
+     * Test to check a file cut short at any point of an append, before its header is rewritten, still reads as it
+     * was before the append and can be appended to again
+     */
+    @Test
+    public void tornAppendTest() throws IOException {
+        TrafficSnapshotHolder expected = readText("data/traffic1.txt");
+        int half = expected.size() / 2;
+        TrafficSnapshotHolder firstHalf = new TrafficSnapshotHolder();
+        for(int i = 0; i < half; i++){
+            firstHalf.add(expected.getStamp(i), expected.getCars(i));
+        }
+        Path path = Files.createTempFile("traffic", TrafficBinaryReader.EXTENSION);
+        try {
+            TrafficBinaryWriter.write(path, firstHalf);
+            byte[] before = Files.readAllBytes(path);
+            append(path, expected, half, expected.size());
+            byte[] after = Files.readAllBytes(path);
+            // Nothing after the old header is written over
+            Assert.assertArrayEquals(Arrays.copyOfRange(before, TrafficBinaryWriter.HEADER_SIZE, before.length),
+                    Arrays.copyOfRange(after, TrafficBinaryWriter.HEADER_SIZE, before.length));
+            assertSameRecords(expected, new TrafficBinaryReader(path).load());
+
+            for(int cut = before.length; cut < after.length; cut++){
+                byte[] torn = Arrays.copyOf(after, cut);
+                System.arraycopy(before, 0, torn, 0, TrafficBinaryWriter.HEADER_SIZE);
+                Files.write(path, torn);
+                assertSameRecords(firstHalf, new TrafficBinaryReader(path).load());
+            }
+            append(path, expected, half, expected.size());
+            assertSameRecords(expected, new TrafficBinaryReader(path).load());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check a file whose index was written over by records, or whose header points past the end, fails with
+     * an IOException rather than giving garbage
+     */
+    @Test
+    public void corruptIndexTest() throws IOException {
+        Path path = Files.createTempFile("traffic", TrafficBinaryReader.EXTENSION);
+        try {
+            TrafficBinaryWriter.write(path, readText("data/traffic1.txt"));
+            byte[] bytes = Files.readAllBytes(path);
+            int indexOffset = (int) ByteBuffer.wrap(bytes).getLong(16);
+            byte[] overwritten = bytes.clone();
+            for(int i = indexOffset; i < overwritten.length; i++){
+                overwritten[i] = bytes[TrafficBinaryWriter.HEADER_SIZE + (i - indexOffset) % 20];
+            }
+            byte[] pastEnd = bytes.clone();
+            ByteBuffer.wrap(pastEnd).putLong(16, bytes.length);
+            byte[] wrongCount = bytes.clone();
+            ByteBuffer.wrap(wrongCount).putLong(8, 1000);
+            for(byte[] corrupt : new byte[][]{overwritten, pastEnd, wrongCount}){
+                Files.write(path, corrupt);
+                try {
+                    new TrafficBinaryReader(path).load();
+                    Assert.fail("A corrupt file should fail");
+                }
+                catch (IOException e) {
+                    // Expected
+                }
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check a text file isn't mistaken for the binary format
+     */
+    @Test(expected = IOException.class)
+    public void notBinaryTest() throws IOException {
+        new TrafficBinaryReader(Paths.get("data/traffic1.txt"));
+    }
+
+    /**
+     * Test to check millions of records for a fleet of sites load back the same and take under 3 bytes a record
+     */
+    @Test
+    public void largeFileTest() throws IOException {
+        TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+        long start = TrafficCounter.extractInfo("2016-01-01T00:00:00 0").getStamp();
+        for(int i = 0; i < 2_000_000; i++){
+            expected.add(start + i * 3600L, i * 31 % 97);
+        }
+        Path path = Files.createTempFile("traffic", TrafficBinaryReader.EXTENSION);
+        try {
+            TrafficBinaryWriter.write(path, expected);
+            Assert.assertTrue(Files.size(path) < expected.size() * 3L);
+            assertSameRecords(expected, new TrafficBinaryReader(path).load());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class that checks the TrafficFollower only reads what's been added to a file since its last poll and ends up
+ * with the same results as reading the whole file at once
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficFollowerTest {
+
+    /**
+     * Appends text to the end of the file
+     */
+    private void append(Path path, String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Helper to compare two lists of snapshots by their timestamp
+     */
+    private void assertSameSnapshots(ArrayList<TrafficSnapshot> expected, ArrayList<TrafficSnapshot> actual){
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            Assert.assertEquals(expected.get(i).backToTimeStamp(), actual.get(i).backToTimeStamp());
+        }
+    }
+
+    /**
+     * Test to check a file appended to a few lines at a time, including half written lines, gives the same results
+     * as reading it all at once
+     */
+    @Test
+    public void appendTest() throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get("data/traffic1.txt"));
+        Path path = Files.createTempFile("traffic", ".txt");
+        try {
+            TrafficFollower follower = new TrafficFollower(path);
+            Assert.assertEquals(0, follower.poll());
+            for(int i = 0; i < lines.size(); i++){
+                String line = lines.get(i);
+                append(path, line.substring(0, 10));
+                Assert.assertEquals(0, follower.poll());
+                append(path, line.substring(10) + "\n");
+                Assert.assertEquals(1, follower.poll());
+            }
+            Assert.assertEquals(0, follower.poll());
+
+            TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+            new MappedTrafficReader(expected).read(path);
+            TrafficStreamAggregator actual = follower.getAggregator();
+            Assert.assertEquals(lines.size(), follower.getRecords());
+            Assert.assertEquals(expected.totalCars(), actual.totalCars());
+            Assert.assertEquals(expected.carsByDate(), actual.carsByDate());
+            assertSameSnapshots(expected.topThree(), actual.topThree());
+            assertSameSnapshots(expected.leastCars(), actual.leastCars());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check following each data file, most of which don't end in a newline, gives the same results as
+     * reading it in one go, including the last record
+     */
+    @Test
+    public void dataFilesTest() throws IOException {
+        for(int i = 1; i <= 6; i++){
+            Path path = Paths.get("data/traffic" + i + ".txt");
+            TrafficStreamAggregator expected = new TrafficStreamAggregator();
+            MappedTrafficReader reader = new MappedTrafficReader(expected);
+            reader.read(path);
+            TrafficFollower follower = new TrafficFollower(path);
+            Assert.assertEquals(reader.getRecords(), follower.poll());
+            Assert.assertEquals(0, follower.poll());
+            TrafficStreamAggregator actual = follower.getAggregator();
+            Assert.assertEquals(expected.totalCars(), actual.totalCars());
+            Assert.assertEquals(expected.carsByDate(), actual.carsByDate());
+            assertSameSnapshots(expected.topThree(), actual.topThree());
+            assertSameSnapshots(expected.leastCars(), actual.leastCars());
+        }
+    }
+
+    /**
+     * Test to check a last line without a newline added while following is only taken once it's stayed the same for
+     * a poll, isn't counted again when its newline arrives, and that the file is read again if the line turns out to
+     * be unfinished
+     */
+    @Test
+    public void unterminatedLineTest() throws IOException {
+        Path path = Files.createTempFile("traffic", ".txt");
+        try {
+            append(path, "2016-12-01T05:00:00 5\n");
+            TrafficFollower follower = new TrafficFollower(path);
+            Assert.assertEquals(1, follower.poll());
+            append(path, "2016-12-01T05:30:00 1");
+            Assert.assertEquals(0, follower.poll());
+            // Nothing added since, so the last line is a whole record
+            Assert.assertEquals(1, follower.poll());
+            Assert.assertEquals(6, follower.getAggregator().totalCars());
+            append(path, "\n2016-12-01T06:00:00 14\n");
+            Assert.assertEquals(1, follower.poll());
+            Assert.assertEquals(3, follower.getRecords());
+            Assert.assertEquals(20, follower.getAggregator().totalCars());
+
+            append(path, "2016-12-01T06:30:00 2");
+            Assert.assertEquals(0, follower.poll());
+            Assert.assertEquals(1, follower.poll());
+            // The line was still being written, so the whole file is read again with the right record
+            append(path, "7\n");
+            Assert.assertEquals(4, follower.poll());
+            Assert.assertEquals(4, follower.getRecords());
+            Assert.assertEquals(47, follower.getAggregator().totalCars());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check the file is read again from the start when it's cut short
+     */
+    @Test
+    public void truncateTest() throws IOException {
+        Path path = Files.createTempFile("traffic", ".txt");
+        try {
+            append(path, "2016-12-01T05:00:00 5\n2016-12-01T05:30:00 12\n");
+            TrafficFollower follower = new TrafficFollower(path);
+            Assert.assertEquals(2, follower.poll());
+            Files.write(path, "2016-12-02T05:00:00 7\n".getBytes(StandardCharsets.US_ASCII));
+            Assert.assertEquals(1, follower.poll());
+            Assert.assertEquals(7, follower.getAggregator().totalCars());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check a record earlier than the one before it fails the poll, as a followed file can't be sorted
+     */
+    @Test
+    public void outOfOrderTest() throws IOException {
+        Path path = Files.createTempFile("traffic", ".txt");
+        try {
+            append(path, "2016-12-01T05:30:00 12\n");
+            TrafficFollower follower = new TrafficFollower(path);
+            Assert.assertEquals(1, follower.poll());
+            append(path, "2016-12-01T05:00:00 5\n");
+            try {
+                follower.poll();
+                Assert.fail("A record out of order should fail the poll");
+            }
+            catch (IOException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Record out of chronological order at byte 23 of"));
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check a file that doesn't exist yet is waited for rather than being an error
+     */
+    @Test
+    public void missingFileTest() throws IOException {
+        Path path = Files.createTempFile("traffic", ".txt");
+        Files.delete(path);
+        TrafficFollower follower = new TrafficFollower(path);
+        Assert.assertEquals(0, follower.poll());
+        Files.write(path, "2016-12-01T05:00:00 5\n".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertEquals(1, follower.poll());
+        Files.delete(path);
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Test class that checks the TrafficLineParser reads records into the correct primitive fields and that they can be
+ * turned back into exactly the same text
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficLineParserTest {
+    private final TrafficLineParser parser = new TrafficLineParser();
+
+    /**
+     * Test to check the date, time and cars are parsed into the right fields
+     */
+    @Test
+    public void parseFieldsTest(){
+        parser.parse("2016-12-01T05:30:00 12");
+        Assert.assertEquals(LocalDate.of(2016, 12, 1).toEpochDay(), parser.getEpochDay());
+        Assert.assertEquals(5 * 60 + 30, parser.getMinuteOfDay());
+        Assert.assertEquals(12, parser.getCars());
+        Assert.assertEquals(530, TrafficTime.clockTime(parser.getStamp()));
+    }
+
+    /**
+     * Test to check a single digit hour is parsed and written back out the same way as it was read
+     */
+    @Test
+    public void shortHourTest(){
+        parser.parse("2016-12-01T9:00:00 9");
+        Assert.assertEquals(9 * 60, parser.getMinuteOfDay());
+        Assert.assertEquals("2016-12-01T9:00:00 9",
+                new TrafficSnapshot(parser.getStamp(), parser.getCars()).backToTimeStamp());
+        parser.parse("2016-12-01T09:00:00 9");
+        Assert.assertEquals("2016-12-01T09:00:00 9",
+                new TrafficSnapshot(parser.getStamp(), parser.getCars()).backToTimeStamp());
+    }
+
+    /**
+     * Test to check every date across leap years matches the java.time calendar
+     */
+    @Test
+    public void epochDayTest(){
+        for(LocalDate date = LocalDate.of(1999, 1, 1); date.getYear() < 2030; date = date.plusDays(1)){
+            parser.parse(date + "T23:30:00 1");
+            Assert.assertEquals(date.toEpochDay(), parser.getEpochDay());
+            Assert.assertEquals(date.toString(), TrafficTime.formatDate(parser.getStamp()));
+        }
+    }
+
+    /**
+     * Test to check a record held as bytes, in an array or a direct buffer like a memory mapped file, is parsed
+     */
+    @Test
+    public void parseBytesTest(){
+        byte[] bytes = "2016-12-01T05:00:00 5\n2016-12-02T23:30:00 41\r\n".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        parser.parse(buffer, 22, bytes.length - 1);
+        Assert.assertEquals("2016-12-02T23:30:00 41",
+                new TrafficSnapshot(parser.getStamp(), parser.getCars()).backToTimeStamp());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        parser.parse(direct, 0, 21);
+        Assert.assertEquals("2016-12-01T05:00:00 5",
+                new TrafficSnapshot(parser.getStamp(), parser.getCars()).backToTimeStamp());
+    }
+
+    /**
+     * Test to check a truncated record is rejected in the same way Integer.parseInt rejects bad numbers
+     */
+    @Test(expected = NumberFormatException.class)
+    public void malformedTest(){
+        parser.parse("2016-12-01T05:3");
+    }
+
+    /**
+     * Test to check an impossible date is rejected rather than rolled over to the next month
+     */
+    @Test(expected = NumberFormatException.class)
+    public void invalidDateTest(){
+        parser.parse("2017-02-29T05:00:00 5");
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test class that checks the LatencyHistogram's percentiles are within its stated accuracy and that reading and
+ * querying records are counted by TrafficMetrics
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficMetricsTest {
+
+    /**
+     * Test to check every bucket holds exactly the values between the end of the one before it and its highest value
+     */
+    @Test
+    public void bucketTest() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE};
+        for(long value : values){
+            int bucket = LatencyHistogram.bucket(value);
+            Assert.assertTrue(value + " past its bucket", value <= LatencyHistogram.highestValue(bucket));
+            if(bucket > 0){
+                Assert.assertTrue(value + " before its bucket", value > LatencyHistogram.highestValue(bucket - 1));
+            }
+        }
+    }
+
+    /**
+     * Test to check percentiles of random latencies are within 1/32 of the exact values
+     */
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] latencies = new long[100_000];
+        long sum = 0;
+        for(int i = 0; i < latencies.length; i++){
+            latencies[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(latencies[i]);
+            sum += latencies[i];
+        }
+        Arrays.sort(latencies);
+        Assert.assertEquals(latencies.length, histogram.getCount());
+        Assert.assertEquals(sum, histogram.getTotalNanos());
+        Assert.assertEquals(latencies[latencies.length - 1], histogram.getMaxNanos());
+        Assert.assertEquals(latencies[latencies.length - 1], histogram.getPercentileNanos(100));
+        for(double percentile : new double[]{1, 50, 90, 99, 99.9}){
+            long exact = latencies[(int) Math.ceil(latencies.length * percentile / 100) - 1];
+            long recorded = histogram.getPercentileNanos(percentile);
+            Assert.assertTrue("p" + percentile + " " + recorded + " below " + exact, recorded >= exact);
+            Assert.assertTrue("p" + percentile + " " + recorded + " too far above " + exact,
+                    recorded <= exact + exact / 32);
+        }
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    /**
+     * Test to check reading a file and querying it are counted, along with lines that can't be parsed. The metrics
+     * are shared by the whole JVM, so only the change in each is checked
+     */
+    @Test
+    public void countersTest() throws IOException {
+        long records = TrafficMetrics.recordsParsed();
+        long bytes = TrafficMetrics.bytesRead();
+        long malformed = TrafficMetrics.malformedLines();
+        long ingests = TrafficMetrics.INGEST.getCount();
+        long totals = TrafficMetrics.TOTAL_CARS.getCount();
+        long leastCars = TrafficMetrics.LEAST_CARS.getCount();
+        Path path = Paths.get("data/traffic1.txt");
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        new MappedTrafficReader(counter).read(path);
+        counter.totalCars();
+        counter.leastCars();
+        Assert.assertTrue(TrafficMetrics.recordsParsed() - records >= counter.size());
+        Assert.assertTrue(TrafficMetrics.bytesRead() - bytes >= Files.size(path));
+        Assert.assertTrue(TrafficMetrics.INGEST.getCount() > ingests);
+        Assert.assertTrue(TrafficMetrics.TOTAL_CARS.getCount() > totals);
+        Assert.assertTrue(TrafficMetrics.LEAST_CARS.getCount() > leastCars);
+        Assert.assertTrue(TrafficMetrics.holderHeapBytes() >= counter.heapBytes());
+        Assert.assertTrue(TrafficMetrics.toJson().startsWith("{\"enabled\":true,"));
+
+        try {
+            TrafficCounter.extractInfo("2016-12-01T05:00:00 x");
+            Assert.fail("Malformed line parsed");
+        }
+        catch (NumberFormatException e) {
+            Assert.assertTrue(TrafficMetrics.malformedLines() > malformed);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class that checks the TrafficReportWriter's text output is exactly what printing each line gave, and that
+ * the CSV and JSON lines formats hold the same results
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficReportWriterTest {
+
+    /**
+     * The original output, one System.out.println() per line
+     */
+    private String printed(TrafficSnapshotHolder counter) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        out.println("Total cars: " + counter.totalCars());
+        out.println("----------------------");
+        out.println("Cars by date:");
+        counter.carsByDate().forEach((key, value) -> out.println(key + " " + value));
+        out.println("----------------------");
+        ArrayList<TrafficSnapshot> topThree = counter.topThree();
+        if(topThree.isEmpty()){
+            out.println("Top 3 half hours with most cars NOT APPLICABLE");
+        }
+        else {
+            out.println("Top 3 half hours with most cars:");
+            topThree.forEach(ts -> out.println(ts.getDate() + "T" + ts.getTime() + " " + ts.getCars()));
+            out.println("----------------------");
+        }
+        ArrayList<TrafficSnapshot> leastCars = counter.leastCars();
+        if(leastCars.isEmpty()){
+            out.println("Least 1.5 hour period NOT APPLICABLE");
+        }
+        else {
+            out.println("1.5 hour period with least cars:");
+            for(int i = 0; i < leastCars.size(); i++){
+                TrafficSnapshot ts = leastCars.get(i);
+                out.println(ts.getDate() + "T" + ts.getTime() + " " + ts.getCars());
+                if(i % 3 == 2){
+                    out.println("----------------------");
+                }
+            }
+        }
+        return bytes.toString(StandardCharsets.US_ASCII);
+    }
+
+    private String written(TrafficSnapshotHolder counter, TrafficReportWriter.Format format, String source) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrafficReportWriter writer = new TrafficReportWriter(bytes, format, StandardCharsets.UTF_8);
+        counter.processSnapshots(writer, source);
+        Assert.assertEquals(0, bytes.size());
+        writer.flush();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private TrafficSnapshotHolder read(String fileName) throws IOException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        new MappedTrafficReader(counter).read(Paths.get(fileName));
+        return counter;
+    }
+
+    /**
+     * Test to check the text format is byte for byte the same as printing each line, including a holder too small
+     * for the top 3 or least 1.5 hour period
+     */
+    @Test
+    public void textTest() throws IOException {
+        for(String fileName : new String[]{"data/traffic1.txt", "data/traffic2.txt", "data/traffic3.txt"}){
+            TrafficSnapshotHolder counter = read(fileName);
+            Assert.assertEquals(fileName, printed(counter), written(counter, TrafficReportWriter.Format.TEXT, ""));
+        }
+        TrafficSnapshotHolder small = new TrafficSnapshotHolder();
+        small.add(TrafficCounter.extractInfo("2016-12-01T9:00:00 7"));
+        Assert.assertEquals(printed(small), written(small, TrafficReportWriter.Format.TEXT, ""));
+    }
+
+    /**
+     * Test to check each CSV row and that a source with a comma is quoted
+     */
+    @Test
+    public void csvTest() throws IOException {
+        TrafficSnapshotHolder counter = read("data/traffic1.txt");
+        String[] rows = written(counter, TrafficReportWriter.Format.CSV, "site,1").split(System.lineSeparator());
+        Assert.assertEquals("source,section,rank,key,value", rows[0]);
+        Assert.assertEquals("\"site,1\",total,,," + counter.totalCars(), rows[1]);
+        Assert.assertEquals("\"site,1\",date,,2016-12-01," + counter.carsByDate().get("2016-12-01"), rows[2]);
+        int dates = counter.carsByDate().size();
+        TrafficSnapshot top = counter.topThree().get(0);
+        Assert.assertEquals("\"site,1\",top,1," + top.getDate() + "T" + top.getTime() + "," + top.getCars(),
+                rows[2 + dates]);
+        int periods = counter.leastCars().size() / 3;
+        Assert.assertEquals(2 + dates + 3 + 3 * periods, rows.length);
+        Assert.assertTrue(rows[rows.length - 1].startsWith("\"site,1\",least," + periods + ","));
+    }
+
+    /**
+     * Test to check a JSON line has every result, with the periods of least cars as arrays of 3
+     */
+    @Test
+    public void jsonLinesTest() throws IOException {
+        TrafficSnapshotHolder counter = read("data/traffic2.txt");
+        String json = written(counter, TrafficReportWriter.Format.JSONL, "a \"quoted\" site");
+        Assert.assertTrue(json.endsWith("}" + System.lineSeparator()));
+        Assert.assertEquals(1, json.split(System.lineSeparator()).length);
+        Assert.assertTrue(json.startsWith("{\"source\":\"a \\\"quoted\\\" site\",\"total\":" + counter.totalCars() +
+                ",\"carsByDate\":{\"2016-12-01\":"));
+        Assert.assertTrue(json.contains("\"topThree\":[{\"timestamp\":\"2016-12-01T07:30:00\",\"cars\":46},"));
+        // Two periods of least cars in this file
+        Assert.assertEquals(6, counter.leastCars().size());
+        Assert.assertTrue(json.contains("\"leastCars\":[[{\"timestamp\":\"2016-12-01T05:00:00\",\"cars\":5},"));
+        Assert.assertTrue(json.contains("\"cars\":14}],[{\"timestamp\":\"2016-12-05T09:30:00\""));
+        Assert.assertTrue(json.endsWith("]]}" + System.lineSeparator()));
+    }
+
+    /**
+     * Test to check the fleet rollup of a batch in each format
+     */
+    @Test
+    public void fleetTest() {
+        Map<String, Long> byDate = new LinkedHashMap<>();
+        byDate.put("2016-12-01", 387L);
+        List<String> names = List.of("b.txt", "a.txt");
+        List<Long> totals = List.of(410L, 398L);
+        String n = System.lineSeparator();
+        for(TrafficReportWriter.Format format : TrafficReportWriter.Format.values()){
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            TrafficReportWriter writer = new TrafficReportWriter(bytes, format, StandardCharsets.UTF_8);
+            writer.fleet(2, 1, 808, byDate, 3, names, totals);
+            writer.flush();
+            String expected;
+            switch(format){
+                case TEXT:
+                    expected = "==> Fleet rollup <==" + n + "Files: 2 (1 could not be read)" + n + "Total cars: 808" +
+                            n + "----------------------" + n + "Cars by date:" + n + "2016-12-01 387" + n +
+                            "----------------------" + n + "Top 3 files with most cars:" + n + "b.txt 410" + n +
+                            "a.txt 398" + n + "----------------------" + n;
+                    break;
+                case CSV:
+                    expected = "source,section,rank,key,value" + n + ",files,,,2" + n + ",failed,,,1" + n +
+                            ",total,,,808" + n + ",date,,2016-12-01,387" + n + ",top,1,b.txt,410" + n +
+                            ",top,2,a.txt,398" + n;
+                    break;
+                default:
+                    expected = "{\"fleet\":{\"files\":2,\"failed\":1,\"total\":808," +
+                            "\"carsByDate\":{\"2016-12-01\":387},\"topFiles\":[{\"source\":\"b.txt\",\"cars\":410}," +
+                            "{\"source\":\"a.txt\",\"cars\":398}]}}" + n;
+            }
+            Assert.assertEquals(format.toString(), expected, bytes.toString(StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(TrafficReportWriter.Format.JSONL, TrafficReportWriter.Format.of("jsonl"));
+    }
+}
@@ -0,0 +1,174 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+/**
+ * Test class that checks the TrafficRollup gives the same totals over ranges of time as adding up the records one
+ * by one, whatever order the records are in
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficRollupTest {
+
+    /**
+     * Parses a timestamp without the cars into its packed form
+     */
+    private long stamp(String timestamp) {
+        return TrafficCounter.extractInfo(timestamp + " 0").getStamp();
+    }
+
+    /**
+     * Test to check totals over ranges of the first data file
+     */
+    @Test
+    public void carsBetweenTest() throws IOException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        new MappedTrafficReader(counter).read(Paths.get("data/traffic1.txt"));
+        TrafficRollup rollup = counter.rollup();
+        Assert.assertEquals(counter.totalCars(), rollup.totalCars());
+        Assert.assertEquals(5 + 12 + 14, rollup.carsBetween(stamp("2016-12-01T05:00:00"),
+                stamp("2016-12-01T06:30:00")));
+        Assert.assertEquals(0, rollup.carsBetween(stamp("2016-12-02T00:00:00"), stamp("2016-12-05T00:00:00")));
+        Assert.assertEquals(counter.totalCars(), rollup.carsBetween(stamp("2016-01-01T00:00:00"),
+                stamp("2017-01-01T00:00:00")));
+        Assert.assertEquals(0, rollup.carsBetween(stamp("2016-12-02T00:00:00"), stamp("2016-12-01T00:00:00")));
+        Assert.assertEquals(25 + 46, rollup.carsInHour(TrafficTime.epochSecond(stamp("2016-12-01T07:00:00")) / 3600));
+        Assert.assertEquals(counter.totalCars(), rollup.carsInMonth(2016, 12));
+        Assert.assertEquals(0, rollup.carsInMonth(2016, 11));
+        // 2016-11-28 to 2016-12-04 is week 48
+        Assert.assertEquals((long) counter.carsByDate().get("2016-12-01"), rollup.carsInWeek(2016, 48));
+    }
+
+    /**
+     * Test to check each period is labelled and totalled in chronological order
+     */
+    @Test
+    public void carsByTest() {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        counter.add(TrafficCounter.extractInfo("2017-01-02T00:30:00 4"));
+        counter.add(TrafficCounter.extractInfo("2016-12-31T23:30:00 2"));
+        counter.add(TrafficCounter.extractInfo("2017-01-01T00:00:00 3"));
+        counter.add(TrafficCounter.extractInfo("2017-01-02T00:00:00 1"));
+        TrafficRollup rollup = counter.rollup();
+
+        LinkedHashMap<String, Long> expected = new LinkedHashMap<>();
+        expected.put("2016-12-31T23", 2L);
+        expected.put("2017-01-01T00", 3L);
+        expected.put("2017-01-02T00", 5L);
+        Assert.assertEquals(expected, rollup.carsBy(TrafficRollup.Bucket.HOUR));
+
+        expected.clear();
+        expected.put("2016-W52", 5L);
+        expected.put("2017-W01", 5L);
+        Assert.assertEquals(expected, rollup.carsBy(TrafficRollup.Bucket.WEEK));
+        Assert.assertEquals(5, rollup.carsInWeek(2017, 1));
+
+        expected.clear();
+        expected.put("2016-12", 2L);
+        expected.put("2017-01", 8L);
+        Assert.assertEquals(expected, rollup.carsBy(TrafficRollup.Bucket.MONTH));
+
+        // The labelled periods are kept, changing a copy handed out doesn't change them
+        rollup.carsBy(TrafficRollup.Bucket.MONTH).clear();
+        rollup.carsByDate().put("2016-12-31", 0);
+        Assert.assertEquals(expected, rollup.carsBy(TrafficRollup.Bucket.MONTH));
+        Assert.assertEquals(Integer.valueOf(2), counter.carsByDate().get("2016-12-31"));
+        Assert.assertSame(rollup, counter.rollup());
+
+        // Adding a record builds a new rollup
+        counter.add(TrafficCounter.extractInfo("2016-12-31T23:00:00 6"));
+        Assert.assertNotSame(rollup, counter.rollup());
+        Assert.assertEquals(Integer.valueOf(8), counter.carsByDate().get("2016-12-31"));
+        Assert.assertEquals(Long.valueOf(8), counter.rollup().carsBy(TrafficRollup.Bucket.MONTH).get("2016-12"));
+    }
+
+    /**
+     * Test to check a date that comes back after other dates is added to, not replaced, and is in date order
+     */
+    @Test
+    public void unorderedDatesTest() {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        counter.add(TrafficCounter.extractInfo("2016-12-02T05:00:00 10"));
+        counter.add(TrafficCounter.extractInfo("2016-12-01T05:00:00 20"));
+        counter.add(TrafficCounter.extractInfo("2016-12-02T06:00:00 30"));
+        LinkedHashMap<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("2016-12-01", 20);
+        expected.put("2016-12-02", 40);
+        Assert.assertEquals(expected, counter.carsByDate());
+        Assert.assertEquals(expected.toString(), counter.carsByDate().toString());
+        Assert.assertEquals(3, counter.rollup().recordsBetween(stamp("2016-12-01T00:00:00"),
+                stamp("2016-12-03T00:00:00")));
+
+        // The index is built again once another record is added
+        counter.add(TrafficCounter.extractInfo("2016-12-01T06:00:00 1"));
+        Assert.assertEquals(21, (int) counter.carsByDate().get("2016-12-01"));
+    }
+
+    /**
+     * Test to check random ranges over shuffled records give the same as adding up the records one by one
+     */
+    @Test
+    public void randomRangesTest() {
+        Random random = new Random(7);
+        int size = 5000;
+        long[] stamps = new long[size];
+        int[] cars = new int[size];
+        long start = stamp("2016-01-01T00:00:00");
+        for(int i = 0; i < size; i++){
+            stamps[i] = start + (long) random.nextInt(3000) * 1800 * 2 + (random.nextInt(10) == 0 ? 600 : 0);
+            cars[i] = random.nextInt(100);
+        }
+        TrafficRollup rollup = new TrafficRollup(stamps, cars, size);
+        for(int query = 0; query < 1000; query++){
+            long from = start + (long) random.nextInt(3100) * 1800 * 2;
+            long to = start + (long) random.nextInt(3100) * 1800 * 2;
+            long expected = 0;
+            for(int i = 0; i < size; i++){
+                if(stamps[i] >= from && stamps[i] < to){
+                    expected += cars[i];
+                }
+            }
+            Assert.assertEquals(expected, rollup.carsBetween(from, to));
+        }
+    }
+
+    /**
+     * Test to check extending an index with records in order gives the same as building it from every record, and
+     * records earlier than the index can't extend it
+     */
+    @Test
+    public void extendTest() throws IOException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        new MappedTrafficReader(counter).read(Paths.get("data/traffic1.txt"));
+        int size = counter.size();
+        long[] stamps = new long[size];
+        int[] cars = new int[size];
+        for(int i = 0; i < size; i++){
+            stamps[i] = counter.getStamp(i);
+            cars[i] = counter.getCars(i);
+        }
+        TrafficRollup whole = new TrafficRollup(stamps, cars, size);
+        for(int split = 0; split <= size; split++){
+            TrafficRollup extended = new TrafficRollup(stamps, cars, split).extend(stamps, cars, split, size);
+            Assert.assertEquals(whole.size(), extended.size());
+            Assert.assertEquals(whole.carsByDate(), extended.carsByDate());
+            Assert.assertEquals(whole.recordsBetween(stamps[0], stamps[size - 1]),
+                    extended.recordsBetween(stamps[0], stamps[size - 1]));
+        }
+
+        TrafficSnapshotHolder copy = counter.copyWith(new long[]{stamps[0]}, new int[]{1}, 1);
+        Assert.assertEquals(size, counter.size());
+        Assert.assertEquals(size + 1, copy.size());
+        Assert.assertEquals(counter.totalCars() + 1, copy.totalCars());
+        try {
+            whole.extend(stamps, cars, 0, 1);
+            Assert.fail("Extended with a record before the index");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test class that checks the TrafficServer's answers match the TrafficSnapshotHolder's, that appending records
+ * changes the answers, and that cached answers hold up under many clients at once
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficServerTest {
+    private static final int CLIENTS = 200;
+    private static final int REQUESTS_PER_CLIENT = 25;
+
+    private TrafficServer server;
+    private HttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TrafficServer(0);
+        server.load("traffic1", Paths.get("data/traffic1.txt"));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private HttpResponse<String> get(String query) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(query)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String query) {
+        return URI.create("http://localhost:" + server.getPort() + "/" + query);
+    }
+
+    /**
+     * Test to check each query gives the same answer as the holder
+     */
+    @Test
+    public void queryTest() throws IOException, InterruptedException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        new MappedTrafficReader(counter).read(Paths.get("data/traffic1.txt"));
+
+        Assert.assertEquals("{\"total\":" + counter.totalCars() + "}", get("total").body());
+        Assert.assertEquals(get("total").body(), get("total?dataset=traffic1").body());
+        Assert.assertTrue(get("carsByDate").body().startsWith("{\"2016-12-01\":" +
+                counter.carsByDate().get("2016-12-01") + ","));
+        TrafficSnapshot top = counter.topK(1).get(0);
+        Assert.assertEquals("[{\"timestamp\":\"" + top.getDate() + "T" + top.getTime() + "\",\"cars\":" +
+                top.getCars() + "}]", get("topK?k=1").body());
+        Assert.assertTrue(get("leastWindow?minutes=60").body().endsWith(",\"cars\":" +
+                counter.leastWindow(60).getCars() + ",\"ties\":" + counter.leastWindow(60).getTies() + "}"));
+        Assert.assertTrue(get("mostWindow").body().contains("\"cars\":" + counter.mostWindow(90).getCars()));
+        Assert.assertEquals("null", get("leastWindow?minutes=30000").body());
+
+        Assert.assertEquals(404, get("total?dataset=missing").statusCode());
+        Assert.assertEquals(404, get("median").statusCode());
+        Assert.assertEquals(400, get("topK?k=zero").statusCode());
+        Assert.assertEquals(400, get("mostWindow?minutes=45").statusCode());
+        Assert.assertEquals(400, get("leastWindow?minutes=2147483640").statusCode());
+        Assert.assertEquals(400, get("mostWindow?minutes=527070").statusCode());
+        Assert.assertEquals(405, get("append").statusCode());
+    }
+
+    /**
+     * Test to check appended records are included in the answers straight away, and a malformed line appends nothing
+     */
+    @Test
+    public void appendTest() throws IOException, InterruptedException {
+        String total = get("total").body();
+        Assert.assertEquals("{\"total\":398}", total);
+        String datasets = get("datasets").body();
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("append?dataset=traffic1"))
+                .POST(HttpRequest.BodyPublishers.ofString("2016-12-10T00:00:00 100\n2016-12-10T00:30:00 2\n"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().startsWith("{\"appended\":2,"));
+        Assert.assertEquals("{\"total\":500}", get("total").body());
+        Assert.assertTrue(get("carsByDate").body().endsWith(",\"2016-12-10\":102}"));
+        Assert.assertTrue(get("topK?k=1").body().contains("\"cars\":100"));
+        Assert.assertNotEquals(datasets, get("datasets").body());
+
+        response = client.send(HttpRequest.newBuilder(uri("append"))
+                .POST(HttpRequest.BodyPublishers.ofString("2016-12-11T00:00:00 1\nnot a record\n"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("{\"total\":500}", get("total").body());
+    }
+
+    /**
+     * Test to check the cache evicts the least recently used answers to stay within its bounds and drops every
+     * version of a dataset, or every version but one, when it's invalidated
+     */
+    @Test
+    public void cacheTest() {
+        TrafficQueryCache cache = new TrafficQueryCache(3, 10);
+        cache.put(TrafficQueryCache.key("a", 1, "total"), new byte[4]);
+        cache.put(TrafficQueryCache.key("a", 2, "total"), new byte[4]);
+        cache.put(TrafficQueryCache.key("b", 1, "total"), new byte[1]);
+        Assert.assertNotNull(cache.get(TrafficQueryCache.key("a", 1, "total")));
+        // Over the 10 bytes, so the least recently used (a, 2) goes
+        cache.put(TrafficQueryCache.key("b", 1, "topK?k=3"), new byte[2]);
+        Assert.assertNull(cache.get(TrafficQueryCache.key("a", 2, "total")));
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(7, cache.getBytes());
+        // Over the 3 answers, so the least recently used (b, total) goes
+        cache.put(TrafficQueryCache.key("c", 1, "total"), new byte[1]);
+        Assert.assertNull(cache.get(TrafficQueryCache.key("b", 1, "total")));
+        cache.put(TrafficQueryCache.key("c", 1, "carsByDate"), new byte[11]);
+        Assert.assertNull(cache.get(TrafficQueryCache.key("c", 1, "carsByDate")));
+
+        cache.invalidate("a");
+        Assert.assertNull(cache.get(TrafficQueryCache.key("a", 1, "total")));
+        Assert.assertNotNull(cache.get(TrafficQueryCache.key("b", 1, "topK?k=3")));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(3, cache.getBytes());
+
+        // Only the answers of the version kept are left
+        cache.put(TrafficQueryCache.key("b", 12, "total"), new byte[1]);
+        cache.invalidate("b", 12);
+        Assert.assertNull(cache.get(TrafficQueryCache.key("b", 1, "topK?k=3")));
+        Assert.assertNotNull(cache.get(TrafficQueryCache.key("b", 12, "total")));
+    }
+
+    /**
+     * Load test with many clients asking the precomputed queries at once, every answer must be right and come from
+     * the cache
+     */
+    @Test
+    public void loadTest() throws Exception {
+        String[] queries = {"total", "carsByDate", "topK", "leastWindow", "mostWindow"};
+        String[] expected = new String[queries.length];
+        for(int i = 0; i < queries.length; i++){
+            expected[i] = get(queries[i]).body();
+        }
+        long hits = server.getCache().getHits();
+        long misses = server.getCache().getMisses();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for(int c = 0; c < CLIENTS; c++){
+                int first = c;
+                results.add(clients.submit(() -> {
+                    int wrong = 0;
+                    for(int r = 0; r < REQUESTS_PER_CLIENT; r++){
+                        int q = (first + r) % queries.length;
+                        HttpResponse<String> response = get(queries[q]);
+                        if(response.statusCode() != 200 || !response.body().equals(expected[q])){
+                            wrong++;
+                        }
+                    }
+                    return wrong;
+                }));
+            }
+            for(Future<Integer> result : results){
+                Assert.assertEquals(0, (int) result.get());
+            }
+        }
+        finally {
+            clients.shutdownNow();
+        }
+        // Counted before each answer is sent, unlike the latency which is recorded once the exchange is closed
+        Assert.assertEquals(hits + CLIENTS * REQUESTS_PER_CLIENT, server.getCache().getHits());
+        Assert.assertEquals(misses, server.getCache().getMisses());
+    }
+}
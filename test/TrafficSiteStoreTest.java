@@ -0,0 +1,143 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test class that checks each site of a TrafficSiteStore gives the same results as its file on its own, and that the
+ * cross-site queries match adding up the records of every site one by one
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficSiteStoreTest {
+
+    private long expectedTotal(Path path) throws IOException {
+        return new TrafficSorter().read(path, TrafficSnapshotHolder::new).totalCars();
+    }
+
+    /**
+     * Test to check every site loaded at the same time answers the per-site queries exactly as its file does
+     */
+    @Test
+    public void perSiteTest() throws IOException {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for(Path path : TrafficBatch.expand(List.of("data"))){
+            files.put(path.getFileName().toString(), path);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TrafficSiteStore store = new TrafficSiteStore(pool);
+            store.loadAll(files);
+            Assert.assertEquals(files.size(), store.size());
+
+            List<ArrayList<TrafficSnapshot>> topK = store.topK(3);
+            List<TrafficWindow> leastWindow = store.leastWindow(90);
+            List<LinkedHashMap<String, Integer>> carsByDate = store.carsByDate();
+            for(Map.Entry<String, Path> file : files.entrySet()){
+                int site = store.siteNumber(file.getKey());
+                Assert.assertEquals(file.getKey(), store.siteId(site));
+                TrafficSnapshotHolder expected = new TrafficSorter().read(file.getValue(), TrafficSnapshotHolder::new);
+                Assert.assertEquals(expected.size(), store.partition(site).size());
+                ArrayList<TrafficSnapshot> expectedTop = expected.topK(3);
+                Assert.assertEquals(expectedTop.size(), topK.get(site).size());
+                for(int i = 0; i < expectedTop.size(); i++){
+                    Assert.assertEquals(expectedTop.get(i).getStamp(), topK.get(site).get(i).getStamp());
+                    Assert.assertEquals(expectedTop.get(i).getCars(), topK.get(site).get(i).getCars());
+                }
+                Assert.assertEquals(String.valueOf(expected.leastWindow(90)), String.valueOf(leastWindow.get(site)));
+                Assert.assertEquals(expected.carsByDate(), carsByDate.get(site));
+            }
+            Assert.assertEquals(-1, store.siteNumber("missing"));
+
+            // A file that can't be read leaves every site as it was, not even registering the ones that were read
+            Map<String, Path> broken = new LinkedHashMap<>();
+            broken.put("new", files.get("traffic1.txt"));
+            broken.put("traffic2.txt", Path.of("data/missing.txt"));
+            try {
+                store.loadAll(broken);
+                Assert.fail("A file that doesn't exist should fail the load");
+            }
+            catch (IOException e) {
+                // Expected
+            }
+            Assert.assertEquals(files.size(), store.size());
+            Assert.assertEquals(-1, store.siteNumber("new"));
+            Assert.assertEquals(expectedTotal(files.get("traffic2.txt")), store.partition(1).totalCars());
+
+            // Loading a site again replaces its records rather than adding a site
+            store.load("traffic1.txt", files.get("traffic2.txt"));
+            Assert.assertEquals(files.size(), store.size());
+            Assert.assertEquals(store.partition(1).totalCars(), store.partition(0).totalCars());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test to check sites are ranked by their cars on a date and the busiest site of each hour is found, the site
+     * registered first winning a tie
+     */
+    @Test
+    public void crossSiteTest() {
+        TrafficSiteStore store = new TrafficSiteStore();
+        long day = TrafficTime.toEpochDay(2016, 12, 1);
+        // Every site sees the same cars in the first hour, then each is busiest for a few hours of its own
+        String[] sites = {"north", "south", "east", "west"};
+        Map<Long, long[]> hourCars = new HashMap<>();
+        long[] dayCars = new long[sites.length];
+        for(int site = 0; site < sites.length; site++){
+            TrafficSnapshotHolder partition = store.partition(store.register(sites[site]));
+            for(int slot = 0; slot < 48; slot++){
+                int cars = slot < 2 ? 10 : (slot / 8 % sites.length == site ? 50 : site);
+                partition.add(TrafficTime.pack(day, slot * 1800, false), cars);
+                hourCars.computeIfAbsent((long) slot / 2, hour -> new long[sites.length])[site] += cars;
+                dayCars[site] += cars;
+            }
+            // Half the sites also have a record the next day
+            if(site % 2 == 0){
+                partition.add(TrafficTime.pack(day + 1, 0, false), site);
+            }
+        }
+
+        List<TrafficSiteTotal> ranking = store.rankOnDay(day);
+        Assert.assertEquals(sites.length, ranking.size());
+        for(int i = 0; i < ranking.size(); i++){
+            int site = store.siteNumber(ranking.get(i).getSite());
+            Assert.assertEquals(dayCars[site], ranking.get(i).getCars());
+            if(i > 0){
+                TrafficSiteTotal previous = ranking.get(i - 1);
+                Assert.assertTrue(previous.getCars() > ranking.get(i).getCars() || (previous.getCars() ==
+                        ranking.get(i).getCars() && store.siteNumber(previous.getSite()) < site));
+            }
+        }
+        // Only the sites with records the next day are ranked, even with no cars
+        Assert.assertEquals("2016-12-02T00:00:00 east 2", store.rankOnDay(day + 1).get(0).toString());
+        Assert.assertEquals("north", store.rankOnDay(day + 1).get(1).getSite());
+        Assert.assertEquals(2, store.rankOnDay(day + 1).size());
+
+        List<TrafficSiteTotal> busiest = store.busiestSiteByHour();
+        Assert.assertEquals(25, busiest.size());
+        for(int hour = 0; hour < 24; hour++){
+            long[] cars = hourCars.get((long) hour);
+            int best = 0;
+            for(int site = 1; site < sites.length; site++){
+                if(cars[site] > cars[best]){
+                    best = site;
+                }
+            }
+            Assert.assertEquals(TrafficTime.pack(day, hour * 3600, false), busiest.get(hour).getStamp());
+            Assert.assertEquals(sites[best], busiest.get(hour).getSite());
+            Assert.assertEquals(cars[best], busiest.get(hour).getCars());
+        }
+        Assert.assertEquals("north", busiest.get(0).getSite());
+        Assert.assertEquals("east", busiest.get(24).getSite());
+        Assert.assertTrue(new TrafficSiteStore().busiestSiteByHour().isEmpty());
+    }
+}
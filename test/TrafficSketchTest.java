@@ -0,0 +1,285 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test class that checks the sketches stay within their documented error bounds of the exact results, both for a
+ * single stream and after merging the sketches of its parts
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficSketchTest {
+
+    /**
+     * Skewed weighted stream of keys, most of the weight going to a few keys
+     */
+    private long[][] skewedStream(int length, long seed) {
+        Random random = new Random(seed);
+        long[][] stream = new long[length][];
+        for(int i = 0; i < length; i++){
+            long key = (long) Math.pow(20000, random.nextDouble() * random.nextDouble());
+            stream[i] = new long[]{key, random.nextInt(50)};
+        }
+        return stream;
+    }
+
+    /**
+     * Checks every estimate of the summary against the exact totals
+     */
+    private void assertWithinFloor(SpaceSaving summary, Map<Long, Long> exact, long total, int capacity) {
+        Assert.assertEquals(total, summary.getTotal());
+        Assert.assertTrue(summary.getFloor() <= total / capacity);
+        for(Map.Entry<Long, Long> key : exact.entrySet()){
+            long estimate = summary.estimate(key.getKey());
+            Assert.assertTrue(estimate >= key.getValue());
+            Assert.assertTrue(estimate <= key.getValue() + summary.getFloor());
+        }
+        // Every key over the floor is kept and ranked
+        List<long[]> top = summary.top(capacity);
+        for(Map.Entry<Long, Long> key : exact.entrySet()){
+            if(key.getValue() > total / capacity){
+                Assert.assertTrue(top.stream().anyMatch(entry -> entry[0] == key.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Test to check the Space-Saving estimates are within the floor of the exact totals, in one stream and merged
+     */
+    @Test
+    public void spaceSavingTest() {
+        int capacity = 100;
+        long[][] stream = skewedStream(200000, 1);
+        Map<Long, Long> exact = new HashMap<>();
+        long total = 0;
+        SpaceSaving whole = new SpaceSaving(capacity);
+        SpaceSaving[] parts = new SpaceSaving[8];
+        for(int i = 0; i < parts.length; i++){
+            parts[i] = new SpaceSaving(capacity);
+        }
+        for(int i = 0; i < stream.length; i++){
+            exact.merge(stream[i][0], stream[i][1], Long::sum);
+            total += stream[i][1];
+            whole.add(stream[i][0], stream[i][1]);
+            parts[i % parts.length].add(stream[i][0], stream[i][1]);
+        }
+        Assert.assertEquals(capacity, whole.size());
+        assertWithinFloor(whole, exact, total, capacity);
+
+        // Merged as a tree, as the batch threads would
+        for(int width = 1; width < parts.length; width *= 2){
+            for(int i = 0; i + width < parts.length; i += 2 * width){
+                parts[i].merge(parts[i + width]);
+            }
+        }
+        assertWithinFloor(parts[0], exact, total, capacity);
+
+        // The heaviest key is first, and a summary with room for every key is exact
+        long heaviest = exact.entrySet().stream().max(Map.Entry.comparingByValue()).get().getKey();
+        Assert.assertEquals(heaviest, whole.top(1).get(0)[0]);
+        SpaceSaving exactSummary = new SpaceSaving(exact.size());
+        for(long[] entry : stream){
+            exactSummary.add(entry[0], entry[1]);
+        }
+        Assert.assertEquals(0, exactSummary.getFloor());
+        Assert.assertEquals((long) exact.get(heaviest), exactSummary.estimate(heaviest));
+    }
+
+    /**
+     * Test to check the Count-Min estimates are never under the exact totals and almost always within the bound,
+     * and that merging gives the same sketch as one stream
+     */
+    @Test
+    public void countMinTest() {
+        long[][] stream = skewedStream(200000, 2);
+        Map<Long, Long> exact = new HashMap<>();
+        CountMinSketch whole = CountMinSketch.withError(0.001, 0.01);
+        CountMinSketch first = CountMinSketch.withError(0.001, 0.01);
+        CountMinSketch second = CountMinSketch.withError(0.001, 0.01);
+        for(int i = 0; i < stream.length; i++){
+            exact.merge(stream[i][0], stream[i][1], Long::sum);
+            whole.add(stream[i][0], stream[i][1]);
+            (i < stream.length / 3 ? first : second).add(stream[i][0], stream[i][1]);
+        }
+        first.merge(second);
+        int outside = 0;
+        for(Map.Entry<Long, Long> key : exact.entrySet()){
+            long estimate = whole.estimate(key.getKey());
+            Assert.assertEquals(estimate, first.estimate(key.getKey()));
+            Assert.assertTrue(estimate >= key.getValue());
+            if(estimate > key.getValue() + whole.getErrorBound()){
+                outside++;
+            }
+        }
+        Assert.assertTrue(outside <= exact.size() / 100);
+        try {
+            whole.merge(new CountMinSketch(10, 2));
+            Assert.fail("Sketches of different sizes should not merge");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Checks each percentile of the sketch is within the rank error of the exact one
+     */
+    private void assertRankWithin(KllSketch sketch, long[] sorted, double error) {
+        Assert.assertEquals(sorted.length, sketch.getCount());
+        Assert.assertEquals(sorted[0], sketch.quantile(0));
+        Assert.assertEquals(sorted[sorted.length - 1], sketch.quantile(1));
+        for(double fraction : new double[]{0.01, 0.25, 0.5, 0.75, 0.95, 0.99}){
+            long value = sketch.quantile(fraction);
+            // Range of ranks the value has in the exact values
+            int low = lowerBound(sorted, value);
+            int high = lowerBound(sorted, value + 1);
+            double rank = fraction * sorted.length;
+            Assert.assertTrue(fraction + " gave " + value, rank >= low - error * sorted.length &&
+                    rank <= high + error * sorted.length);
+        }
+    }
+
+    private int lowerBound(long[] sorted, long value) {
+        int index = Arrays.binarySearch(sorted, value);
+        while(index > 0 && sorted[index - 1] == value){
+            index--;
+        }
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * Test to check the KLL percentiles are within 1.65% of rank of the exact ones while keeping a fixed number of
+     * values, in one stream and merged, and that the default sketch is the same every time
+     */
+    @Test
+    public void kllTest() {
+        Random random = new Random(3);
+        long[] values = new long[1000000];
+        KllSketch whole = new KllSketch(KllSketch.DEFAULT_K, 3);
+        KllSketch[] parts = new KllSketch[10];
+        for(int i = 0; i < parts.length; i++){
+            parts[i] = new KllSketch(KllSketch.DEFAULT_K, i);
+        }
+        for(int i = 0; i < values.length; i++){
+            // Skewed like cars per half hour, mostly quiet with a long busy tail
+            values[i] = (long) (Math.abs(random.nextGaussian()) * 20 + (random.nextInt(20) == 0 ? 200 : 0));
+            whole.add(values[i]);
+            parts[i * parts.length / values.length].add(values[i]);
+        }
+        for(int i = 1; i < parts.length; i++){
+            parts[0].merge(parts[i]);
+        }
+        Arrays.sort(values);
+        assertRankWithin(whole, values, 0.0165);
+        assertRankWithin(parts[0], values, 0.0165);
+        Assert.assertTrue(whole.getRetained() < 4 * KllSketch.DEFAULT_K);
+        Assert.assertTrue(parts[0].getRetained() < 4 * KllSketch.DEFAULT_K);
+        Assert.assertEquals(0, new KllSketch().quantile(0.5));
+
+        // The default seed is fixed, so sketching the same values again gives the same percentiles
+        KllSketch first = new KllSketch();
+        KllSketch second = new KllSketch();
+        for(long value : values){
+            first.add(value);
+            second.add(value);
+        }
+        for(double fraction = 0; fraction <= 1; fraction += 0.05){
+            Assert.assertEquals(first.quantile(fraction), second.quantile(fraction));
+        }
+    }
+
+    /**
+     * Test to check the sketch of every data file matches the exact busiest half hours and percentiles, and that a
+     * batch adds them to its rollup
+     */
+    @Test
+    public void fleetTest() throws IOException {
+        Map<Long, Long> slotCars = new HashMap<>();
+        long[] cars = new long[0];
+        TrafficSketch merged = new TrafficSketch();
+        for(Path path : TrafficBatch.expand(List.of("data"))){
+            TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+            new MappedTrafficReader(counter).read(path);
+            TrafficSketch sketch = new TrafficSketch();
+            for(int i = 0; i < counter.size(); i++){
+                TrafficSnapshot ts = counter.get(i);
+                sketch.accept(ts.getStamp(), ts.getCars());
+                slotCars.merge(TrafficTime.epochSecond(ts.getStamp()) / 1800, (long) ts.getCars(), Long::sum);
+                cars = Arrays.copyOf(cars, cars.length + 1);
+                cars[cars.length - 1] = ts.getCars();
+            }
+            merged.merge(sketch);
+        }
+        // Few enough half hours for the sketch to be exact
+        Assert.assertEquals(0, merged.getBusiestError());
+        long busiest = slotCars.values().stream().max(Long::compare).get();
+        Assert.assertEquals(busiest, merged.busiest(3).get(0).getCars());
+        for(TrafficSnapshot ts : merged.busiest(3)){
+            Assert.assertEquals((long) slotCars.get(TrafficTime.epochSecond(ts.getStamp()) / 1800),
+                    merged.estimateCars(ts.getStamp()));
+        }
+        Arrays.sort(cars);
+        Assert.assertEquals(cars.length, merged.getCount());
+        Assert.assertEquals(cars[cars.length - 1], merged.carsQuantile(1));
+        Assert.assertEquals(cars[(int) Math.ceil(0.5 * cars.length) - 1], merged.carsQuantile(0.5));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TrafficBatch batch = new TrafficBatch(2, new TrafficReportWriter(out, TrafficReportWriter.Format.TEXT,
+                StandardCharsets.UTF_8), true);
+        batch.process(TrafficBatch.expand(List.of("data")));
+        String report = out.toString(StandardCharsets.UTF_8);
+        Assert.assertTrue(report.contains("Top 3 half hours across files (approximate, at most 0 cars over):"));
+        Assert.assertTrue(report.contains("Cars per half hour (approximate): p50 " + merged.carsQuantile(0.5)));
+        Assert.assertEquals(merged.totalCars(), batch.getSketch().totalCars());
+    }
+
+    /**
+     * Test to check the sketch keeps its bounds once there are more half hours than it can hold exactly, whether
+     * that happens in one file or only once files are merged
+     */
+    @Test
+    public void overflowTest() {
+        Random random = new Random(4);
+        Map<Long, Long> slotCars = new HashMap<>();
+        long total = 0;
+        TrafficSketch merged = new TrafficSketch();
+        // A year of half hours split over sites each covering a few weeks, with rush hours much busier
+        for(int site = 0; site < 40; site++){
+            TrafficSketch sketch = new TrafficSketch();
+            long start = random.nextInt(17520 - 1000);
+            for(long slot = start; slot < start + 1000 + site * 20; slot++){
+                int hour = (int) (slot % 48) / 2;
+                int cars = random.nextInt(10) + (hour == 8 || hour == 17 ? 100 : 0);
+                sketch.accept(TrafficTime.pack(17000 + slot / 48, (int) (slot % 48) * 1800, false), cars);
+                slotCars.merge(17000 * 48 + slot, (long) cars, Long::sum);
+                total += cars;
+            }
+            merged.merge(sketch);
+        }
+        Assert.assertEquals(total, merged.totalCars());
+        Assert.assertTrue(slotCars.size() > TrafficSketch.BUSIEST_CAPACITY);
+        Assert.assertTrue(merged.getBusiestError() <= total / TrafficSketch.BUSIEST_CAPACITY);
+        for(TrafficSnapshot ts : merged.busiest(3)){
+            long exact = slotCars.get(TrafficTime.epochSecond(ts.getStamp()) / 1800);
+            Assert.assertTrue(ts.getCars() >= exact && ts.getCars() <= exact + merged.getBusiestError());
+        }
+        long bound = (long) Math.ceil(total * TrafficSketch.SLOT_EPSILON);
+        int outside = 0;
+        for(Map.Entry<Long, Long> slot : slotCars.entrySet()){
+            long estimate = merged.estimateCars(slot.getKey() * 1800 * 2);
+            Assert.assertTrue(estimate >= slot.getValue());
+            if(estimate > slot.getValue() + bound){
+                outside++;
+            }
+        }
+        Assert.assertTrue(outside <= slotCars.size() / 100);
+    }
+}
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -114,6 +115,53 @@ public class TrafficSnapshotHolderTest {
         Assert.assertEquals(expectedThree, topThreeSnapshots.get(2).backToTimeStamp());
     }
 
+    /**
+     * Test to check equal values stay in timestamp order even when a bigger value arrives after both of them
+     */
+    @Test
+    public void topThreeSameValueOrderTest(){
+        counter = new TrafficSnapshotHolder();
+        counter.add(TrafficCounter.extractInfo("2016-12-01T05:00:00 55"));
+        counter.add(TrafficCounter.extractInfo("2016-12-01T05:30:00 54"));
+        counter.add(TrafficCounter.extractInfo("2016-12-01T06:00:00 55"));
+        counter.add(TrafficCounter.extractInfo("2016-12-01T06:30:00 59"));
+        ArrayList<TrafficSnapshot> topThreeSnapshots = counter.topThree();
+        Assert.assertEquals("2016-12-01T06:30:00 59", topThreeSnapshots.get(0).backToTimeStamp());
+        Assert.assertEquals("2016-12-01T05:00:00 55", topThreeSnapshots.get(1).backToTimeStamp());
+        Assert.assertEquals("2016-12-01T06:00:00 55", topThreeSnapshots.get(2).backToTimeStamp());
+    }
+
+    /**
+     * Test to check the top k works for more than 3 and gives what there is when there are fewer rows than k
+     */
+    @Test
+    public void topKTest(){
+        String fileName = "data/traffic4.txt";
+        counter = readFile(fileName);
+        ArrayList<TrafficSnapshot> topK = counter.topK(5);
+        Assert.assertEquals(5, topK.size());
+        Assert.assertEquals("2016-12-01T13:30:00 50", topK.get(0).backToTimeStamp());
+        Assert.assertEquals("2016-12-01T07:30:00 46", topK.get(3).backToTimeStamp());
+        Assert.assertEquals("2016-12-01T08:00:00 42", topK.get(4).backToTimeStamp());
+        counter = readFile("data/traffic5.txt");
+        Assert.assertEquals(2, counter.topK(10).size());
+    }
+
+    /**
+     * Test to check the top k is worked out separately for each month
+     */
+    @Test
+    public void topKByMonthTest(){
+        counter = new TrafficSnapshotHolder();
+        counter.add(TrafficCounter.extractInfo("2016-11-30T23:30:00 90"));
+        counter.add(TrafficCounter.extractInfo("2016-12-01T00:00:00 10"));
+        counter.add(TrafficCounter.extractInfo("2016-12-01T00:30:00 20"));
+        LinkedHashMap<String, ArrayList<TrafficSnapshot>> topKByMonth = counter.topKByMonth(1);
+        Assert.assertEquals(2, topKByMonth.size());
+        Assert.assertEquals("2016-11-30T23:30:00 90", topKByMonth.get("2016-11").get(0).backToTimeStamp());
+        Assert.assertEquals("2016-12-01T00:30:00 20", topKByMonth.get("2016-12").get(0).backToTimeStamp());
+    }
+
     /**
      * Basic test to check if parsing a String to an integer is working as intended
      */
@@ -121,8 +169,8 @@ public class TrafficSnapshotHolderTest {
     public void parseTimeTest() {
         String fileName = "data/traffic5.txt";
         counter = readFile(fileName);
-        int actual = counter.parseTime(counter.get(0).getTime());
-        int actualTwo = counter.parseTime(counter.get(1).getTime());
+        int actual = TrafficSnapshotHolder.parseTime(counter.get(0).getTime());
+        int actualTwo = TrafficSnapshotHolder.parseTime(counter.get(1).getTime());
         int expected = 500, expectedTwo = 530;
         Assert.assertEquals(expected, actual);
         Assert.assertEquals(expectedTwo, actualTwo);
@@ -168,4 +216,32 @@ public class TrafficSnapshotHolderTest {
         ArrayList<TrafficSnapshot> leastCars = counter.leastCars();
         Assert.assertTrue(leastCars.isEmpty());
     }
-}
\ No newline at end of file
+
+    /**
+     * Regression test to check finding the least 1.5 hour period stays linear, 1 million synthetic half hour
+     * records (the old quadratic version never finished) with the least period placed near the end of the data
+     */
+    @Test(timeout = 10000)
+    public void leastCarsLargeInputTest(){
+        int rows = 1000000, leastStart = rows - 100;
+        String[] times = new String[48];
+        for(int i = 0; i < times.length; i++){
+            times[i] = String.format("%02d:%02d:00", i / 2, (i % 2) * 30);
+        }
+        counter = new TrafficSnapshotHolder();
+        LocalDate date = LocalDate.of(2016, 12, 1);
+        String currentDate = date.toString();
+        for(int i = 0; i < rows; i++){
+            if(i > 0 && i % times.length == 0){
+                date = date.plusDays(1);
+                currentDate = date.toString();
+            }
+            int cars = (i >= leastStart && i < leastStart + 3) ? 1 : 10 + i % 40;
+            counter.add(new TrafficSnapshot(currentDate, times[i % times.length], cars));
+        }
+        ArrayList<TrafficSnapshot> leastCars = counter.leastCars();
+        Assert.assertEquals(3, leastCars.size());
+        Assert.assertEquals(counter.get(leastStart).backToTimeStamp(), leastCars.get(0).backToTimeStamp());
+        Assert.assertEquals(counter.get(leastStart + 2).backToTimeStamp(), leastCars.get(2).backToTimeStamp());
+    }
+}
@@ -0,0 +1,154 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Test class that checks the TrafficSorter gives records in chronological order however they're read, both when
+ * sorting in memory and when spilling runs to disk
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficSorterTest {
+    private int sinks;
+
+    /**
+     * Creates a holder, counting how many were asked for
+     */
+    private TrafficSnapshotHolder newHolder() {
+        sinks++;
+        return new TrafficSnapshotHolder();
+    }
+
+    /**
+     * Helper to check two holders have the same records in the same order
+     */
+    private void assertSameRecords(TrafficSnapshotHolder expected, TrafficSnapshotHolder actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            Assert.assertEquals(expected.getStamp(i), actual.getStamp(i));
+            Assert.assertEquals(expected.getCars(i), actual.getCars(i));
+        }
+    }
+
+    /**
+     * Writes the lines of the first data file in a random order to a temp file
+     */
+    private Path shuffledFile(long seed) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get("data/traffic1.txt"));
+        Collections.shuffle(lines, new Random(seed));
+        Path path = Files.createTempFile("traffic", ".txt");
+        Files.write(path, lines);
+        return path;
+    }
+
+    /**
+     * Test to check a file already in order is read once without sorting
+     */
+    @Test
+    public void sortedFileTest() throws IOException {
+        TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+        new MappedTrafficReader(expected).read(Paths.get("data/traffic1.txt"));
+        TrafficSorter sorter = new TrafficSorter();
+        assertSameRecords(expected, sorter.read(Paths.get("data/traffic1.txt"), this::newHolder));
+        Assert.assertEquals(1, sinks);
+        Assert.assertEquals(0, sorter.getRuns());
+    }
+
+    /**
+     * Test to check a shuffled file comes out the same as the ordered one, sorting in memory
+     */
+    @Test
+    public void inMemoryTest() throws IOException {
+        TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+        new MappedTrafficReader(expected).read(Paths.get("data/traffic1.txt"));
+        Path path = shuffledFile(1);
+        try {
+            TrafficSorter sorter = new TrafficSorter();
+            assertSameRecords(expected, sorter.read(path, this::newHolder));
+            Assert.assertEquals(2, sinks);
+            Assert.assertEquals(0, sorter.getRuns());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test to check a shuffled file comes out the same as the ordered one when only a few records fit in memory at
+     * a time, and the run files are cleaned up
+     */
+    @Test
+    public void spillTest() throws IOException {
+        TrafficSnapshotHolder expected = new TrafficSnapshotHolder();
+        new MappedTrafficReader(expected).read(Paths.get("data/traffic1.txt"));
+        Path path = shuffledFile(2);
+        Path spillDirectory = Files.createTempDirectory("traffic-spill");
+        try {
+            // Room for 4 records at a time
+            TrafficSorter sorter = new TrafficSorter(4 * 24, spillDirectory);
+            assertSameRecords(expected, sorter.read(path, this::newHolder));
+            Assert.assertEquals(6, sorter.getRuns());
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                Assert.assertEquals(0, files.count());
+            }
+        }
+        finally {
+            Files.delete(path);
+            Files.delete(spillDirectory);
+        }
+    }
+
+    /**
+     * Test to check records with the same timestamp stay in the order they were read, in memory and on disk
+     */
+    @Test
+    public void stableTest() throws IOException {
+        long early = TrafficCounter.extractInfo("2016-12-01T05:00:00 0").getStamp();
+        long late = TrafficCounter.extractInfo("2016-12-01T06:00:00 0").getStamp();
+        TrafficSorter.Source source = sink -> {
+            for(int i = 0; i < 10; i++){
+                sink.accept(i % 2 == 0 ? late : early, i);
+            }
+        };
+        Path spillDirectory = Files.createTempDirectory("traffic-spill");
+        try {
+            for(TrafficSorter sorter : new TrafficSorter[]{new TrafficSorter(), new TrafficSorter(3 * 24,
+                    spillDirectory)}){
+                TrafficSnapshotHolder actual = sorter.read(source, TrafficSnapshotHolder::new);
+                int[] expected = {1, 3, 5, 7, 9, 0, 2, 4, 6, 8};
+                for(int i = 0; i < expected.length; i++){
+                    Assert.assertEquals(expected[i], actual.getCars(i));
+                }
+            }
+        }
+        finally {
+            Files.delete(spillDirectory);
+        }
+    }
+
+    /**
+     * Test to check sorting a holder in place
+     */
+    @Test
+    public void holderSortTest() {
+        Random random = new Random(3);
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        for(int i = 0; i < 1000; i++){
+            counter.add(random.nextInt(100) * 3600L, i);
+        }
+        counter.sort();
+        for(int i = 1; i < counter.size(); i++){
+            Assert.assertTrue(counter.getStamp(i - 1) <= counter.getStamp(i));
+            if(counter.getStamp(i - 1) == counter.getStamp(i)){
+                Assert.assertTrue(counter.getCars(i - 1) < counter.getCars(i));
+            }
+        }
+    }
+}
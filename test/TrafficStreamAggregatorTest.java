@@ -0,0 +1,97 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Test class that checks the single pass TrafficStreamAggregator gives exactly the same results as the
+ * TrafficSnapshotHolder for each of the data files
+ *
+ * @author  Ryan Cheng
+ */
+public class TrafficStreamAggregatorTest {
+    private static final String[] FILE_NAMES = {"data/traffic1.txt", "data/traffic2.txt", "data/traffic3.txt",
+            "data/traffic4.txt", "data/traffic5.txt", "data/traffic6.txt"};
+
+    /**
+     * Reads the given file into both a TrafficSnapshotHolder and a TrafficStreamAggregator
+     *
+     * @param fileName file to be read for a certain test
+     * @param counter empty TrafficSnapshotHolder to be filled
+     * @param aggregator empty TrafficStreamAggregator to be fed
+     */
+    public void readFile(String fileName, TrafficSnapshotHolder counter, TrafficStreamAggregator aggregator){
+        String timestamp;
+        try (FileReader fr = new FileReader(fileName);
+             BufferedReader br = new BufferedReader(fr)) {
+            while ((timestamp = br.readLine()) != null)  {
+                counter.add(TrafficCounter.extractInfo(timestamp));
+                aggregator.accept(TrafficCounter.extractInfo(timestamp));
+            }
+        }
+        catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Helper to compare two lists of snapshots by their timestamp
+     */
+    private void assertSameSnapshots(ArrayList<TrafficSnapshot> expected, ArrayList<TrafficSnapshot> actual){
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            Assert.assertEquals(expected.get(i).backToTimeStamp(), actual.get(i).backToTimeStamp());
+        }
+    }
+
+    /**
+     * Test to check every result matches the TrafficSnapshotHolder for all the data files
+     */
+    @Test
+    public void sameAsHolderTest(){
+        for(String fileName : FILE_NAMES){
+            TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+            TrafficStreamAggregator aggregator = new TrafficStreamAggregator();
+            readFile(fileName, counter, aggregator);
+            Assert.assertEquals(counter.totalCars(), aggregator.totalCars());
+            Assert.assertEquals(counter.carsByDate(), aggregator.carsByDate());
+            assertSameSnapshots(counter.topThree(), aggregator.topThree());
+            assertSameSnapshots(counter.leastCars(), aggregator.leastCars());
+        }
+    }
+
+    /**
+     * Test to check the least period is still found when it is split from the rest of its date by a gap, and
+     * that a block of only 2 contiguous records is never used
+     */
+    @Test
+    public void leastCarsBlockTest(){
+        TrafficStreamAggregator aggregator = new TrafficStreamAggregator();
+        String[] lines = {"2016-12-01T05:00:00 1", "2016-12-01T05:30:00 1", "2016-12-01T07:00:00 9",
+                "2016-12-01T07:30:00 9", "2016-12-01T08:00:00 9", "2016-12-01T08:30:00 2"};
+        for(String line : lines){
+            aggregator.accept(TrafficCounter.extractInfo(line));
+        }
+        ArrayList<TrafficSnapshot> leastCars = aggregator.leastCars();
+        Assert.assertEquals(3, leastCars.size());
+        Assert.assertEquals("2016-12-01T07:30:00 9", leastCars.get(0).backToTimeStamp());
+        Assert.assertEquals("2016-12-01T08:30:00 2", leastCars.get(2).backToTimeStamp());
+    }
+
+    /**
+     * Simple check that nothing is computed before any data is given
+     */
+    @Test
+    public void emptyTest(){
+        TrafficStreamAggregator aggregator = new TrafficStreamAggregator();
+        Assert.assertTrue(aggregator.isEmpty());
+        Assert.assertTrue(aggregator.topThree().isEmpty());
+        Assert.assertTrue(aggregator.leastCars().isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Test class that checks the WindowAggregator finds the least and most busy windows of any length, using the real
+ * time between records to find gaps
+ *
+ * @author  Ryan Cheng
+ */
+public class WindowAggregatorTest {
+    private static final String[] FILE_NAMES = {"data/traffic1.txt", "data/traffic2.txt", "data/traffic3.txt",
+            "data/traffic4.txt", "data/traffic5.txt", "data/traffic6.txt"};
+
+    /**
+     * Feeds the given records into a new WindowAggregator
+     */
+    private WindowAggregator feed(int windowMinutes, String... timestamps){
+        WindowAggregator windowAggregator = new WindowAggregator(windowMinutes);
+        for(String timestamp : timestamps){
+            TrafficSnapshot ts = TrafficCounter.extractInfo(timestamp);
+            windowAggregator.accept(ts.getStamp(), ts.getCars());
+        }
+        return windowAggregator;
+    }
+
+    /**
+     * Test to check a 1.5 hour window gives the same first period as leastCars() for each of the data files
+     */
+    @Test
+    public void sameAsLeastCarsTest() throws IOException {
+        for(String fileName : FILE_NAMES){
+            TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+            new MappedTrafficReader(counter).read(Paths.get(fileName));
+            ArrayList<TrafficSnapshot> leastCars = counter.leastCars();
+            TrafficWindow window = counter.leastWindow(90);
+            if(leastCars.isEmpty()){
+                Assert.assertNull(fileName, window);
+                continue;
+            }
+            Assert.assertEquals(fileName, leastCars.get(0).getStamp(), window.getStart());
+            Assert.assertEquals(fileName, leastCars.get(2).getStamp(), window.getEnd());
+            Assert.assertEquals(fileName, leastCars.get(0).getCars() + leastCars.get(1).getCars() +
+                    leastCars.get(2).getCars(), window.getCars());
+            Assert.assertEquals(fileName, leastCars.size() / 3 - 1, window.getTies());
+        }
+    }
+
+    /**
+     * Test to check the least and most busy windows of the first data file
+     */
+    @Test
+    public void leastAndMostTest() throws IOException {
+        TrafficSnapshotHolder counter = new TrafficSnapshotHolder();
+        new MappedTrafficReader(counter).read(Paths.get("data/traffic1.txt"));
+        Assert.assertEquals("2016-12-01T05:00:00 - 2016-12-01T06:00:00 31", counter.leastWindow(90).toString());
+        Assert.assertEquals("2016-12-01T07:00:00 - 2016-12-01T08:00:00 113", counter.mostWindow(90).toString());
+        Assert.assertEquals("2016-12-01T05:00:00 - 2016-12-01T08:00:00 159", counter.mostWindow(210).toString());
+        Assert.assertNull(counter.mostWindow(240));
+    }
+
+    /**
+     * Test to check a window carries on past midnight when the records are half an hour apart
+     */
+    @Test
+    public void crossesMidnightTest(){
+        WindowAggregator windowAggregator = feed(90, "2016-12-01T23:00:00 4", "2016-12-01T23:30:00 3",
+                "2016-12-02T00:00:00 2", "2016-12-02T00:30:00 9");
+        Assert.assertEquals("2016-12-01T23:00:00 - 2016-12-02T00:00:00 9", windowAggregator.getLeast().toString());
+        Assert.assertEquals("2016-12-01T23:30:00 - 2016-12-02T00:30:00 14", windowAggregator.getMost().toString());
+    }
+
+    /**
+     * Test to check a missing half hour breaks up a window
+     */
+    @Test
+    public void gapTest(){
+        WindowAggregator windowAggregator = feed(90, "2016-12-01T05:00:00 1", "2016-12-01T05:30:00 1",
+                "2016-12-01T06:30:00 1", "2016-12-01T07:00:00 1", "2016-12-02T07:30:00 1");
+        Assert.assertNull(windowAggregator.getLeast());
+        Assert.assertNull(windowAggregator.getMost());
+    }
+
+    /**
+     * Test to check the earliest of equal windows is kept and the rest are counted as ties
+     */
+    @Test
+    public void tiesTest(){
+        WindowAggregator windowAggregator = feed(60, "2016-12-01T05:00:00 2", "2016-12-01T05:30:00 3",
+                "2016-12-01T06:00:00 2", "2016-12-01T06:30:00 3");
+        TrafficWindow least = windowAggregator.getLeast();
+        Assert.assertEquals("2016-12-01T05:00:00 - 2016-12-01T05:30:00 5", least.toString());
+        Assert.assertEquals(2, least.getTies());
+        Assert.assertEquals(2, windowAggregator.getMost().getTies());
+    }
+
+    /**
+     * Test to check the results can be asked for while records are still arriving
+     */
+    @Test
+    public void incrementalTest(){
+        WindowAggregator windowAggregator = feed(60, "2016-12-01T05:00:00 8");
+        Assert.assertNull(windowAggregator.getLeast());
+        windowAggregator.accept(TrafficCounter.extractInfo("2016-12-01T05:30:00 6").getStamp(), 6);
+        Assert.assertEquals(14, windowAggregator.getLeast().getCars());
+        windowAggregator.accept(TrafficCounter.extractInfo("2016-12-01T06:00:00 1").getStamp(), 1);
+        Assert.assertEquals(7, windowAggregator.getLeast().getCars());
+        Assert.assertEquals(14, windowAggregator.getMost().getCars());
+    }
+
+    /**
+     * Test to check a window that isn't a whole number of half hours is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWindowTest(){
+        new WindowAggregator(45);
+    }
+}